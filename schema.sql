@@ -27,12 +27,48 @@ CREATE TABLE `branches` (
   `longitude` varchar(45) DEFAULT NULL,
   `user_id` int NOT NULL,
   `name` varchar(45) NOT NULL,
+  `version` int NOT NULL DEFAULT '0',
   PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_branches_user_id_name` (`user_id`, `name`),
   KEY `fk_branches_user_id` (`user_id`),
   CONSTRAINT `fk_branches_user_id` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`) ON DELETE CASCADE
 );
 
 
+CREATE TABLE `user_branch_versions` (
+  `user_id` int NOT NULL,
+  `version` bigint NOT NULL DEFAULT '0',
+  PRIMARY KEY (`user_id`)
+);
+
+
+CREATE TABLE `branch_outbox` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `change_type` varchar(10) NOT NULL,
+  `branch_id` int NOT NULL,
+  `user_id` int NOT NULL,
+  `name` varchar(45) NOT NULL,
+  `address` varchar(255) NOT NULL,
+  `city` varchar(255) NOT NULL,
+  `latitude` varchar(45) DEFAULT NULL,
+  `longitude` varchar(45) DEFAULT NULL,
+  `version` int NOT NULL,
+  `changed_at` timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`id`)
+);
+
+
+CREATE TABLE `branch_idempotency_keys` (
+  `idempotency_key` varchar(255) NOT NULL,
+  `request_hash` char(64) NOT NULL,
+  `inserted` int DEFAULT NULL,
+  `updated` int DEFAULT NULL,
+  `unchanged` int DEFAULT NULL,
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`idempotency_key`)
+);
+
+
 CREATE TABLE `offers` (
   `id` int NOT NULL AUTO_INCREMENT,
   `product_id` int NOT NULL,
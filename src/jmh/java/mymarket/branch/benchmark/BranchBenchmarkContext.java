@@ -0,0 +1,83 @@
+package mymarket.branch.benchmark;
+
+import com.amazonaws.xray.AWSXRay;
+import mymarket.branch.BranchApplication;
+import mymarket.branch.model.Branch;
+import mymarket.branch.service.BranchService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Boots the whole application against an in-memory H2 database in MySQL mode, created from the same
+ * {@code schema.sql} as production, and seeds it with branches spread around Mar del Plata.
+ */
+final class BranchBenchmarkContext {
+
+    static final int USERS = 100;
+    static final double CENTER_LATITUDE = -38.0;
+    static final double CENTER_LONGITUDE = -57.55;
+
+    private BranchBenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(WebApplicationType webApplicationType, int branches,
+                                                String... properties) {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.initialization-mode=always",
+                "--spring.datasource.schema=file:schema.sql",
+                "--spring.jpa.hibernate.ddl-auto=none",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--logging.level.com.amazonaws=OFF"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BranchApplication.class)
+                .web(webApplicationType)
+                .run(args.toArray(String[]::new));
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        for (int user = 1; user <= USERS; user++) {
+            jdbcTemplate.update("INSERT INTO users (id, email) VALUES (?, ?)", user, "user" + user + "@mymarket.com");
+        }
+        context.getBean(BranchService.class).save(branches(branches, new Random(42)));
+        return context;
+    }
+
+    /**
+     * Closes the context and stops the sampling pollers of the default X-Ray recorder, which are not daemon threads
+     * and would otherwise keep the forked VM alive when tracing is disabled.
+     */
+    static void stop(ConfigurableApplicationContext context) {
+        context.close();
+        AWSXRay.getGlobalRecorder().getSamplingStrategy().shutdown();
+    }
+
+    static List<Branch> branches(int count, Random random) {
+        List<Branch> branches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            branches.add(Branch.builder()
+                    .name("Branch " + i)
+                    .userId(1L + random.nextInt(USERS))
+                    .address(random.nextInt(10000) + ", Avenida Colon")
+                    .city("Mar del Plata")
+                    .latitude(String.valueOf(CENTER_LATITUDE + random.nextDouble() - 0.5))
+                    .longitude(String.valueOf(CENTER_LONGITUDE + random.nextDouble() - 0.5))
+                    .build());
+        }
+        return branches;
+    }
+}
@@ -0,0 +1,81 @@
+package mymarket.branch.benchmark;
+
+import mymarket.branch.controller.BranchController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.Filter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * The {@link BranchController} request path through the X-Ray filter, the real dispatcher servlet, message
+ * converters and service, driven by MockMvc so no socket or servlet container is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BranchControllerBenchmark {
+
+    @Param({"10000"})
+    private int branches;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        context = BranchBenchmarkContext.start(WebApplicationType.SERVLET, branches);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context)
+                .addFilters(context.getBean("TracingFilter", Filter.class))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BranchBenchmarkContext.stop(context);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse getById() throws Exception {
+        return perform("/branches/" + (1 + ThreadLocalRandom.current().nextInt(branches)));
+    }
+
+    @Benchmark
+    public MockHttpServletResponse getPageByUserId() throws Exception {
+        return perform("/branches?userId=" + (1 + ThreadLocalRandom.current().nextInt(BranchBenchmarkContext.USERS)) +
+                "&limit=50");
+    }
+
+    @Benchmark
+    public MockHttpServletResponse getNearby() throws Exception {
+        return perform("/branches/nearby?lat=" + BranchBenchmarkContext.CENTER_LATITUDE +
+                "&lon=" + BranchBenchmarkContext.CENTER_LONGITUDE + "&radiusKm=5");
+    }
+
+    private MockHttpServletResponse perform(String uri) throws Exception {
+        return mockMvc.perform(get(uri).accept(MediaType.APPLICATION_JSON)).andReturn().getResponse();
+    }
+}
@@ -0,0 +1,118 @@
+package mymarket.branch.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import mymarket.branch.model.Branch;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoding cost and size of the {@link Branch} payloads in every format {@code BranchController} negotiates, JSON
+ * gzipped as Tomcat does above the compression threshold included. The encoded size is reported next to the
+ * {@code serialize} times as the {@code encodedBytes} secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BranchFormatBenchmark {
+
+    private static final TypeReference<List<Branch>> BRANCH_LIST = new TypeReference<>() {
+    };
+
+    @Param({"json", "json-gzip", "smile", "cbor"})
+    private String format;
+
+    @Param({"1", "10000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private boolean gzip;
+    private List<Branch> branches;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().factory(factory(format)).build();
+        gzip = format.endsWith("-gzip");
+        branches = BranchBenchmarkContext.branches(size, new Random(42));
+        for (int i = 0; i < size; i++) {
+            branches.get(i).setId((long) i + 1);
+        }
+        encoded = encode();
+    }
+
+    @Benchmark
+    public byte[] serialize(EncodedSize encodedSize) throws IOException {
+        byte[] bytes = encode();
+        encodedSize.encodedBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public List<Branch> deserialize() throws IOException {
+        try (InputStream in = gzip ?
+                new GZIPInputStream(new ByteArrayInputStream(encoded)) :
+                new ByteArrayInputStream(encoded)) {
+            return objectMapper.readValue(in, BRANCH_LIST);
+        }
+    }
+
+    /**
+     * An events counter is reported as is rather than per second; it is assigned, not added to, so it stays the size
+     * of one payload.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+        public long encodedBytes;
+    }
+
+    private byte[] encode() throws IOException {
+        if (!gzip) {
+            return objectMapper.writeValueAsBytes(branches);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(out, branches);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static JsonFactory factory(String format) {
+        switch (format) {
+            case "smile":
+                return new SmileFactory();
+            case "cbor":
+                return new CBORFactory();
+            default:
+                return new JsonFactory();
+        }
+    }
+}
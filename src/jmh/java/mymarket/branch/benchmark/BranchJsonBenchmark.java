@@ -0,0 +1,63 @@
+package mymarket.branch.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mymarket.branch.model.Branch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of the {@link Branch} payloads, with the same mapper defaults Spring Boot configures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BranchJsonBenchmark {
+
+    private static final TypeReference<List<Branch>> BRANCH_LIST = new TypeReference<>() {
+    };
+
+    @Param({"1", "1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<Branch> branches;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        branches = BranchBenchmarkContext.branches(size, new Random(42));
+        for (int i = 0; i < size; i++) {
+            branches.get(i).setId((long) i + 1);
+        }
+        json = objectMapper.writeValueAsBytes(branches);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(branches);
+    }
+
+    @Benchmark
+    public List<Branch> deserialize() throws Exception {
+        return objectMapper.readValue(json, BRANCH_LIST);
+    }
+}
@@ -0,0 +1,91 @@
+package mymarket.branch.benchmark;
+
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.index.BranchSearchIndex;
+import mymarket.branch.model.Branch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type-ahead latency of {@link BranchSearchIndex} over generated Spanish names, streets and cities. Sampled, so the
+ * report carries the p99 next to the mean.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BranchSearchBenchmark {
+
+    private static final String[] NAMES = {"Almacén", "Autoservicio", "Despensa", "Mercado", "Supermercado",
+            "Kiosco", "Verdulería", "Carnicería", "Panadería", "Dietética", "Maxikiosco", "Minimercado"};
+    private static final String[] SURNAMES = {"García", "Fernández", "González", "Rodríguez", "López", "Martínez",
+            "Pérez", "Gómez", "Sánchez", "Romero", "Díaz", "Álvarez", "Peñaloza", "Muñoz", "Ibáñez", "Castro"};
+    private static final String[] STREETS = {"Avenida Colón", "Independencia", "San Martín", "Belgrano", "Rivadavia",
+            "Güemes", "Juan B. Justo", "Avenida Constitución", "Luro", "Jara", "Alberti", "Peña", "Córdoba"};
+    private static final String[] CITIES = {"Mar del Plata", "Batán", "Miramar", "Necochea", "Tandil", "Balcarce",
+            "Santa Clara del Mar", "Villa Gesell", "Pinamar", "Olavarría", "Azul", "Bahía Blanca"};
+
+    private static final String[] QUERIES = {"m", "mer", "super gar", "pena", "avenida col", "mar del pla",
+            "almacen batan", "kiosco 12", "guem", "panaderia olav", "san mar 4", "dietetica ibanez"};
+
+    @Param({"1000000"})
+    private int branches;
+
+    @Param({"10"})
+    private int limit;
+
+    private BranchSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Branch> page = new ArrayList<>(10_000);
+        index = new BranchSearchIndex(4_000);
+        for (int i = 1; i <= branches; i++) {
+            page.add(Branch.builder()
+                    .id((long) i)
+                    .userId(1L + random.nextInt(BranchBenchmarkContext.USERS))
+                    .name(pick(NAMES, random) + " " + pick(SURNAMES, random))
+                    .address(pick(STREETS, random) + " " + random.nextInt(10000))
+                    .city(pick(CITIES, random))
+                    .build());
+            if (page.size() == 10_000) {
+                index.onLoaded(new BranchesLoadedEvent(page));
+                page = new ArrayList<>(10_000);
+            }
+        }
+        index.onLoaded(new BranchesLoadedEvent(page));
+    }
+
+    @Benchmark
+    public List<Long> search() {
+        return index.search(QUERIES[ThreadLocalRandom.current().nextInt(QUERIES.length)], null, limit);
+    }
+
+    @Benchmark
+    public List<Long> searchByUser() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return index.search(QUERIES[random.nextInt(QUERIES.length)], 1L + random.nextInt(BranchBenchmarkContext.USERS), limit);
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+}
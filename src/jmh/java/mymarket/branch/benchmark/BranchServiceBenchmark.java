@@ -0,0 +1,93 @@
+package mymarket.branch.benchmark;
+
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.model.UserBranches;
+import mymarket.branch.service.BranchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * {@link BranchService} lookups through the Spring proxies (caching, transactions) against the embedded database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BranchServiceBenchmark {
+
+    @Param({"10000"})
+    private int branches;
+
+    private ConfigurableApplicationContext context;
+    private BranchService branchService;
+
+    @Setup
+    public void setUp() {
+        context = BranchBenchmarkContext.start(WebApplicationType.NONE, branches);
+        branchService = context.getBean(BranchService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BranchBenchmarkContext.stop(context);
+    }
+
+    @Benchmark
+    public Branch getById() {
+        return branchService.getById(randomId());
+    }
+
+    @Benchmark
+    public BranchLookup getByIds() {
+        long first = randomId();
+        return branchService.getByIds(LongStream.range(first, first + 50)
+                .map(id -> (id - 1) % branches + 1)
+                .boxed()
+                .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public UserBranches getByUserId() {
+        return branchService.getByUserId(1L + ThreadLocalRandom.current().nextInt(BranchBenchmarkContext.USERS));
+    }
+
+    @Benchmark
+    public BranchPage getPageByUserId() {
+        return branchService.getPageByUserId(1L + ThreadLocalRandom.current().nextInt(BranchBenchmarkContext.USERS),
+                null, 50);
+    }
+
+    @Benchmark
+    public List<NearbyBranch> getNearby() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return branchService.getNearby(BranchBenchmarkContext.CENTER_LATITUDE + random.nextDouble(-0.5, 0.5),
+                BranchBenchmarkContext.CENTER_LONGITUDE + random.nextDouble(-0.5, 0.5), 5.0, 20);
+    }
+
+    private long randomId() {
+        return 1L + ThreadLocalRandom.current().nextInt(branches);
+    }
+}
@@ -0,0 +1,138 @@
+package mymarket.branch.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.controller.ExceptionController;
+import mymarket.branch.exception.BranchNotFoundException;
+import mymarket.branch.model.Branch;
+import mymarket.exception.commons.exception.ErrorMessage;
+import mymarket.exception.commons.exception.NotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Throughput of {@code GET /branches/{id}} answered with a 404, through the dispatcher servlet and message converters,
+ * with the error path before ({@code stack-trace}: a {@link NotFoundException} logged with its whole stack) and after
+ * ({@code stackless}: a {@link BranchNotFoundException} through {@link ExceptionController}). Logs are written at the
+ * default INFO level to a discarding appender, so their formatting is measured but not the console.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorPathBenchmark {
+
+    @Param({"stack-trace", "stackless"})
+    private String errorPath;
+
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        discardLogs();
+        boolean stackless = errorPath.equals("stackless");
+        mockMvc = MockMvcBuilders.standaloneSetup(new MissingBranchController(stackless))
+                .setControllerAdvice(stackless ? new ExceptionController(new SimpleMeterRegistry())
+                        : new StackTraceExceptionController())
+                .build();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse notFound() throws Exception {
+        return mockMvc.perform(get("/branches/" + ThreadLocalRandom.current().nextInt(1_000_000))
+                .accept(MediaType.APPLICATION_JSON)).andReturn().getResponse();
+    }
+
+    private static void discardLogs() {
+        LoggerContext loggers = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggers);
+        encoder.setPattern("%d %-5level [%thread] %logger{36} - %msg%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(loggers);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+
+        ch.qos.logback.classic.Logger root = loggers.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.detachAndStopAllAppenders();
+        root.addAppender(appender);
+        root.setLevel(Level.INFO);
+    }
+
+    @RestController
+    static class MissingBranchController {
+
+        private final boolean stackless;
+
+        MissingBranchController(boolean stackless) {
+            this.stackless = stackless;
+        }
+
+        @GetMapping("/branches/{id}")
+        public Branch getById(@PathVariable Long id) {
+            throw stackless ? new BranchNotFoundException(id)
+                    : new NotFoundException("Branch with id " + id + " not found.");
+        }
+    }
+
+    /**
+     * The 404 handler of {@link ExceptionController} as it was before the stackless exceptions.
+     */
+    @RestControllerAdvice
+    static class StackTraceExceptionController {
+
+        private static final Logger log = LoggerFactory.getLogger(ExceptionController.class);
+
+        private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        @ResponseStatus(HttpStatus.NOT_FOUND)
+        @ExceptionHandler(NotFoundException.class)
+        public ErrorMessage notFound(Exception ex, WebRequest request) {
+            log.error(ex.getMessage());
+            log.error(Arrays.toString(ex.getStackTrace()));
+            meterRegistry.counter("branch.errors", "outcome", HttpStatus.NOT_FOUND.name(),
+                    "exception", ex.getClass().getSimpleName()).increment();
+            return new ErrorMessage(HttpStatus.NOT_FOUND.value(), LocalDateTime.now(),
+                    ex.getMessage(), request.getDescription(false));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package mymarket.branch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.DefaultMockMvcBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.Filter;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Request latency of {@code GET /branches/{id}} with X-Ray tracing disabled, sampled by the shipped rules, and
+ * recording every request with subsegments on all layers, sent either from the request thread or off-thread. The
+ * segments go to a local UDP socket standing in for the daemon.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XRayTracingBenchmark {
+
+    private static final String FULL_SAMPLING_RULES = "{\"version\": 2, \"rules\": [], " +
+            "\"default\": {\"fixed_target\": 0, \"rate\": 1.0}}";
+
+    @Param({"disabled", "sampled", "full", "full-sync"})
+    private String tracing;
+
+    @Param({"10000"})
+    private int branches;
+
+    private DatagramSocket daemon;
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() throws IOException {
+        daemon = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        Thread drain = new Thread(this::drainDaemon, "xray-daemon-stand-in");
+        drain.setDaemon(true);
+        drain.start();
+
+        context = BranchBenchmarkContext.start(WebApplicationType.SERVLET, branches, tracingProperties());
+        DefaultMockMvcBuilder builder = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context);
+        if (context.containsBean("TracingFilter")) {
+            builder.addFilters(context.getBean("TracingFilter", Filter.class));
+        }
+        mockMvc = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BranchBenchmarkContext.stop(context);
+        daemon.close();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse getById() throws Exception {
+        return mockMvc.perform(get("/branches/" + (1 + ThreadLocalRandom.current().nextInt(branches)))
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+    }
+
+    private String[] tracingProperties() throws IOException {
+        String daemonAddress = "branch.xray.daemon-address=127.0.0.1:" + daemon.getLocalPort();
+        switch (tracing) {
+            case "disabled":
+                return new String[]{"branch.xray.enabled=false"};
+            case "sampled":
+                return new String[]{daemonAddress};
+            case "full":
+            case "full-sync":
+                Path rules = Files.createTempFile("xray-sampling-rules", ".json");
+                rules.toFile().deleteOnExit();
+                Files.writeString(rules, FULL_SAMPLING_RULES);
+                return new String[]{daemonAddress,
+                        "branch.xray.sampling-rules=" + rules.toUri(),
+                        "branch.xray.async-emitter.enabled=" + tracing.equals("full")};
+            default:
+                throw new IllegalArgumentException("Unknown tracing mode " + tracing);
+        }
+    }
+
+    private void drainDaemon() {
+        DatagramPacket packet = new DatagramPacket(new byte[65_535], 65_535);
+        while (!daemon.isClosed()) {
+            try {
+                daemon.receive(packet);
+            } catch (IOException ex) {
+                return;
+            }
+        }
+    }
+}
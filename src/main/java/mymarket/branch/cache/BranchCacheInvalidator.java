@@ -0,0 +1,48 @@
+package mymarket.branch.cache;
+
+import lombok.RequiredArgsConstructor;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.model.Branch;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import static mymarket.branch.config.CacheConfiguration.BRANCHES_CACHE;
+import static mymarket.branch.config.CacheConfiguration.BRANCH_OFFERS_CACHE;
+import static mymarket.branch.config.CacheConfiguration.USER_BRANCHES_CACHE;
+import static mymarket.branch.config.CacheConfiguration.USER_BRANCH_OFFERS_CACHE;
+
+/**
+ * Evicts exactly the id and userId entries touched by a write, once the write has committed. Both the old and the
+ * new userId are evicted, so moving a branch between users refreshes both lists. The offer caches hold the branches
+ * too and are evicted alike.
+ */
+@Component
+@RequiredArgsConstructor
+public class BranchCacheInvalidator {
+
+    private final CacheManager cacheManager;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChanged(BranchChangedEvent event) {
+        Cache branches = cacheManager.getCache(BRANCHES_CACHE);
+        Cache userBranches = cacheManager.getCache(USER_BRANCHES_CACHE);
+        Cache branchOffers = cacheManager.getCache(BRANCH_OFFERS_CACHE);
+        Cache userBranchOffers = cacheManager.getCache(USER_BRANCH_OFFERS_CACHE);
+        for (BranchChange change : event.getChanges()) {
+            evict(branches, userBranches, change.getBefore());
+            evict(branches, userBranches, change.getAfter());
+            evict(branchOffers, userBranchOffers, change.getBefore());
+            evict(branchOffers, userBranchOffers, change.getAfter());
+        }
+    }
+
+    private void evict(Cache byId, Cache byUser, Branch branch) {
+        if (branch != null) {
+            byId.evict(branch.getId());
+            byUser.evict(branch.getUserId());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package mymarket.branch.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import mymarket.branch.datasource.ReplicaReads;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Closes the cache-aside race behind {@code @Cacheable}: a reader misses, loads the row, and puts it after a write
+ * has committed and {@link BranchCacheInvalidator} has evicted the key, which would cache the pre-write row for a
+ * whole time-to-live. Evictions bump a per-key stamp; a put following a miss on the same thread evicts the key again
+ * when the stamp moved since that miss, so the stale value is at worst visible between the put and that eviction.
+ * <p>
+ * With a {@code replicaReadTimeToLive}, a value loaded from a read replica, which may lag behind the primary, is kept
+ * for that long at most. The cache must then be built with a variable expiration policy, such as
+ * {@link TimeToLiveExpiry}.
+ */
+public class EvictionGuardedCache extends CaffeineCache {
+
+    private static final int STRIPES = 1024;
+
+    private final Duration replicaReadTimeToLive;
+    private final AtomicLongArray evictions = new AtomicLongArray(STRIPES);
+    private final AtomicLong clears = new AtomicLong();
+    private final ThreadLocal<Miss> lastMiss = new ThreadLocal<>();
+
+    public EvictionGuardedCache(String name, Cache<Object, Object> cache, boolean allowNullValues) {
+        this(name, cache, allowNullValues, null);
+    }
+
+    public EvictionGuardedCache(String name, Cache<Object, Object> cache, boolean allowNullValues,
+                                Duration replicaReadTimeToLive) {
+        super(name, cache, allowNullValues);
+        if (replicaReadTimeToLive != null && cache.policy().expireVariably().isEmpty()) {
+            throw new IllegalArgumentException("Cache " + name + " needs a variable expiration policy");
+        }
+        this.replicaReadTimeToLive = replicaReadTimeToLive;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper value = super.get(key);
+        if (value == null) {
+            lastMiss.set(new Miss(key, stamp(key)));
+            // Only a replica read between this miss and the put counts.
+            ReplicaReads.takeServedByReplica();
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        Miss miss = lastMiss.get();
+        lastMiss.remove();
+        Object storeValue = toStoreValue(value);
+        if (ReplicaReads.takeServedByReplica() && replicaReadTimeToLive != null) {
+            getNativeCache().policy().expireVariably().orElseThrow()
+                    .put(key, storeValue, replicaReadTimeToLive.toNanos(), TimeUnit.NANOSECONDS);
+        } else if (lookup(key) != storeValue) {
+            // Callers coalesced behind a replica read put the very same instance after it, which must keep the
+            // shorter expiry; anything else is written as usual.
+            super.put(key, value);
+        }
+        // Evictions bump the stamp before removing, so one that ran after this put has removed the value already.
+        if (miss != null && miss.key.equals(key) && miss.stamp != stamp(key)) {
+            super.evict(key);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        evictions.incrementAndGet(stripe(key));
+        super.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        evictions.incrementAndGet(stripe(key));
+        return super.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        clears.incrementAndGet();
+        super.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        clears.incrementAndGet();
+        return super.invalidate();
+    }
+
+    private long stamp(Object key) {
+        return evictions.get(stripe(key)) + clears.get();
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static class Miss {
+
+        private final Object key;
+        private final long stamp;
+
+        private Miss(Object key, long stamp) {
+            this.key = key;
+            this.stamp = stamp;
+        }
+    }
+}
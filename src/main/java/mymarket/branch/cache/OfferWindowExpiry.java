@@ -0,0 +1,47 @@
+package mymarket.branch.cache;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+import mymarket.branch.model.BranchOffersSnapshot;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Expires a cached {@link BranchOffersSnapshot} when its next offer starts or ends, and at the latest after
+ * {@code timeToLive}: offers are written by offer-service, so edits to them are only seen once the entry expires.
+ */
+public class OfferWindowExpiry implements Expiry<Object, Object> {
+
+    private final Duration timeToLive;
+    private final Clock clock;
+
+    public OfferWindowExpiry(Duration timeToLive) {
+        this(timeToLive, Clock.systemDefaultZone());
+    }
+
+    OfferWindowExpiry(Duration timeToLive, Clock clock) {
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+        LocalDateTime validUntil = ((BranchOffersSnapshot) value).getValidUntil();
+        LocalDateTime now = LocalDateTime.now(clock);
+        if (validUntil == null || validUntil.isAfter(now.plus(timeToLive))) {
+            return timeToLive.toNanos();
+        }
+        return Math.max(0, Duration.between(now, validUntil).toNanos());
+    }
+
+    @Override
+    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+        return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+}
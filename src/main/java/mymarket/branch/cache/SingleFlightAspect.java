@@ -0,0 +1,95 @@
+package mymarket.branch.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.model.Branch;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Coalesces concurrent cache misses of {@code BranchService.getById} and {@code getByUserId}: the first call for an
+ * id or userId runs the query and every call that arrives while it is in flight waits for it and gets the same result,
+ * or the same exception, so a burst on a hot branch costs one query instead of one per request. Runs between the cache
+ * and the transaction advice, so hits never get here and the waiting calls hold no connection.
+ * <p>
+ * A write drops the flights of the ids and userIds it changed, so a call made after it commits never joins a query
+ * that may have read the row before the write.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+@RequiredArgsConstructor
+public class SingleFlightAspect {
+
+    static final String COALESCED_COUNTER = "branch.single-flight.coalesced";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    @Around("execution(* mymarket.branch.service.BranchService.getById(..)) || " +
+            "execution(* mymarket.branch.service.BranchService.getByUserId(..))")
+    public Object coalesce(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = joinPoint.getSignature().getName();
+        List<Object> key = new ArrayList<>();
+        key.add(method);
+        key.addAll(Arrays.asList(joinPoint.getArgs()));
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            Counter.builder(COALESCED_COUNTER).tag("method", method).register(meterRegistry).increment();
+            try {
+                return leader.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        try {
+            Object result = joinPoint.proceed();
+            inFlight.remove(key, flight);
+            flight.complete(result);
+            return result;
+        } catch (Throwable ex) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs before the write commits, like {@code ReplicaReads}, so no call can join a stale flight after the commit.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onChanged(BranchChangedEvent event) {
+        for (BranchChange change : event.getChanges()) {
+            dropFlights(change.getBefore());
+            dropFlights(change.getAfter());
+        }
+    }
+
+    private void dropFlights(Branch branch) {
+        if (branch != null) {
+            inFlight.remove(List.of("getById", branch.getId()));
+            inFlight.remove(List.of("getByUserId", branch.getUserId()));
+        }
+    }
+}
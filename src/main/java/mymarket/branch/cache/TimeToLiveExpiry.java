@@ -0,0 +1,33 @@
+package mymarket.branch.cache;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+
+/**
+ * Expires entries {@code timeToLive} after they were written, like {@code expireAfterWrite}, but leaves the cache's
+ * variable expiration policy available, so {@link EvictionGuardedCache} can put a replica read for less.
+ */
+public class TimeToLiveExpiry implements Expiry<Object, Object> {
+
+    private final long timeToLiveNanos;
+
+    public TimeToLiveExpiry(Duration timeToLive) {
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+        return timeToLiveNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+        return timeToLiveNanos;
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+}
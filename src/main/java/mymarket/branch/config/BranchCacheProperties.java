@@ -0,0 +1,43 @@
+package mymarket.branch.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("branch.cache")
+public class BranchCacheProperties {
+
+    private final ById byId = new ById();
+    private final ByUser byUser = new ByUser();
+    private final Offers offers = new Offers();
+
+    @Data
+    public static class ById {
+        private long maximumSize = 10_000;
+        private Duration timeToLive = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class ByUser {
+        /**
+         * Bound on the total number of branches held across all cached per-user lists.
+         */
+        private long maximumBranches = 100_000;
+        private Duration timeToLive = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Offers {
+        /**
+         * Entries of each of the by-id and by-user offer caches.
+         */
+        private long maximumSize = 10_000;
+        /**
+         * Upper bound on how long an entry lives when no offer of its branches starts or ends before; offers are
+         * changed by offer-service, so this is how stale an offer edit can be.
+         */
+        private Duration timeToLive = Duration.ofMinutes(1);
+    }
+}
@@ -0,0 +1,40 @@
+package mymarket.branch.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("branch.changes")
+public class BranchChangesProperties {
+
+    /**
+     * Most outbox rows read per relay run, and per catch-up read of a lagging subscriber.
+     */
+    private int batchSize = 500;
+
+    /**
+     * Most recent changes kept in memory, so subscribers that are up to date never read the table.
+     */
+    private int bufferSize = 2000;
+
+    /**
+     * How long a missing outbox id is looked up on every relay run, in case its transaction commits late, before it
+     * is given up as a rolled back insert.
+     */
+    private Duration gapTimeout = Duration.ofMinutes(5);
+
+    /**
+     * A comment is sent to subscribers that got nothing for this long, so proxies keep the connection open and
+     * closed connections are noticed.
+     */
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    /**
+     * Servlet stream lifetime; clients reconnect with Last-Event-ID and lose nothing.
+     */
+    private Duration timeout = Duration.ofMinutes(30);
+
+    private int deliveryThreads = 4;
+}
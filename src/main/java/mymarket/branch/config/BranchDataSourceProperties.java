@@ -0,0 +1,43 @@
+package mymarket.branch.config;
+
+import lombok.Data;
+import mymarket.branch.datasource.ReadWriteRoutingDataSource;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties("branch.datasource")
+public class BranchDataSourceProperties {
+
+    /**
+     * Read replicas of the {@code spring.datasource} primary; reads stay on the primary while this is empty.
+     */
+    private List<Replica> replicas = new ArrayList<>();
+
+    private ReadWriteRoutingDataSource.Selection selection = ReadWriteRoutingDataSource.Selection.ROUND_ROBIN;
+
+    /**
+     * How long the reads of a branch, and of its user's list, stay on the primary after a write touched them. Must
+     * be longer than the replication lag, or a stale row can be read back and cached.
+     */
+    private Duration stickyWindow = Duration.ofSeconds(2);
+
+    /**
+     * How long a read waits for a replica connection, and a health check for it to validate, before the replica is
+     * taken out of the rotation.
+     */
+    private Duration failoverTimeout = Duration.ofSeconds(1);
+
+    @Data
+    public static class Replica {
+        private String url;
+        /**
+         * Defaults to the primary's credentials.
+         */
+        private String username;
+        private String password;
+    }
+}
@@ -0,0 +1,76 @@
+package mymarket.branch.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import mymarket.branch.cache.EvictionGuardedCache;
+import mymarket.branch.cache.OfferWindowExpiry;
+import mymarket.branch.cache.TimeToLiveExpiry;
+import mymarket.branch.model.UserBranches;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Caching runs just outside the single-flight and transaction advice, so a cache hit never begins a transaction.
+ */
+@Configuration
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 2)
+@EnableConfigurationProperties({BranchCacheProperties.class, BranchDataSourceProperties.class})
+public class CacheConfiguration {
+
+    public static final String BRANCHES_CACHE = "branches";
+    public static final String USER_BRANCHES_CACHE = "userBranches";
+    public static final String BRANCH_OFFERS_CACHE = "branchOffers";
+    public static final String USER_BRANCH_OFFERS_CACHE = "userBranchOffers";
+
+    /**
+     * The id and user caches are filled from the read replicas too; an entry read from one is only kept for
+     * {@code branch.datasource.sticky-window}, so a row the replica served before it caught up is soon read again.
+     */
+    @Bean
+    public CacheManager cacheManager(BranchCacheProperties properties,
+                                     BranchDataSourceProperties dataSourceProperties) {
+        Duration stickyWindow = dataSourceProperties.getStickyWindow();
+        Map<String, Duration> replicaReadTimeToLive = Map.of(
+                BRANCHES_CACHE, min(properties.getById().getTimeToLive(), stickyWindow),
+                USER_BRANCHES_CACHE, min(properties.getByUser().getTimeToLive(), stickyWindow));
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+            @Override
+            protected Cache adaptCaffeineCache(String name,
+                                               com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+                return new EvictionGuardedCache(name, cache, isAllowNullValues(), replicaReadTimeToLive.get(name));
+            }
+        };
+        cacheManager.registerCustomCache(BRANCHES_CACHE, Caffeine.newBuilder()
+                .maximumSize(properties.getById().getMaximumSize())
+                .expireAfter(new TimeToLiveExpiry(properties.getById().getTimeToLive()))
+                .recordStats()
+                .build());
+        // Per-user lists vary wildly in size, so they are bounded by the number of branches they hold.
+        cacheManager.registerCustomCache(USER_BRANCHES_CACHE, Caffeine.newBuilder()
+                .maximumWeight(properties.getByUser().getMaximumBranches())
+                .<Object, Object>weigher((userId, branches) -> ((UserBranches) branches).getBranches().size() + 1)
+                .expireAfter(new TimeToLiveExpiry(properties.getByUser().getTimeToLive()))
+                .recordStats()
+                .build());
+        for (String offersCache : new String[]{BRANCH_OFFERS_CACHE, USER_BRANCH_OFFERS_CACHE}) {
+            cacheManager.registerCustomCache(offersCache, Caffeine.newBuilder()
+                    .maximumSize(properties.getOffers().getMaximumSize())
+                    .expireAfter(new OfferWindowExpiry(properties.getOffers().getTimeToLive()))
+                    .recordStats()
+                    .build());
+        }
+        return cacheManager;
+    }
+
+    private static Duration min(Duration first, Duration second) {
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+}
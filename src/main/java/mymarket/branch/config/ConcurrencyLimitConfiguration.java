@@ -0,0 +1,53 @@
+package mymarket.branch.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mymarket.branch.limit.AdaptiveConcurrencyLimit;
+import mymarket.branch.limit.ConcurrencyLimitFilter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+
+/**
+ * The read and write budgets of {@link ConcurrencyLimitFilter}. Being MeterBinders, Boot publishes their limit,
+ * in-flight, queued and rejected counts under {@code branch.concurrency.*}. The filter runs after Boot's request
+ * metrics filter, so shed requests still show up in {@code http.server.requests} as 503s.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(value = "branch.concurrency-limit.enabled", matchIfMissing = true)
+@EnableConfigurationProperties(ConcurrencyLimitProperties.class)
+public class ConcurrencyLimitConfiguration {
+
+    @Bean
+    public AdaptiveConcurrencyLimit readConcurrencyLimit(ConcurrencyLimitProperties properties) {
+        return limit("read", properties.getRead());
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimit writeConcurrencyLimit(ConcurrencyLimitProperties properties) {
+        return limit("write", properties.getWrite());
+    }
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Qualifier("readConcurrencyLimit") AdaptiveConcurrencyLimit readLimit,
+            @Qualifier("writeConcurrencyLimit") AdaptiveConcurrencyLimit writeLimit,
+            ConcurrencyLimitProperties properties, ObjectMapper objectMapper) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(
+                new ConcurrencyLimitFilter(readLimit, writeLimit, properties.getRetryAfter(), objectMapper));
+        registration.addUrlPatterns("/branches", "/branches/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+    private static AdaptiveConcurrencyLimit limit(String name, ConcurrencyLimitProperties.Budget budget) {
+        return new AdaptiveConcurrencyLimit(name, budget.getInitialLimit(), budget.getMinLimit(),
+                budget.getMaxLimit(), budget.getLatencyThreshold(), budget.getBackoffRatio(), budget.getQueueSize(),
+                budget.getMaxWait());
+    }
+}
@@ -0,0 +1,49 @@
+package mymarket.branch.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("branch.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Sent in the Retry-After header of shed requests.
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    /**
+     * GETs and lookups, mostly answered from the caches and indexes.
+     */
+    private final Budget read = new Budget(100, 10, 200, Duration.ofMillis(250), 0.9, 50, Duration.ofMillis(100));
+
+    /**
+     * Saves and deletes, which hold a pooled connection for their whole transaction.
+     */
+    private final Budget write = new Budget(4, 1, 10, Duration.ofSeconds(2), 0.9, 10, Duration.ofSeconds(1));
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Budget {
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+        /**
+         * Requests slower than this, like the ones answered with a 5xx, lower the limit; faster ones raise it.
+         */
+        private Duration latencyThreshold;
+        private double backoffRatio;
+        /**
+         * Requests over the limit that may wait for a slot, each for at most {@code maxWait}.
+         */
+        private int queueSize;
+        private Duration maxWait;
+    }
+}
@@ -0,0 +1,22 @@
+package mymarket.branch.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("branch.errors.stack-traces")
+public class ErrorLogProperties {
+
+    /**
+     * Unexpected errors logged with their stack trace in every interval before sampling starts.
+     */
+    private int burst = 10;
+    private Duration interval = Duration.ofMinutes(1);
+
+    /**
+     * Past the burst, one in this many unexpected errors is logged.
+     */
+    private int sampleRate = 100;
+}
@@ -0,0 +1,64 @@
+package mymarket.branch.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import mymarket.branch.datasource.ReadWriteRoutingDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * With {@code branch.datasource.replicas} set, the primary pool of {@code spring.datasource} and one pool per replica,
+ * tuned like the primary's, are put behind a {@link ReadWriteRoutingDataSource}. The pools are not beans of their own:
+ * Boot's DataSource initializer needs a single DataSource. The reactive profile declares its own pool and reads
+ * through R2DBC, so it is left out.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty("branch.datasource.replicas[0].url")
+@EnableConfigurationProperties({DataSourceProperties.class, BranchDataSourceProperties.class})
+public class ReadReplicaConfiguration {
+
+    @Bean
+    public ReadWriteRoutingDataSource dataSource(DataSourceProperties dataSourceProperties,
+                                                 BranchDataSourceProperties properties, Environment environment,
+                                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        // Bound by hand, since ReactiveConfiguration already declares spring.datasource.hikari.
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (BranchDataSourceProperties.Replica replica : properties.getReplicas()) {
+            HikariConfig config = new HikariConfig();
+            primary.copyStateTo(config);
+            config.setPoolName("replica-" + replicas.size());
+            config.setJdbcUrl(replica.getUrl());
+            config.setConnectionTimeout(properties.getFailoverTimeout().toMillis());
+            // A replica that is down at startup is only taken out of the rotation.
+            config.setInitializationFailTimeout(-1);
+            if (replica.getUsername() != null) {
+                config.setUsername(replica.getUsername());
+                config.setPassword(replica.getPassword());
+            }
+            meterRegistry.ifAvailable(registry ->
+                    config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            replicas.add(new HikariDataSource(config));
+        }
+        return new ReadWriteRoutingDataSource(primary, replicas, properties.getSelection(),
+                properties.getFailoverTimeout());
+    }
+}
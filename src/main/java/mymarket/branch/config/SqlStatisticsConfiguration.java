@@ -0,0 +1,58 @@
+package mymarket.branch.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import mymarket.branch.datasource.SqlStatementsEndpoint;
+import mymarket.branch.datasource.SqlStatistics;
+import mymarket.branch.datasource.SqlStatisticsDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * Puts a {@link SqlStatisticsDataSource} in front of every DataSource bean. A delegating one, like the
+ * {@code ReadWriteRoutingDataSource} of the read replicas, gets it in front of its target instead, so the bean itself
+ * keeps its type and its scheduled health checks, and only the connections actually taken are measured.
+ */
+@Configuration
+@ConditionalOnProperty(value = "branch.sql.enabled", matchIfMissing = true)
+@EnableConfigurationProperties(SqlStatisticsProperties.class)
+public class SqlStatisticsConfiguration {
+
+    @Bean
+    public SqlStatistics sqlStatistics(MeterRegistry meterRegistry, SqlStatisticsProperties properties) {
+        return new SqlStatistics(meterRegistry, properties);
+    }
+
+    @Bean
+    public SqlStatementsEndpoint sqlStatementsEndpoint(SqlStatistics sqlStatistics,
+                                                       SqlStatisticsProperties properties) {
+        return new SqlStatementsEndpoint(sqlStatistics, properties.getTop());
+    }
+
+    @Bean
+    public static BeanPostProcessor sqlStatisticsDataSourcePostProcessor(ObjectProvider<SqlStatistics> statistics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource) || bean instanceof SqlStatisticsDataSource) {
+                    return bean;
+                }
+                if (bean instanceof DelegatingDataSource) {
+                    DelegatingDataSource delegating = (DelegatingDataSource) bean;
+                    if (!(delegating.getTargetDataSource() instanceof SqlStatisticsDataSource)) {
+                        delegating.setTargetDataSource(new SqlStatisticsDataSource(
+                                delegating.getTargetDataSource(), statistics.getObject()));
+                    }
+                    return bean;
+                }
+                return new SqlStatisticsDataSource((DataSource) bean, statistics.getObject());
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package mymarket.branch.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties("branch.sql")
+public class SqlStatisticsProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Statements that take longer than this to execute are logged, with their shape instead of their SQL.
+     */
+    private Duration slowThreshold = Duration.ofMillis(200);
+
+    /**
+     * Whether the slow log leaves out the bind parameters other than numbers and booleans, which may hold names,
+     * addresses or emails.
+     */
+    private boolean redactParameters = true;
+
+    /**
+     * Query shapes with their own metrics; statements of any further shape are counted together as {@code other}.
+     */
+    private int maxShapes = 500;
+
+    /**
+     * Query shapes listed by the {@code sqlstatements} actuator endpoint when no limit is given.
+     */
+    private int top = 10;
+}
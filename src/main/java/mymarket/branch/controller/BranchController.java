@@ -3,28 +3,60 @@ package mymarket.branch.controller;
 import com.amazonaws.xray.spring.aop.XRayEnabled;
 import lombok.RequiredArgsConstructor;
 import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchOffers;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.BranchViewport;
+import mymarket.branch.model.BulkDeleteResult;
+import mymarket.branch.model.ExportFormat;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.model.UpsertResult;
+import mymarket.branch.model.UserBranches;
+import mymarket.branch.service.BranchChangeFeed;
+import mymarket.branch.service.BranchExportService;
+import mymarket.branch.service.BranchImportService;
+import mymarket.branch.service.BranchOfferService;
 import mymarket.branch.service.BranchService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
 
 @RequestMapping("/branches")
 @RestController
 @XRayEnabled
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class BranchController {
 
     private final BranchService branchService;
+    private final BranchImportService branchImportService;
+    private final BranchExportService branchExportService;
+    private final BranchChangeFeed branchChangeFeed;
+    private final BranchOfferService branchOfferService;
 
     @PostMapping
     public ResponseEntity<List<Branch>> save(@RequestBody List<Branch> branches) {
@@ -36,23 +68,213 @@ public class BranchController {
 
     }
 
+    /**
+     * Inserts or updates the branches by user and name, so a retried request does not duplicate them. A request
+     * retried with the same Idempotency-Key gets the result of the first one without writing again.
+     */
+    @PostMapping(params = "mode=upsert")
+    public UpsertResult upsert(@RequestBody List<Branch> branches,
+                               @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return branchService.upsert(branches, idempotencyKey);
+    }
+
+    /**
+     * Streams the request body (NDJSON or a JSON array) into the database chunk by chunk, answering with one NDJSON
+     * progress line per committed or failed chunk.
+     */
+    @PostMapping(value = "import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public void importBranches(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        branchImportService.importBranches(body, response.getOutputStream());
+    }
+
+    @GetMapping("export")
+    public void exportBranches(@RequestParam(value = "userId", required = false) Long userId,
+                               @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                               HttpServletResponse response) throws IOException {
+        ExportFormat exportFormat = ExportFormat.of(format);
+        response.setContentType(exportFormat.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"branches." + exportFormat.getExtension() + "\"");
+        branchExportService.export(userId, exportFormat, response.getOutputStream());
+    }
+
+    /**
+     * Server-Sent Events stream of the branch changes after {@code since}, or from now on. Every event carries its
+     * outbox id, so a reconnecting client resumes where it stopped through Last-Event-ID.
+     */
+    @GetMapping(value = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter changes(@RequestParam(value = "since", required = false) Long since,
+                              @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(branchChangeFeed.getStreamTimeout().toMillis());
+        BranchChangeFeed.Subscription subscription = branchChangeFeed.subscribe(lastEventId != null ? lastEventId : since,
+                entries -> send(emitter, entries));
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> subscription.cancel());
+        return emitter;
+    }
+
     @DeleteMapping("{id}")
     public void deleteById(@PathVariable("id") Long id) {
         branchService.deleteById(id);
     }
 
+    @DeleteMapping(params = {"ids", "!userId"})
+    public BulkDeleteResult deleteByIds(@RequestParam("ids") List<Long> ids) {
+        return new BulkDeleteResult(branchService.deleteByIds(ids));
+    }
+
+    @DeleteMapping(params = {"userId", "!ids"})
+    public BulkDeleteResult deleteByUserId(@RequestParam("userId") Long userId) {
+        return new BulkDeleteResult(branchService.deleteByUserId(userId));
+    }
+
+    /**
+     * A conditional GET is answered from the version alone, without loading the branch.
+     */
     @GetMapping("{id}")
-    public Branch getById(@PathVariable("id") Long id) {
-        return branchService.getById(id);
+    public ResponseEntity<Branch> getById(@PathVariable("id") Long id,
+                                          @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String matched = BranchETags.matching(ifNoneMatch, BranchETags.branch(id, branchService.getVersion(id)));
+            if (matched != null) {
+                return notModified(matched);
+            }
+        }
+        Branch branch = branchService.getById(id);
+
+        return ResponseEntity.ok().eTag(BranchETags.branch(id, branch.getVersion())).body(branch);
     }
 
+    /**
+     * A conditional GET is answered from the per-user list version alone, without loading the branches.
+     */
     @GetMapping
-    public ResponseEntity<List<Branch>> getByUserId(@RequestParam("userId") Long userId) {
-        List<Branch> branchesObjects =  branchService.getByUserId(userId);
+    public ResponseEntity<List<Branch>> getByUserId(@RequestParam("userId") Long userId,
+                                                    @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            String matched = BranchETags.matching(ifNoneMatch,
+                    BranchETags.userBranches(userId, branchService.getUserVersion(userId)));
+            if (matched != null) {
+                return notModified(matched);
+            }
+        }
+        UserBranches userBranches = branchService.getByUserId(userId);
+        String eTag = BranchETags.userBranches(userId, userBranches.getVersion());
+
+        return userBranches.getBranches().isEmpty() ?
+                ResponseEntity.noContent().eTag(eTag).build() :
+                ResponseEntity.ok().eTag(eTag).body(userBranches.getBranches());
+    }
+
+    /**
+     * The branch with the offers currently available at it.
+     */
+    @GetMapping("{id}/offers")
+    public BranchOffers getOffersById(@PathVariable("id") Long id) {
+        return branchOfferService.getById(id).getBranches().get(0);
+    }
 
-        return branchesObjects.isEmpty()?
+    @GetMapping("offers")
+    public ResponseEntity<List<BranchOffers>> getOffersByUserId(@RequestParam("userId") Long userId) {
+        List<BranchOffers> branches = branchOfferService.getByUserId(userId).getBranches();
+
+        return branches.isEmpty() ?
                 ResponseEntity.noContent().build() :
-                ResponseEntity.ok(branchesObjects);
+                ResponseEntity.ok(branches);
+    }
+
+    @GetMapping(params = "ids")
+    public BranchLookup getByIds(@RequestParam("ids") List<Long> ids) {
+        return branchService.getByIds(ids);
+    }
+
+    /**
+     * Same as {@code GET /branches?ids=}, for id lists too long for a query string.
+     */
+    @PostMapping("lookup")
+    public BranchLookup lookup(@RequestBody List<Long> ids) {
+        return branchService.getByIds(ids);
+    }
+
+    @GetMapping(params = "limit")
+    public ResponseEntity<BranchPage> getPageByUserId(@RequestParam("userId") Long userId,
+                                                      @RequestParam(value = "after", required = false) String after,
+                                                      @RequestParam("limit") Integer limit) {
+        BranchPage page = branchService.getPageByUserId(userId, after, limit);
+
+        return page.getItems().isEmpty() ?
+                ResponseEntity.noContent().build() :
+                ResponseEntity.ok(page);
+    }
+
+    @GetMapping("nearby")
+    public ResponseEntity<List<NearbyBranch>> getNearby(@RequestParam("lat") Double latitude,
+                                                        @RequestParam("lon") Double longitude,
+                                                        @RequestParam(value = "radiusKm", defaultValue = "10") Double radiusKm,
+                                                        @RequestParam(value = "limit", defaultValue = "20") Integer limit) {
+        List<NearbyBranch> nearbyBranches = branchService.getNearby(latitude, longitude, radiusKm, limit);
+
+        return nearbyBranches.isEmpty() ?
+                ResponseEntity.noContent().build() :
+                ResponseEntity.ok(nearbyBranches);
+    }
+
+    @GetMapping("search")
+    public ResponseEntity<List<Branch>> search(@RequestParam("q") String query,
+                                               @RequestParam(value = "userId", required = false) Long userId,
+                                               @RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+        List<Branch> branches = branchService.search(query, userId, limit);
+
+        return branches.isEmpty() ?
+                ResponseEntity.noContent().build() :
+                ResponseEntity.ok(branches);
+    }
+
+    @GetMapping("counts/cities")
+    public Map<String, Long> countByCity() {
+        return branchService.countByCity();
+    }
+
+    @GetMapping("counts/users")
+    public Map<Long, Long> countByUser() {
+        return branchService.countByUser();
+    }
+
+    @GetMapping("counts/users/{userId}")
+    public long countOfUser(@PathVariable("userId") Long userId) {
+        return branchService.countOfUser(userId);
+    }
+
+    @GetMapping("viewport")
+    public ResponseEntity<BranchViewport> getViewport(@RequestParam("minLat") Double minLat,
+                                                      @RequestParam("minLon") Double minLon,
+                                                      @RequestParam("maxLat") Double maxLat,
+                                                      @RequestParam("maxLon") Double maxLon,
+                                                      @RequestParam("zoom") Integer zoom) {
+        return ResponseEntity.ok(branchService.getViewport(minLat, minLon, maxLat, maxLon, zoom));
+    }
+
+    private static boolean send(SseEmitter emitter, List<BranchChangeEntry> entries) {
+        try {
+            if (entries.isEmpty()) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+            for (BranchChangeEntry entry : entries) {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(entry.getId()))
+                        .name(entry.getType().name().toLowerCase(Locale.ROOT))
+                        .data(entry, MediaType.APPLICATION_JSON));
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // The client went away, or the stream timed out in between.
+            return false;
+        }
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
     }
 
     private URI getLocation(Branch branch) {
@@ -0,0 +1,64 @@
+package mymarket.branch.controller;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Strong ETags of the branch resources: a branch is tagged with its id and version, a user's branch list with the
+ * per-user list version. Both versions move with every write that changes the JSON. The binary representations get
+ * the subtype appended ({@code "1-3+cbor"}), since their bytes differ from the JSON ones.
+ */
+final class BranchETags {
+
+    private static final char FORMAT_SEPARATOR = '+';
+
+    private BranchETags() {
+    }
+
+    static String branch(Long id, long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    static String userBranches(Long userId, long version) {
+        return "\"user-" + userId + "-" + version + "\"";
+    }
+
+    static String forFormat(String eTag, MediaType contentType) {
+        if (contentType == null || isJson(contentType) || eTag.indexOf(FORMAT_SEPARATOR) >= 0) {
+            return eTag;
+        }
+        return eTag.substring(0, eTag.length() - 1) + FORMAT_SEPARATOR + contentType.getSubtype() + "\"";
+    }
+
+    /**
+     * Returns the If-None-Match tag that is still current, or null. If-None-Match uses the weak comparison, so
+     * {@code W/} prefixed copies of the tag match too, and so does the tag of any format of the same version: the
+     * client holds whichever representation it was sent.
+     */
+    static String matching(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return eTag;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (withoutFormat(tag).equals(eTag)) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    private static String withoutFormat(String tag) {
+        int separator = tag.indexOf(FORMAT_SEPARATOR);
+        return separator < 0 ? tag : tag.substring(0, separator) + "\"";
+    }
+
+    private static boolean isJson(MediaType contentType) {
+        return MediaType.APPLICATION_JSON.isCompatibleWith(contentType) || contentType.getSubtype().endsWith("+json");
+    }
+}
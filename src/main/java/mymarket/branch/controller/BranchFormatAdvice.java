@@ -0,0 +1,42 @@
+package mymarket.branch.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Bodies are negotiated between JSON, Smile and CBOR, so they vary by Accept and their ETag names the format that
+ * was actually selected.
+ */
+@ControllerAdvice(assignableTypes = BranchController.class)
+@Profile("!reactive")
+public class BranchFormatAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        response.getHeaders().set(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        // The ResponseEntity ETag has already been moved onto the servlet response by Spring's If-None-Match check.
+        HttpServletResponse servletResponse = ((ServletServerHttpResponse) response).getServletResponse();
+        String eTag = servletResponse.getHeader(HttpHeaders.ETAG);
+        if (eTag != null) {
+            servletResponse.setHeader(HttpHeaders.ETAG, BranchETags.forFormat(eTag, selectedContentType));
+        }
+        return body;
+    }
+}
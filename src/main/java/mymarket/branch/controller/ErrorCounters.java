@@ -0,0 +1,31 @@
+package mymarket.branch.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@code branch.errors} counters, tagged with the handler that answered, the status and the exception. Each one is
+ * registered once and kept, so counting an error costs a map lookup instead of building its tags again.
+ */
+@RequiredArgsConstructor
+class ErrorCounters {
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<List<Object>, Counter> counters = new ConcurrentHashMap<>();
+
+    void increment(String handler, HttpStatus status, Throwable ex) {
+        counters.computeIfAbsent(List.of(handler, status, ex.getClass()), key -> Counter.builder(ExceptionController.ERRORS_COUNTER)
+                .tag("handler", handler)
+                .tag("outcome", status.name())
+                .tag("exception", ex.getClass().getSimpleName())
+                .register(meterRegistry))
+                .increment();
+    }
+}
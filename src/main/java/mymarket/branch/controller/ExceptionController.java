@@ -1,8 +1,11 @@
 package mymarket.branch.controller;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import mymarket.branch.exception.IdempotencyKeyInProgressException;
 import mymarket.exception.commons.exception.ErrorMessage;
 import mymarket.exception.commons.exception.NotFoundException;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.HttpStatus;
@@ -15,28 +18,49 @@ import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import java.time.LocalDateTime;
-import java.util.Arrays;
 
+/**
+ * Answers the expected errors, a bad request, a missing branch or a conflicting retry, with their message. They are
+ * only logged at debug level and without the stack, since a scanner can cause thousands of them a second; the
+ * unexpected ones go through {@link UnexpectedExceptionResolver}.
+ */
 @Slf4j
 @RestControllerAdvice
+@Profile("!reactive")
 public class ExceptionController {
 
+    static final String ERRORS_COUNTER = "branch.errors";
+
+    private final ErrorCounters errorCounters;
+
+    public ExceptionController(MeterRegistry meterRegistry) {
+        this.errorCounters = new ErrorCounters(meterRegistry);
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler({MissingServletRequestParameterException.class, MethodArgumentTypeMismatchException.class,
-            DataIntegrityViolationException.class, MethodArgumentNotValidException.class})
+            DataIntegrityViolationException.class, MethodArgumentNotValidException.class,
+            IllegalArgumentException.class})
     public ErrorMessage badRequest(Exception ex, WebRequest request) {
-        log.error(ex.getMessage());
-        log.error(Arrays.toString(ex.getStackTrace()));
-        return new ErrorMessage(HttpStatus.BAD_REQUEST.value(), LocalDateTime.now(),
-                ex.getMessage(), request.getDescription(false));
+        return errorMessage("badRequest", HttpStatus.BAD_REQUEST, ex, request);
     }
 
     @ResponseStatus(HttpStatus.NOT_FOUND)
     @ExceptionHandler({NotFoundException.class, EmptyResultDataAccessException.class})
     public ErrorMessage notFound(Exception ex, WebRequest request) {
-        log.error(ex.getMessage());
-        log.error(Arrays.toString(ex.getStackTrace()));
-        return new ErrorMessage(HttpStatus.NOT_FOUND.value(), LocalDateTime.now(),
-                ex.getMessage(), request.getDescription(false));
+        return errorMessage("notFound", HttpStatus.NOT_FOUND, ex, request);
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(IdempotencyKeyInProgressException.class)
+    public ErrorMessage conflict(Exception ex, WebRequest request) {
+        return errorMessage("conflict", HttpStatus.CONFLICT, ex, request);
+    }
+
+    private ErrorMessage errorMessage(String handler, HttpStatus status, Exception ex, WebRequest request) {
+        String description = request.getDescription(false);
+        log.debug("{} {}: {}", status.value(), description, ex.getMessage());
+        errorCounters.increment(handler, status, ex);
+        return new ErrorMessage(status.value(), LocalDateTime.now(), ex.getMessage(), description);
     }
 }
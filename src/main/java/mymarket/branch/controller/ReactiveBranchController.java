@@ -0,0 +1,212 @@
+package mymarket.branch.controller;
+
+import lombok.RequiredArgsConstructor;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.BranchViewport;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.service.BranchChangeFeed;
+import mymarket.branch.service.ReactiveBranchService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+
+/**
+ * WebFlux counterpart of {@link BranchController} for the {@code reactive} profile, with the same paths, statuses
+ * and bodies. The import, export and bulk delete endpoints are servlet-only.
+ */
+@RequestMapping("/branches")
+@RestController
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveBranchController {
+
+    private final ReactiveBranchService branchService;
+    private final BranchChangeFeed branchChangeFeed;
+
+    /**
+     * Upserts are not served here, so {@code ?mode=upsert} is rejected instead of being saved as plain inserts.
+     */
+    @PostMapping(params = "!mode")
+    public Mono<ResponseEntity<List<Branch>>> save(@RequestBody List<Branch> branches, ServerHttpRequest request) {
+        return branchService.save(branches)
+                .map(branchesObjects -> branchesObjects.isEmpty() ?
+                        ResponseEntity.noContent().build() :
+                        ResponseEntity.created(getLocation(request, branchesObjects.get(0))).build());
+    }
+
+    /**
+     * Same stream as {@code BranchController#changes}. A client that cannot keep up gets an error instead of an
+     * ever-growing buffer, and resumes through Last-Event-ID.
+     */
+    @GetMapping(value = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<BranchChangeEntry>> changes(@RequestParam(value = "since", required = false) Long since,
+                                                            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return Flux.<List<BranchChangeEntry>>create(sink -> {
+            BranchChangeFeed.Subscription subscription = branchChangeFeed.subscribe(
+                    lastEventId != null ? lastEventId : since, entries -> {
+                        if (sink.isCancelled()) {
+                            return false;
+                        }
+                        sink.next(entries);
+                        return true;
+                    });
+            sink.onDispose(subscription::cancel);
+        }, FluxSink.OverflowStrategy.ERROR).concatMapIterable(ReactiveBranchController::toEvents);
+    }
+
+    @DeleteMapping("{id}")
+    public Mono<Void> deleteById(@PathVariable("id") Long id) {
+        return branchService.deleteById(id);
+    }
+
+    @GetMapping("{id}")
+    public Mono<ResponseEntity<Branch>> getById(@PathVariable("id") Long id,
+                                                @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Mono<ResponseEntity<Branch>> branch = Mono.defer(() -> branchService.getById(id))
+                .map(found -> ResponseEntity.ok().eTag(BranchETags.branch(id, found.getVersion())).body(found));
+        if (ifNoneMatch == null) {
+            return branch;
+        }
+        return branchService.getVersion(id)
+                .map(version -> BranchETags.branch(id, version))
+                .flatMap(eTag -> Mono.justOrEmpty(BranchETags.matching(ifNoneMatch, eTag))
+                        .map(ReactiveBranchController::<Branch>notModified)
+                        .switchIfEmpty(branch));
+    }
+
+    /**
+     * Streams the branches as they are read. The status line goes out before the first row, so the list version
+     * and an existence query decide between 304, 200 and 204 up front.
+     */
+    @GetMapping
+    public Mono<ResponseEntity<Flux<Branch>>> getByUserId(@RequestParam("userId") Long userId,
+                                                          @RequestHeader(value = IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return branchService.getUserVersion(userId)
+                .map(version -> BranchETags.userBranches(userId, version))
+                .flatMap(eTag -> Mono.justOrEmpty(BranchETags.matching(ifNoneMatch, eTag))
+                        .map(ReactiveBranchController::<Flux<Branch>>notModified)
+                        .switchIfEmpty(Mono.defer(() -> branchService.hasBranches(userId))
+                                .map(hasBranches -> hasBranches ?
+                                        ResponseEntity.ok().eTag(eTag).body(branchService.getByUserId(userId)) :
+                                        ResponseEntity.noContent().eTag(eTag).build())));
+    }
+
+    @GetMapping(params = "ids")
+    public Mono<BranchLookup> getByIds(@RequestParam("ids") List<Long> ids) {
+        return branchService.getByIds(ids);
+    }
+
+    @PostMapping("lookup")
+    public Mono<BranchLookup> lookup(@RequestBody List<Long> ids) {
+        return branchService.getByIds(ids);
+    }
+
+    @GetMapping(params = "limit")
+    public Mono<ResponseEntity<BranchPage>> getPageByUserId(@RequestParam("userId") Long userId,
+                                                            @RequestParam(value = "after", required = false) String after,
+                                                            @RequestParam("limit") Integer limit) {
+        return branchService.getPageByUserId(userId, after, limit)
+                .map(page -> page.getItems().isEmpty() ?
+                        ResponseEntity.noContent().build() :
+                        ResponseEntity.ok(page));
+    }
+
+    @GetMapping("nearby")
+    public Mono<ResponseEntity<List<NearbyBranch>>> getNearby(@RequestParam("lat") Double latitude,
+                                                              @RequestParam("lon") Double longitude,
+                                                              @RequestParam(value = "radiusKm", defaultValue = "10") Double radiusKm,
+                                                              @RequestParam(value = "limit", defaultValue = "20") Integer limit) {
+        return branchService.getNearby(latitude, longitude, radiusKm, limit)
+                .map(nearbyBranches -> nearbyBranches.isEmpty() ?
+                        ResponseEntity.noContent().build() :
+                        ResponseEntity.ok(nearbyBranches));
+    }
+
+    @GetMapping("search")
+    public Mono<ResponseEntity<List<Branch>>> search(@RequestParam("q") String query,
+                                                     @RequestParam(value = "userId", required = false) Long userId,
+                                                     @RequestParam(value = "limit", defaultValue = "10") Integer limit) {
+        return branchService.search(query, userId, limit)
+                .map(branches -> branches.isEmpty() ?
+                        ResponseEntity.noContent().build() :
+                        ResponseEntity.ok(branches));
+    }
+
+    @GetMapping("counts/cities")
+    public Mono<Map<String, Long>> countByCity() {
+        return branchService.countByCity();
+    }
+
+    @GetMapping("counts/users")
+    public Mono<Map<Long, Long>> countByUser() {
+        return branchService.countByUser();
+    }
+
+    @GetMapping("counts/users/{userId}")
+    public Mono<Long> countOfUser(@PathVariable("userId") Long userId) {
+        return branchService.countOfUser(userId);
+    }
+
+    @GetMapping("viewport")
+    public Mono<BranchViewport> getViewport(@RequestParam("minLat") Double minLat,
+                                            @RequestParam("minLon") Double minLon,
+                                            @RequestParam("maxLat") Double maxLat,
+                                            @RequestParam("maxLon") Double maxLon,
+                                            @RequestParam("zoom") Integer zoom) {
+        return branchService.getViewport(minLat, minLon, maxLat, maxLon, zoom);
+    }
+
+    private static List<ServerSentEvent<BranchChangeEntry>> toEvents(List<BranchChangeEntry> entries) {
+        if (entries.isEmpty()) {
+            return List.of(ServerSentEvent.<BranchChangeEntry>builder().comment("heartbeat").build());
+        }
+        return entries.stream()
+                .map(entry -> ServerSentEvent.builder(entry)
+                        .id(String.valueOf(entry.getId()))
+                        .event(entry.getType().name().toLowerCase(Locale.ROOT))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+    }
+
+    private URI getLocation(ServerHttpRequest request, Branch branch) {
+
+        return UriComponentsBuilder
+                .fromHttpRequest(request)
+                .path("/{userId}")
+                .buildAndExpand(branch.getUserId())
+                .toUri();
+
+    }
+}
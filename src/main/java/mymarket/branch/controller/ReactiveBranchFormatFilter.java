@@ -0,0 +1,38 @@
+package mymarket.branch.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux counterpart of {@link BranchFormatAdvice}. The encoder is only picked while the body is written, so the
+ * headers are adjusted right before the response is committed.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveBranchFormatFilter implements WebFilter {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (exchange.getRequest().getPath().pathWithinApplication().value().startsWith("/branches")) {
+            ServerHttpResponse response = exchange.getResponse();
+            response.beforeCommit(() -> {
+                HttpHeaders headers = response.getHeaders();
+                if (headers.getContentType() != null) {
+                    headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                    String eTag = headers.getETag();
+                    if (eTag != null) {
+                        headers.setETag(BranchETags.forFormat(eTag, headers.getContentType()));
+                    }
+                }
+                return Mono.empty();
+            });
+        }
+        return chain.filter(exchange);
+    }
+}
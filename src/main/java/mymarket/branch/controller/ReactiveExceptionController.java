@@ -0,0 +1,52 @@
+package mymarket.branch.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import mymarket.exception.commons.exception.ErrorMessage;
+import mymarket.exception.commons.exception.NotFoundException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.time.LocalDateTime;
+
+/**
+ * {@link ExceptionController} for the {@code reactive} profile. WebFlux reports missing or unconvertible request
+ * parameters and unreadable bodies as {@link ServerWebInputException}.
+ */
+@Slf4j
+@RestControllerAdvice
+@Profile("reactive")
+public class ReactiveExceptionController {
+
+    private final ErrorCounters errorCounters;
+
+    public ReactiveExceptionController(MeterRegistry meterRegistry) {
+        this.errorCounters = new ErrorCounters(meterRegistry);
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler({ServerWebInputException.class, DataIntegrityViolationException.class,
+            IllegalArgumentException.class})
+    public ErrorMessage badRequest(Exception ex, ServerHttpRequest request) {
+        return errorMessage("badRequest", HttpStatus.BAD_REQUEST, ex, request);
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(NotFoundException.class)
+    public ErrorMessage notFound(Exception ex, ServerHttpRequest request) {
+        return errorMessage("notFound", HttpStatus.NOT_FOUND, ex, request);
+    }
+
+    private ErrorMessage errorMessage(String handler, HttpStatus status, Exception ex, ServerHttpRequest request) {
+        String description = "uri=" + request.getPath().value();
+        log.debug("{} {}: {}", status.value(), description, ex.getMessage());
+        errorCounters.increment(handler, status, ex);
+        return new ErrorMessage(status.value(), LocalDateTime.now(), ex.getMessage(), description);
+    }
+}
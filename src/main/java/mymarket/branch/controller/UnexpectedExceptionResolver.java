@@ -0,0 +1,71 @@
+package mymarket.branch.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import mymarket.branch.config.ErrorLogProperties;
+import mymarket.branch.exception.SampledStackTraceLogger;
+import mymarket.exception.commons.exception.ErrorMessage;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Answers with a 500 the exceptions that neither {@link ExceptionController} nor Spring's own resolvers (response
+ * status annotations, bad request bodies, timeouts...) know, since it runs after all of them. They are counted like
+ * the expected ones, but their stack traces are sampled by a {@link SampledStackTraceLogger} so a failing dependency
+ * does not flood the log.
+ */
+@Slf4j
+@Component
+@Profile("!reactive")
+@EnableConfigurationProperties(ErrorLogProperties.class)
+public class UnexpectedExceptionResolver implements HandlerExceptionResolver, Ordered {
+
+    private final ErrorCounters errorCounters;
+    private final SampledStackTraceLogger stackTraceLogger;
+    private final ObjectMapper objectMapper;
+
+    public UnexpectedExceptionResolver(MeterRegistry meterRegistry, ErrorLogProperties properties,
+                                       ObjectMapper objectMapper) {
+        this.errorCounters = new ErrorCounters(meterRegistry);
+        this.stackTraceLogger = new SampledStackTraceLogger(log, properties.getBurst(), properties.getInterval(),
+                properties.getSampleRate());
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public ModelAndView resolveException(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                         Exception ex) {
+        errorCounters.increment("unexpected", HttpStatus.INTERNAL_SERVER_ERROR, ex);
+        stackTraceLogger.error(request.getMethod() + " " + request.getRequestURI() + " failed: " + ex, ex);
+        if (response.isCommitted()) {
+            return null;
+        }
+        response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        try {
+            objectMapper.writeValue(response.getOutputStream(), new ErrorMessage(
+                    HttpStatus.INTERNAL_SERVER_ERROR.value(), LocalDateTime.now(),
+                    HttpStatus.INTERNAL_SERVER_ERROR.getReasonPhrase(), "uri=" + request.getRequestURI()));
+        } catch (IOException writeFailed) {
+            return null;
+        }
+        return new ModelAndView();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
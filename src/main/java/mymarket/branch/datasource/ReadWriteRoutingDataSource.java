@@ -0,0 +1,174 @@
+package mymarket.branch.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the reads {@link ReplicaReads} lets through to one of the read replicas and everything else to the primary.
+ * Connections are lazy, so the physical one is only taken at the first statement, once the service has decided where
+ * its transaction reads from.
+ * <p>
+ * A replica that fails to hand out a connection is taken out of the rotation and the read goes to the next one, or to
+ * the primary when none is left; {@link #checkReplicas()} puts it back once it validates a connection again.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy {
+
+    public enum Selection {
+        ROUND_ROBIN,
+        /**
+         * The replica with the fewest connections in use, as reported by its Hikari pool.
+         */
+        LEAST_CONNECTIONS
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Selection selection;
+    private final int validationTimeoutSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Selection selection,
+                                      Duration validationTimeout) {
+        this.primary = primary;
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica("replica-" + i, replicas.get(i)));
+        }
+        this.selection = selection;
+        this.validationTimeoutSeconds = (int) Math.max(1, validationTimeout.toSeconds());
+        setTargetDataSource(new Router());
+        afterPropertiesSet();
+    }
+
+    public int getReplicasUp() {
+        return (int) replicas.stream().filter(replica -> replica.up).count();
+    }
+
+    @Scheduled(fixedDelayString = "${branch.datasource.health-check-interval:PT5S}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (connection.isValid(validationTimeoutSeconds)) {
+                    if (!replica.up) {
+                        replica.up = true;
+                        log.info("Read replica {} is back in the rotation", replica.name);
+                    }
+                } else {
+                    markDown(replica, null);
+                }
+            } catch (SQLException e) {
+                markDown(replica, e);
+            }
+        }
+    }
+
+    /**
+     * Closes the primary and replica pools.
+     */
+    public void close() throws Exception {
+        close(primary);
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+    }
+
+    private Replica select() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        Replica selected = null;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.up) {
+                continue;
+            }
+            if (selection == Selection.ROUND_ROBIN) {
+                return replica;
+            }
+            if (selected == null || replica.activeConnections() < selected.activeConnections()) {
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    private void markDown(Replica replica, SQLException cause) {
+        if (replica.up) {
+            replica.up = false;
+            log.warn("Read replica {} is down, its reads go to {}", replica.name,
+                    getReplicasUp() > 0 ? "the other replicas" : "the primary", cause);
+        }
+    }
+
+    private static void close(DataSource dataSource) throws Exception {
+        if (dataSource instanceof AutoCloseable) {
+            ((AutoCloseable) dataSource).close();
+        }
+    }
+
+    /**
+     * Unwraps to the primary, so its pool metrics are still bound.
+     */
+    private class Router extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (ReplicaReads.isRequested()) {
+                for (Replica replica = select(); replica != null; replica = select()) {
+                    try {
+                        return replica.dataSource.getConnection();
+                    } catch (SQLException e) {
+                        markDown(replica, e);
+                    }
+                }
+            }
+            return primary.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException("Credentials are configured per primary and replica");
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface.isInstance(this) || primary.isWrapperFor(iface);
+        }
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean up = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private int activeConnections() {
+            if (dataSource instanceof HikariDataSource) {
+                HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+                return pool != null ? pool.getActiveConnections() : 0;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package mymarket.branch.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import mymarket.branch.config.BranchDataSourceProperties;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.model.Branch;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Decides which reads {@link ReadWriteRoutingDataSource} may send to a replica. A read-only transaction opts in with
+ * {@link #routeToReplica(Long, Long)} before its first query, unless a write touched the same branch or user within
+ * {@code branch.datasource.sticky-window}: those reads stay on the primary, so a client reads its own writes back even
+ * while the replicas lag. Writes are tracked per instance, so the window only covers reads served by the instance that
+ * took the write.
+ */
+@Component
+@EnableConfigurationProperties(BranchDataSourceProperties.class)
+public class ReplicaReads {
+
+    static final long MAX_TRACKED_WRITES = 100_000;
+
+    private static final String REPLICA_READ = ReplicaReads.class.getName() + ".REPLICA_READ";
+    private static final ThreadLocal<Boolean> SERVED_BY_REPLICA = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final Cache<Long, Boolean> writtenBranches;
+    private final Cache<Long, Boolean> writtenUsers;
+
+    public ReplicaReads(BranchDataSourceProperties properties) {
+        this.enabled = !properties.getReplicas().isEmpty();
+        this.writtenBranches = recentWrites(properties.getStickyWindow());
+        this.writtenUsers = recentWrites(properties.getStickyWindow());
+    }
+
+    /**
+     * Runs before the write commits, so no read can reach a replica between the commit and the cache eviction.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onChanged(BranchChangedEvent event) {
+        if (enabled) {
+            for (BranchChange change : event.getChanges()) {
+                track(change.getBefore());
+                track(change.getAfter());
+            }
+        }
+    }
+
+    /**
+     * Lets the current read-only transaction read from a replica and returns whether it does. Either key may be null.
+     */
+    public boolean routeToReplica(Long userId, Long branchId) {
+        if (isRequested()) {
+            SERVED_BY_REPLICA.set(Boolean.TRUE);
+            return true;
+        }
+        if (!enabled || !TransactionSynchronizationManager.isCurrentTransactionReadOnly() ||
+                userId != null && writtenUsers.getIfPresent(userId) != null ||
+                branchId != null && writtenBranches.getIfPresent(branchId) != null) {
+            return false;
+        }
+        TransactionSynchronizationManager.bindResource(REPLICA_READ, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(REPLICA_READ);
+            }
+        });
+        SERVED_BY_REPLICA.set(Boolean.TRUE);
+        return true;
+    }
+
+    static boolean isRequested() {
+        return TransactionSynchronizationManager.hasResource(REPLICA_READ);
+    }
+
+    /**
+     * Whether a read on this thread was let through to a replica since the last call, which clears the mark. The
+     * cache asks when it puts a loaded value, after the read transaction has completed.
+     */
+    public static boolean takeServedByReplica() {
+        boolean served = SERVED_BY_REPLICA.get() != null;
+        SERVED_BY_REPLICA.remove();
+        return served;
+    }
+
+    private void track(Branch branch) {
+        if (branch != null) {
+            writtenBranches.put(branch.getId(), Boolean.TRUE);
+            writtenUsers.put(branch.getUserId(), Boolean.TRUE);
+        }
+    }
+
+    private static Cache<Long, Boolean> recentWrites(Duration stickyWindow) {
+        return Caffeine.newBuilder()
+                .maximumSize(MAX_TRACKED_WRITES)
+                .expireAfterWrite(stickyWindow)
+                .build();
+    }
+}
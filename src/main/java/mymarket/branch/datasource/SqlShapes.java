@@ -0,0 +1,48 @@
+package mymarket.branch.datasource;
+
+import java.util.regex.Pattern;
+
+/**
+ * Reduces a SQL statement to its shape, so the statements that only differ in their literals, in the length of an
+ * {@code IN} list or in how many rows or key conditions were sent at once are measured together. For example
+ * {@code SELECT * FROM branches WHERE id IN (1, 2, 3)} becomes {@code SELECT * FROM branches WHERE id IN (?...)}.
+ */
+final class SqlShapes {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL =
+            Pattern.compile("(?<![\\w.$])-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?\\b");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    private static final Pattern REPEATED_GROUP = Pattern.compile("(\\([^()]*\\))(?:\\s*(?:,|\\bOR\\b)\\s*\\1)+",
+            Pattern.CASE_INSENSITIVE);
+
+    private SqlShapes() {
+    }
+
+    static String shapeOf(String sql) {
+        String shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = PARAMETER_LIST.matcher(shape).replaceAll("?...");
+        return REPEATED_GROUP.matcher(shape).replaceAll("$1...");
+    }
+
+    /**
+     * The statement's first keyword, e.g. {@code select} or {@code insert}.
+     */
+    static String operationOf(String shape) {
+        int end = shape.indexOf(' ');
+        String keyword = (end < 0 ? shape : shape.substring(0, end)).toLowerCase();
+        switch (keyword) {
+            case "select":
+            case "insert":
+            case "update":
+            case "delete":
+            case "with":
+                return keyword;
+            default:
+                return "other";
+        }
+    }
+}
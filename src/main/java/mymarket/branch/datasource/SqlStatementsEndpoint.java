@@ -0,0 +1,26 @@
+package mymarket.branch.datasource;
+
+import lombok.RequiredArgsConstructor;
+import mymarket.branch.model.SqlStatementStatistics;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * {@code GET /actuator/sqlstatements?limit=} lists the slowest query shapes on average since startup, with their
+ * latency percentiles and rows.
+ */
+@Endpoint(id = "sqlstatements")
+@RequiredArgsConstructor
+public class SqlStatementsEndpoint {
+
+    private final SqlStatistics statistics;
+    private final int defaultLimit;
+
+    @ReadOperation
+    public List<SqlStatementStatistics> slowest(@Nullable Integer limit) {
+        return statistics.slowest(limit != null ? limit : defaultLimit);
+    }
+}
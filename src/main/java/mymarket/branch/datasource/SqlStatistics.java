@@ -0,0 +1,152 @@
+package mymarket.branch.datasource;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import mymarket.branch.config.SqlStatisticsProperties;
+import mymarket.branch.model.SqlStatementStatistics;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Latency and row counts per query shape (see {@link SqlShapes}), fed by {@link SqlStatisticsDataSource}. They are
+ * published as the {@code branch.sql.statements} timer and the {@code branch.sql.rows} summary, tagged with the shape
+ * id and the operation, and statements slower than {@code branch.sql.slow-threshold} are logged.
+ */
+@Slf4j
+public class SqlStatistics {
+
+    static final String STATEMENTS_TIMER = "branch.sql.statements";
+    static final String ROWS_SUMMARY = "branch.sql.rows";
+    static final String OTHER_SHAPE = "other";
+    private static final int LOGGED_PARAMETERS = 20;
+
+    private final MeterRegistry meterRegistry;
+    private final long slowThresholdNanos;
+    private final boolean redactParameters;
+    private final int maxShapes;
+
+    private final ConcurrentMap<String, Shape> shapes = new ConcurrentHashMap<>();
+    /**
+     * The shape of each SQL string seen, so the statements prepared again and again are not parsed every time.
+     */
+    private final ConcurrentMap<String, Shape> shapesBySql = new ConcurrentHashMap<>();
+
+    public SqlStatistics(MeterRegistry meterRegistry, SqlStatisticsProperties properties) {
+        if (properties.getMaxShapes() < 1) {
+            throw new IllegalArgumentException("branch.sql.max-shapes has to be positive.");
+        }
+        this.meterRegistry = meterRegistry;
+        this.slowThresholdNanos = properties.getSlowThreshold().toNanos();
+        this.redactParameters = properties.isRedactParameters();
+        this.maxShapes = properties.getMaxShapes();
+    }
+
+    /**
+     * Records a statement execution, failed or not, and logs it when it was slow.
+     *
+     * @param parameters     the bind parameters by index, starting at 1; null for plain statements.
+     * @param parameterCount the highest index bound.
+     * @param batchSize      the statements sent in the batch, 0 when it was not one.
+     * @return the statement's shape, to record the rows it returns when they are read.
+     */
+    Shape executed(String sql, long nanos, Object[] parameters, int parameterCount, int batchSize) {
+        Shape shape = shapeOf(sql);
+        shape.timer.record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos >= slowThresholdNanos) {
+            log.warn("Slow SQL statement took {} ms: {}{}", TimeUnit.NANOSECONDS.toMillis(nanos), shape.sql,
+                    batchSize > 0 ? " (batch of " + batchSize + ")" : parameters(parameters, parameterCount));
+        }
+        return shape;
+    }
+
+    /**
+     * Query shapes by their mean latency, slowest first.
+     */
+    public List<SqlStatementStatistics> slowest(int limit) {
+        return shapes.values().stream()
+                .map(Shape::statistics)
+                .sorted(Comparator.comparingDouble(SqlStatementStatistics::getMeanMillis).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private Shape shapeOf(String sql) {
+        Shape shape = shapesBySql.get(sql);
+        if (shape != null) {
+            return shape;
+        }
+        String text = SqlShapes.shapeOf(sql);
+        shape = shapes.computeIfAbsent(text, key -> shapes.size() < maxShapes ? new Shape(key) : null);
+        if (shape == null) {
+            shape = shapes.computeIfAbsent(OTHER_SHAPE, Shape::new);
+        }
+        if (shapesBySql.size() < 10 * maxShapes) {
+            shapesBySql.put(sql, shape);
+        }
+        return shape;
+    }
+
+    private String parameters(Object[] parameters, int count) {
+        if (parameters == null) {
+            return "";
+        }
+        StringJoiner joiner = new StringJoiner(", ", " with [", count > LOGGED_PARAMETERS ? ", ...]" : "]");
+        for (int i = 1; i <= Math.min(count, LOGGED_PARAMETERS); i++) {
+            Object parameter = parameters[i];
+            boolean plain = parameter == null || parameter instanceof Number || parameter instanceof Boolean;
+            joiner.add(plain || !redactParameters ? String.valueOf(parameter)
+                    : "<" + parameter.getClass().getSimpleName() + ">");
+        }
+        return joiner.toString();
+    }
+
+    final class Shape {
+
+        private final String id;
+        private final String sql;
+        private final Timer timer;
+        private final DistributionSummary rows;
+
+        private Shape(String sql) {
+            this.id = String.format("%08x", sql.hashCode());
+            this.sql = sql;
+            String operation = SqlShapes.operationOf(sql);
+            this.timer = Timer.builder(STATEMENTS_TIMER)
+                    .tag("shape", id)
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+            this.rows = DistributionSummary.builder(ROWS_SUMMARY)
+                    .tag("shape", id)
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * Rows read from a result set, or changed by an update.
+         */
+        void rows(long count) {
+            rows.record(count);
+        }
+
+        private SqlStatementStatistics statistics() {
+            Map<String, Double> percentiles = new LinkedHashMap<>();
+            for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+                percentiles.put(String.valueOf(percentile.percentile()), percentile.value(TimeUnit.MILLISECONDS));
+            }
+            return new SqlStatementStatistics(id, sql, timer.count(), timer.mean(TimeUnit.MILLISECONDS),
+                    timer.max(TimeUnit.MILLISECONDS), timer.totalTime(TimeUnit.MILLISECONDS), percentiles,
+                    rows.count() > 0 ? rows.mean() : 0);
+        }
+    }
+}
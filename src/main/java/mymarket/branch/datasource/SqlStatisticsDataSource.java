@@ -0,0 +1,248 @@
+package mymarket.branch.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Hands out connections whose statements report to {@link SqlStatistics}: how long each execution took, with its bind
+ * parameters for the slow log, and how many rows it changed or, once its result set is closed, how many it read.
+ * Everything else is passed through to the target's own connections, statements and result sets.
+ */
+public class SqlStatisticsDataSource extends DelegatingDataSource {
+
+    private final SqlStatistics statistics;
+
+    public SqlStatisticsDataSource(DataSource targetDataSource, SqlStatistics statistics) {
+        super(targetDataSource);
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection()));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection(username, password)));
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(SqlStatisticsDataSource.class.getClassLoader(), new Class<?>[]{type},
+                handler));
+    }
+
+    /**
+     * The identity methods are answered by the proxy itself, so a proxy equals no other object but itself.
+     */
+    private abstract static class Handler implements InvocationHandler {
+
+        private final Object target;
+
+        Handler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SqlStatistics proxy of " + target;
+                default:
+                    return handle(proxy, method, args);
+            }
+        }
+
+        abstract Object handle(Object proxy, Method method, Object[] args) throws Throwable;
+
+        Object proceed(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private class ConnectionHandler extends Handler {
+
+        ConnectionHandler(Connection target) {
+            super(target);
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = proceed(method, args);
+            if (result instanceof Statement) {
+                String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                return proxy(method.getReturnType().asSubclass(Statement.class),
+                        new StatementHandler((Connection) proxy, (Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+    private class StatementHandler extends Handler {
+
+        private final Connection connection;
+        private final boolean prepared;
+        private String sql;
+        private Object[] parameters;
+        private int parameterCount;
+        private int batchSize;
+        private SqlStatistics.Shape lastShape;
+        private ResultSetHandler openResultSet;
+
+        StatementHandler(Connection connection, Statement target, String sql) {
+            super(target);
+            this.connection = connection;
+            this.prepared = target instanceof PreparedStatement;
+            this.sql = sql;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(proxy, method, args);
+            }
+            switch (name) {
+                case "getConnection":
+                    return connection;
+                case "getResultSet":
+                    return resultSet(proxy, (ResultSet) proceed(method, args));
+                case "addBatch":
+                    batchSize++;
+                    if (args != null) {
+                        sql = (String) args[0];
+                    }
+                    break;
+                case "clearBatch":
+                    batchSize = 0;
+                    break;
+                case "clearParameters":
+                    parameterCount = 0;
+                    break;
+                case "close":
+                    closeResultSet();
+                    break;
+                default:
+                    if (prepared && name.startsWith("set") && args != null && args.length >= 2 &&
+                            args[0] instanceof Integer) {
+                        bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+            }
+            return proceed(method, args);
+        }
+
+        private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+            String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            boolean batch = method.getName().endsWith("Batch");
+            closeResultSet();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = proceed(method, args);
+            } finally {
+                lastShape = statistics.executed(executed, System.nanoTime() - start, prepared ? parameters : null,
+                        parameterCount, batch ? batchSize : 0);
+                if (batch) {
+                    batchSize = 0;
+                }
+            }
+            if (result instanceof ResultSet) {
+                return resultSet(proxy, (ResultSet) result);
+            }
+            if (result instanceof Number) {
+                lastShape.rows(((Number) result).longValue());
+            } else if (result instanceof int[]) {
+                lastShape.rows(Arrays.stream((int[]) result).filter(count -> count > 0).sum());
+            } else if (result instanceof long[]) {
+                lastShape.rows(Arrays.stream((long[]) result).filter(count -> count > 0).sum());
+            }
+            return result;
+        }
+
+        private void bind(int index, Object value) {
+            if (parameters == null || parameters.length <= index) {
+                parameters = Arrays.copyOf(parameters == null ? new Object[0] : parameters,
+                        Math.max(2 * index, 8));
+            }
+            parameters[index] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        private ResultSet resultSet(Object statement, ResultSet target) {
+            if (target == null || lastShape == null) {
+                return target;
+            }
+            openResultSet = new ResultSetHandler((Statement) statement, target, lastShape);
+            return proxy(ResultSet.class, openResultSet);
+        }
+
+        /**
+         * A result set is closed with its statement, or when the statement executes again.
+         */
+        private void closeResultSet() {
+            if (openResultSet != null) {
+                openResultSet.recordRows();
+                openResultSet = null;
+            }
+        }
+    }
+
+    private static class ResultSetHandler extends Handler {
+
+        private final Statement statement;
+        private final SqlStatistics.Shape shape;
+        private long rows;
+        private boolean recorded;
+
+        ResultSetHandler(Statement statement, ResultSet target, SqlStatistics.Shape shape) {
+            super(target);
+            this.statement = statement;
+            this.shape = shape;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    Object next = proceed(method, args);
+                    if (Boolean.TRUE.equals(next)) {
+                        rows++;
+                    }
+                    return next;
+                case "getStatement":
+                    return statement;
+                case "close":
+                    recordRows();
+                    return proceed(method, args);
+                default:
+                    return proceed(method, args);
+            }
+        }
+
+        void recordRows() {
+            if (!recorded) {
+                recorded = true;
+                shape.rows(rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package mymarket.branch.event;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import mymarket.branch.model.Branch;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Before and after images of a single branch row. {@code before} is null for inserts and {@code after} is null
+ * for deletes, so listeners can undo the old state and apply the new one without going back to the database.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BranchChange {
+    Branch before;
+    Branch after;
+
+    public static BranchChange created(Branch branch) {
+        return new BranchChange(null, branch);
+    }
+
+    public static BranchChange updated(Branch before, Branch after) {
+        return new BranchChange(before, after);
+    }
+
+    public static BranchChange deleted(Branch branch) {
+        return new BranchChange(branch, null);
+    }
+
+    /**
+     * Users whose branch list is touched by the changes: both the old and the new owner of a moved branch.
+     */
+    public static Set<Long> userIds(Collection<BranchChange> changes) {
+        Set<Long> userIds = new HashSet<>();
+        for (BranchChange change : changes) {
+            if (change.before != null) {
+                userIds.add(change.before.getUserId());
+            }
+            if (change.after != null) {
+                userIds.add(change.after.getUserId());
+            }
+        }
+        return userIds;
+    }
+
+    public boolean isCreate() {
+        return before == null;
+    }
+
+    public boolean isDelete() {
+        return after == null;
+    }
+}
@@ -0,0 +1,13 @@
+package mymarket.branch.event;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Published by {@link mymarket.branch.service.BranchService} for every write, inside the write transaction.
+ */
+@Value
+public class BranchChangedEvent {
+    List<BranchChange> changes;
+}
@@ -0,0 +1,15 @@
+package mymarket.branch.event;
+
+import lombok.Value;
+import mymarket.branch.model.BranchChangeEntry;
+
+import java.util.List;
+
+/**
+ * One batch of the change feed handed to the in-memory indexes by {@link mymarket.branch.index.BranchIndexLoader},
+ * so writes made by other instances reach them too. Includes this instance's own writes again.
+ */
+@Value
+public class BranchChangesRelayedEvent {
+    List<BranchChangeEntry> entries;
+}
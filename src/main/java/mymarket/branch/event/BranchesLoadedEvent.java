@@ -0,0 +1,14 @@
+package mymarket.branch.event;
+
+import lombok.Value;
+import mymarket.branch.model.Branch;
+
+import java.util.List;
+
+/**
+ * One page of the startup scan done by {@link mymarket.branch.index.BranchIndexLoader}.
+ */
+@Value
+public class BranchesLoadedEvent {
+    List<Branch> branches;
+}
@@ -0,0 +1,19 @@
+package mymarket.branch.exception;
+
+import mymarket.exception.commons.exception.NotFoundException;
+
+/**
+ * A branch id that does not exist. Asking for one is an expected outcome, answered with a 404 and never logged with
+ * its stack, so the exception is created without filling it in.
+ */
+public class BranchNotFoundException extends NotFoundException {
+
+    public BranchNotFoundException(Long id) {
+        super("Branch with id " + id + " not found.");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,12 @@
+package mymarket.branch.exception;
+
+/**
+ * A retry that arrived while the first request with the same Idempotency-Key has not committed yet. The client should
+ * retry again later, when the first result can be replayed, so it is answered with a 409 rather than a 400.
+ */
+public class IdempotencyKeyInProgressException extends RuntimeException {
+
+    public IdempotencyKeyInProgressException(String idempotencyKey) {
+        super("The request with Idempotency-Key " + idempotencyKey + " is still in progress.");
+    }
+}
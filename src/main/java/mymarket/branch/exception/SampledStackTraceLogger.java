@@ -0,0 +1,71 @@
+package mymarket.branch.exception;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Logs unexpected errors with their stack trace without letting a burst of them flood the log: the first
+ * {@code burst} errors of every {@code interval} are logged, and after that one in {@code sampleRate}. The next logged
+ * error tells how many were left out in between.
+ */
+public class SampledStackTraceLogger {
+
+    private final Logger log;
+    private final int burst;
+    private final long intervalNanos;
+    private final int sampleRate;
+    private final LongSupplier nanoTime;
+
+    private final AtomicLong windowStart;
+    private final AtomicInteger inWindow = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+
+    public SampledStackTraceLogger(Logger log, int burst, Duration interval, int sampleRate) {
+        this(log, burst, interval, sampleRate, System::nanoTime);
+    }
+
+    SampledStackTraceLogger(Logger log, int burst, Duration interval, int sampleRate, LongSupplier nanoTime) {
+        if (burst < 0 || interval.isNegative() || interval.isZero() || sampleRate < 1) {
+            throw new IllegalArgumentException("The burst can't be negative, and the interval and sample rate have " +
+                    "to be positive.");
+        }
+        this.log = log;
+        this.burst = burst;
+        this.intervalNanos = interval.toNanos();
+        this.sampleRate = sampleRate;
+        this.nanoTime = nanoTime;
+        this.windowStart = new AtomicLong(nanoTime.getAsLong());
+    }
+
+    /**
+     * @return whether the error was logged.
+     */
+    public boolean error(String message, Throwable ex) {
+        if (!sampled()) {
+            suppressed.increment();
+            return false;
+        }
+        long skipped = suppressed.sumThenReset();
+        if (skipped > 0) {
+            log.error("{} ({} more errors since the last one logged)", message, skipped, ex);
+        } else {
+            log.error(message, ex);
+        }
+        return true;
+    }
+
+    private boolean sampled() {
+        long now = nanoTime.getAsLong();
+        long start = windowStart.get();
+        if (now - start >= intervalNanos && windowStart.compareAndSet(start, now)) {
+            inWindow.set(0);
+        }
+        int count = inWindow.incrementAndGet();
+        return count <= burst || (count - burst) % sampleRate == 0;
+    }
+}
@@ -0,0 +1,171 @@
+package mymarket.branch.index;
+
+import lombok.extern.slf4j.Slf4j;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.repository.BranchRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Branch counts per city and per user, adjusted by every {@link BranchChangedEvent} so dashboards never group the
+ * table. Every {@code branch.counters.reconcile-interval} the counts are compared with a GROUP BY over the table,
+ * which repairs drift from writes made outside this service; keys changed while that query runs are left to the next
+ * run, since the query may or may not have seen those changes.
+ */
+@Slf4j
+@Component
+public class BranchCounters {
+
+    private final BranchRepository branchRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Long> countsByCity = new HashMap<>();
+    private final Map<Long, Long> countsByUser = new HashMap<>();
+    private final Set<String> citiesChangedWhileReconciling = new HashSet<>();
+    private final Set<Long> usersChangedWhileReconciling = new HashSet<>();
+    private boolean reconciling;
+
+    public BranchCounters(BranchRepository branchRepository) {
+        this.branchRepository = branchRepository;
+    }
+
+    @EventListener
+    public void onLoaded(BranchesLoadedEvent event) {
+        lock.writeLock().lock();
+        try {
+            event.getBranches().forEach(branch -> addLocked(branch, 1));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChanged(BranchChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            for (BranchChange change : event.getChanges()) {
+                if (change.getBefore() != null) {
+                    addLocked(change.getBefore(), -1);
+                }
+                if (change.getAfter() != null) {
+                    addLocked(change.getAfter(), 1);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Long> countByCity() {
+        lock.readLock().lock();
+        try {
+            return new TreeMap<>(countsByCity);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Long, Long> countByUser() {
+        lock.readLock().lock();
+        try {
+            return new TreeMap<>(countsByUser);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long countOfUser(Long userId) {
+        lock.readLock().lock();
+        try {
+            return countsByUser.getOrDefault(userId, 0L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the counts that differ from the database and returns how many did.
+     */
+    @Scheduled(fixedDelayString = "${branch.counters.reconcile-interval:PT10M}",
+            initialDelayString = "${branch.counters.reconcile-interval:PT10M}")
+    public int reconcile() {
+        lock.writeLock().lock();
+        try {
+            reconciling = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            Map<String, Long> actualByCity = branchRepository.countByCity();
+            Map<Long, Long> actualByUser = branchRepository.countByUser();
+
+            lock.writeLock().lock();
+            try {
+                int repaired = repair(countsByCity, actualByCity, citiesChangedWhileReconciling) +
+                        repair(countsByUser, actualByUser, usersChangedWhileReconciling);
+                if (repaired > 0) {
+                    log.warn("Repaired {} branch counts that had drifted from the database", repaired);
+                }
+                return repaired;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                reconciling = false;
+                citiesChangedWhileReconciling.clear();
+                usersChangedWhileReconciling.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void addLocked(Branch branch, long delta) {
+        add(countsByCity, branch.getCity(), delta);
+        add(countsByUser, branch.getUserId(), delta);
+        if (reconciling) {
+            citiesChangedWhileReconciling.add(branch.getCity());
+            usersChangedWhileReconciling.add(branch.getUserId());
+        }
+    }
+
+    private static <K> void add(Map<K, Long> counts, K key, long delta) {
+        counts.merge(key, delta, (count, added) -> count + added == 0 ? null : count + added);
+    }
+
+    private static <K> int repair(Map<K, Long> counts, Map<K, Long> actual, Set<K> skipped) {
+        Set<K> keys = new HashSet<>(counts.keySet());
+        keys.addAll(actual.keySet());
+        keys.removeAll(skipped);
+
+        int repaired = 0;
+        for (K key : keys) {
+            Long count = actual.get(key);
+            if (!Objects.equals(counts.get(key), count)) {
+                if (count == null) {
+                    counts.remove(key);
+                } else {
+                    counts.put(key, count);
+                }
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+}
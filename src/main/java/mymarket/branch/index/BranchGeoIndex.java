@@ -0,0 +1,358 @@
+package mymarket.branch.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.event.BranchChangesRelayedEvent;
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchCluster;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory grid over the parsed branch coordinates. The world is cut into square cells of
+ * {@code branch.index.geo.cell-degrees}; a k-nearest query visits rings of cells around the query point and stops
+ * as soon as no unvisited ring can hold anything closer than the current k-th hit. Only ids and coordinates are
+ * kept here; callers resolve the hits by primary key.
+ * <p>
+ * The same writes also keep a {@link ClusterGrid} per zoom level up to {@code branch.viewport.cluster-max-zoom}, so
+ * zoomed-out map viewports are answered from precomputed counts and centroids.
+ * <p>
+ * Longitude cells wrap around at the antimeridian, so a query near it also sees the branches on the other side, and
+ * a box with {@code minLon > maxLon} is taken to cross it.
+ */
+@Component
+public class BranchGeoIndex {
+
+    static final double EARTH_RADIUS_KM = 6371.0088;
+    static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+    private static final double MAX_LATITUDE_FOR_BOUNDS = 89.0;
+
+    private final double cellDegrees;
+    private final int lonCells;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Map<Long, Long> cellKeyByBranchId = new HashMap<>();
+    private final ClusterGrid clusterGrid;
+
+    public BranchGeoIndex(@Value("${branch.index.geo.cell-degrees:0.05}") double cellDegrees,
+                          @Value("${branch.viewport.cluster-max-zoom:14}") int clusterMaxZoom) {
+        this.cellDegrees = cellDegrees;
+        // Tolerates the rounding of cell sizes that divide 360, like 0.05, so no sliver column is added.
+        this.lonCells = (int) Math.ceil(360 / cellDegrees - 1e-9);
+        this.clusterGrid = new ClusterGrid(clusterMaxZoom);
+    }
+
+    @EventListener
+    public void onLoaded(BranchesLoadedEvent event) {
+        event.getBranches().forEach(this::put);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChanged(BranchChangedEvent event) {
+        for (BranchChange change : event.getChanges()) {
+            if (change.isDelete()) {
+                remove(change.getBefore().getId());
+            } else {
+                put(change.getAfter());
+            }
+        }
+    }
+
+    @EventListener
+    public void onRelayed(BranchChangesRelayedEvent event) {
+        for (BranchChangeEntry entry : event.getEntries()) {
+            if (entry.getType() == BranchChangeEntry.Type.DELETED) {
+                remove(entry.getBranch().getId());
+            } else {
+                put(entry.getBranch());
+            }
+        }
+    }
+
+    public void put(Branch branch) {
+        double[] point = parse(branch.getLatitude(), branch.getLongitude());
+        lock.writeLock().lock();
+        try {
+            removeLocked(branch.getId());
+            if (point != null) {
+                long key = cellKey(point[0], point[1]);
+                cells.computeIfAbsent(key, k -> new Cell()).add(branch.getId(), point[0], point[1]);
+                cellKeyByBranchId.put(branch.getId(), key);
+                clusterGrid.add(point[0], point[1]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long branchId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(branchId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return cellKeyByBranchId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} branches within {@code radiusKm} of the given point, closest first.
+     */
+    public List<Hit> nearest(double latitude, double longitude, double radiusKm, int limit) {
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Hit::getDistanceKm).reversed());
+        int centerLat = latIndex(latitude);
+        int centerLon = lonIndex(longitude);
+        double minCellKm = cellDegrees * KM_PER_DEGREE * Math.cos(Math.toRadians(
+                Math.min(MAX_LATITUDE_FOR_BOUNDS, Math.abs(latitude) + radiusKm / KM_PER_DEGREE)));
+
+        lock.readLock().lock();
+        try {
+            for (int ring = 0; ; ring++) {
+                double ringLowerBoundKm = Math.max(0, ring - 1) * minCellKm;
+                if (ringLowerBoundKm > radiusKm || (best.size() == limit && best.peek().getDistanceKm() <= ringLowerBoundKm)) {
+                    break;
+                }
+                long side = 2L * ring + 1;
+                if (side > lonCells || side * side > 4L * cells.size()) {
+                    // The ring walk would probe more empty keys than there are cells, or wrap onto cells it has
+                    // visited already: finish with a plain scan.
+                    best.clear();
+                    cells.values().forEach(cell -> cell.collect(latitude, longitude, radiusKm, limit, best));
+                    break;
+                }
+                visitRing(centerLat, centerLon, ring, cell -> cell.collect(latitude, longitude, radiusKm, limit, best));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(Comparator.comparingDouble(Hit::getDistanceKm));
+        return hits;
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} branches inside the box, in no particular order. A box with
+     * {@code minLon > maxLon} crosses the antimeridian and is searched as its two halves.
+     */
+    public List<Long> within(double minLat, double minLon, double maxLat, double maxLon, int limit) {
+        List<Long> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (minLon <= maxLon) {
+                withinLocked(minLat, minLon, maxLat, maxLon, limit, ids);
+            } else if (!withinLocked(minLat, minLon, maxLat, 180, limit, ids)) {
+                withinLocked(minLat, -180, maxLat, maxLon, limit, ids);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the clusters at {@code zoom} whose grid cell intersects the box.
+     */
+    public List<BranchCluster> clusters(int zoom, double minLat, double minLon, double maxLat, double maxLon) {
+        lock.readLock().lock();
+        try {
+            return clusterGrid.query(zoom, minLat, minLon, maxLat, maxLon);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getClusterMaxZoom() {
+        return clusterGrid.maxZoom();
+    }
+
+    /**
+     * Adds the ids inside the box, which does not cross the antimeridian, and returns true once {@code limit} ids
+     * have been collected.
+     */
+    private boolean withinLocked(double minLat, double minLon, double maxLat, double maxLon, int limit,
+                                 List<Long> ids) {
+        int fromLat = latIndex(minLat);
+        int toLat = latIndex(maxLat);
+        // Unwrapped, so the column of maxLon = 180, which is column 0, still comes last; capped at one full turn.
+        int fromLon = (int) Math.floor((minLon + 180) / cellDegrees);
+        int toLon = Math.min((int) Math.floor((maxLon + 180) / cellDegrees), fromLon + lonCells - 1);
+
+        if ((long) (toLat - fromLat + 1) * (toLon - fromLon + 1) > cells.size()) {
+            for (Cell cell : cells.values()) {
+                if (cell.collect(minLat, minLon, maxLat, maxLon, limit, ids)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int latIndex = fromLat; latIndex <= toLat; latIndex++) {
+            for (int lonIndex = fromLon; lonIndex <= toLon; lonIndex++) {
+                Cell cell = cells.get(cellKey(latIndex, Math.floorMod(lonIndex, lonCells)));
+                if (cell != null && cell.collect(minLat, minLon, maxLat, maxLon, limit, ids)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void visitRing(int centerLat, int centerLon, int ring, Consumer<Cell> visitor) {
+        for (int dLat = -ring; dLat <= ring; dLat++) {
+            boolean edgeRow = Math.abs(dLat) == ring;
+            for (int dLon = -ring; dLon <= ring; dLon += edgeRow ? 1 : 2 * ring) {
+                Cell cell = cells.get(cellKey(centerLat + dLat, Math.floorMod(centerLon + dLon, lonCells)));
+                if (cell != null) {
+                    visitor.accept(cell);
+                }
+                if (ring == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void removeLocked(Long branchId) {
+        Long key = cellKeyByBranchId.remove(branchId);
+        if (key != null) {
+            Cell cell = cells.get(key);
+            double[] point = cell.remove(branchId);
+            clusterGrid.remove(point[0], point[1]);
+            if (cell.size == 0) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    private int latIndex(double latitude) {
+        return (int) Math.floor((latitude + 90) / cellDegrees);
+    }
+
+    private int lonIndex(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / cellDegrees), lonCells);
+    }
+
+    private long cellKey(double latitude, double longitude) {
+        return cellKey(latIndex(latitude), lonIndex(longitude));
+    }
+
+    private static long cellKey(int latIndex, int lonIndex) {
+        return ((long) latIndex << 32) | (lonIndex & 0xffffffffL);
+    }
+
+    /**
+     * Parses the varchar coordinates of a branch, or returns null when they are missing or out of range.
+     */
+    static double[] parse(String latitude, String longitude) {
+        if (latitude == null || longitude == null) {
+            return null;
+        }
+        try {
+            double lat = Double.parseDouble(latitude.trim());
+            double lon = Double.parseDouble(longitude.trim());
+            return lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180 ? new double[]{lat, lon} : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinLat * sinLat + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Hit {
+        private final long branchId;
+        private final double distanceKm;
+    }
+
+    private static final class Cell {
+        private long[] ids = new long[4];
+        private double[] latitudes = new double[4];
+        private double[] longitudes = new double[4];
+        private int size;
+
+        void add(long id, double latitude, double longitude) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                latitudes = Arrays.copyOf(latitudes, size * 2);
+                longitudes = Arrays.copyOf(longitudes, size * 2);
+            }
+            ids[size] = id;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+        }
+
+        double[] remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    double[] point = {latitudes[i], longitudes[i]};
+                    size--;
+                    ids[i] = ids[size];
+                    latitudes[i] = latitudes[size];
+                    longitudes[i] = longitudes[size];
+                    return point;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds the ids inside the box and returns true once {@code limit} ids have been collected.
+         */
+        boolean collect(double minLat, double minLon, double maxLat, double maxLon, int limit, List<Long> found) {
+            for (int i = 0; i < size; i++) {
+                if (latitudes[i] >= minLat && latitudes[i] <= maxLat && longitudes[i] >= minLon && longitudes[i] <= maxLon) {
+                    found.add(ids[i]);
+                    if (found.size() == limit) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void collect(double latitude, double longitude, double radiusKm, int limit, PriorityQueue<Hit> best) {
+            for (int i = 0; i < size; i++) {
+                double distance = distanceKm(latitude, longitude, latitudes[i], longitudes[i]);
+                if (distance > radiusKm || (best.size() == limit && distance >= best.peek().getDistanceKm())) {
+                    continue;
+                }
+                best.add(new Hit(ids[i], distance));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package mymarket.branch.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import mymarket.branch.event.BranchChangesRelayedEvent;
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.repository.BranchRepository;
+import mymarket.branch.service.BranchChangeFeed;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills the in-memory indexes once at startup, before the web server accepts requests. The table is walked by
+ * primary key so every page is an index range read, and each page is handed to the indexes as a
+ * {@link BranchesLoadedEvent}. After this, indexes are kept current by {@code BranchChangedEvent}s for this instance's
+ * writes and by the change feed for everyone's: it is subscribed before the walk, so a write committed meanwhile is
+ * relayed as a {@link BranchChangesRelayedEvent} within {@code branch.changes.flush-interval}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BranchIndexLoader implements SmartInitializingSingleton {
+
+    private final BranchRepository branchRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BranchChangeFeed branchChangeFeed;
+
+    // Relayed changes are held back during the walk so an older page read meanwhile cannot overwrite them.
+    private final List<BranchChangeEntry> relayedWhileLoading = new ArrayList<>();
+    private boolean loading = true;
+
+    @Value("${branch.index.load-page-size:1000}")
+    private int pageSize;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        branchChangeFeed.subscribe(null, this::relay);
+        long lastId = 0;
+        long loaded = 0;
+        List<Branch> page;
+        do {
+            page = branchRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, pageSize));
+            if (!page.isEmpty()) {
+                eventPublisher.publishEvent(new BranchesLoadedEvent(page));
+                lastId = page.get(page.size() - 1).getId();
+                loaded += page.size();
+            }
+        } while (page.size() == pageSize);
+        log.info("Loaded {} branches into the in-memory indexes", loaded);
+        synchronized (this) {
+            loading = false;
+            apply(List.copyOf(relayedWhileLoading));
+            relayedWhileLoading.clear();
+        }
+    }
+
+    private synchronized boolean relay(List<BranchChangeEntry> entries) {
+        if (loading) {
+            relayedWhileLoading.addAll(entries);
+        } else {
+            apply(entries);
+        }
+        return true;
+    }
+
+    private void apply(List<BranchChangeEntry> entries) {
+        if (!entries.isEmpty()) {
+            try {
+                eventPublisher.publishEvent(new BranchChangesRelayedEvent(entries));
+            } catch (RuntimeException e) {
+                // Keeps the subscription; the next write of these branches corrects the indexes.
+                log.warn("Failed to apply {} relayed changes to the in-memory indexes", entries.size(), e);
+            }
+        }
+    }
+}
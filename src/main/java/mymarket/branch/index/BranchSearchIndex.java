@@ -0,0 +1,368 @@
+package mymarket.branch.index;
+
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.event.BranchChangesRelayedEvent;
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory prefix index over the words of the branch name, city and address, for type-ahead search. Words are
+ * folded to lower case without accents ({@code "Peñaloza"} is stored as {@code "penaloza"}), and every word of a
+ * query has to be the prefix of some word of the branch. Each user also gets a word index of its own, so searching
+ * one user's branches never filters everybody else's.
+ * <p>
+ * Hits are ordered by the word completing the last query word, then by id, which is the order of a walk over that
+ * word range: a one-word query stops after {@code limit} hits. A longer query walks too while its words keep matching
+ * often enough; otherwise its rarest word yields at most {@code branch.index.search.scan-budget} candidates, which are
+ * verified and sorted instead.
+ */
+@Component
+public class BranchSearchIndex {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final int scanBudget;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final WordIndex allBranches = new WordIndex();
+    private final Map<Long, WordIndex> branchesByUser = new HashMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    public BranchSearchIndex(@Value("${branch.index.search.scan-budget:4000}") int scanBudget) {
+        this.scanBudget = scanBudget;
+    }
+
+    @EventListener
+    public void onLoaded(BranchesLoadedEvent event) {
+        event.getBranches().forEach(this::put);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChanged(BranchChangedEvent event) {
+        for (BranchChange change : event.getChanges()) {
+            if (change.isDelete()) {
+                remove(change.getBefore().getId());
+            } else {
+                put(change.getAfter());
+            }
+        }
+    }
+
+    @EventListener
+    public void onRelayed(BranchChangesRelayedEvent event) {
+        for (BranchChangeEntry entry : event.getEntries()) {
+            if (entry.getType() == BranchChangeEntry.Type.DELETED) {
+                remove(entry.getBranch().getId());
+            } else {
+                put(entry.getBranch());
+            }
+        }
+    }
+
+    public void put(Branch branch) {
+        Set<String> words = words(branch.getName(), branch.getCity(), branch.getAddress());
+        lock.writeLock().lock();
+        try {
+            removeLocked(branch.getId());
+            WordIndex userIndex = branchesByUser.computeIfAbsent(branch.getUserId(), userId -> new WordIndex());
+            String[] stored = new String[words.size()];
+            int i = 0;
+            for (String word : words) {
+                stored[i++] = allBranches.add(word, branch.getId());
+                userIndex.add(stored[i - 1], branch.getId());
+            }
+            entries.put(branch.getId(), new Entry(branch.getUserId(), stored));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long branchId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(branchId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} branches matching every word of the query, of the given user only
+     * when {@code userId} is not null.
+     */
+    public List<Long> search(String query, Long userId, int limit) {
+        String[] prefixes = words(query).toArray(new String[0]);
+        if (prefixes.length == 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            WordIndex index = userId == null ? allBranches : branchesByUser.get(userId);
+            return index == null ? List.of() : search(index, prefixes, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Long> search(WordIndex index, String[] prefixes, int limit) {
+        String last = prefixes[prefixes.length - 1];
+        if (prefixes.length == 1) {
+            return walk(index, last, prefixes, limit, Integer.MAX_VALUE);
+        }
+        List<Long> hits = walk(index, last, prefixes, limit, scanBudget);
+        if (hits != null) {
+            return hits;
+        }
+        long[] candidates = null;
+        for (String prefix : prefixes) {
+            long[] matching = index.collect(prefix, candidates == null ? scanBudget : candidates.length - 1);
+            if (matching != null) {
+                candidates = matching;
+            }
+        }
+        return candidates == null ? walk(index, last, prefixes, limit, Integer.MAX_VALUE) :
+                rank(candidates, last, prefixes, limit);
+    }
+
+    /**
+     * Visits the words starting with {@code last} in order and their branches by id, until {@code limit} of them
+     * match. Returns null if {@code maxVisits} branches were checked first.
+     */
+    private List<Long> walk(WordIndex index, String last, String[] prefixes, int limit, int maxVisits) {
+        List<Long> hits = new ArrayList<>(limit);
+        Set<Long> seen = new HashSet<>();
+        int visits = 0;
+        for (Postings postings : index.range(last).values()) {
+            for (int i = 0; i < postings.size; i++) {
+                long id = postings.ids[i];
+                if (!seen.add(id)) {
+                    continue;
+                }
+                if (prefixes.length == 1 || entries.get(id).matches(prefixes)) {
+                    hits.add(id);
+                    if (hits.size() == limit) {
+                        return hits;
+                    }
+                }
+                if (++visits == maxVisits) {
+                    return null;
+                }
+            }
+        }
+        return hits;
+    }
+
+    private List<Long> rank(long[] candidates, String last, String[] prefixes, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        for (long id : candidates) {
+            Entry entry = entries.get(id);
+            if (entry.matches(prefixes)) {
+                hits.add(new Hit(id, entry.firstWordStartingWith(last)));
+            }
+        }
+        hits.sort(Comparator.comparing((Hit hit) -> hit.word).thenComparingLong(hit -> hit.id));
+        List<Long> ids = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            ids.add(hits.get(i).id);
+        }
+        return ids;
+    }
+
+    private void removeLocked(Long branchId) {
+        Entry entry = entries.remove(branchId);
+        if (entry == null) {
+            return;
+        }
+        WordIndex userIndex = branchesByUser.get(entry.userId);
+        for (String word : entry.words) {
+            allBranches.remove(word, branchId);
+            userIndex.remove(word, branchId);
+        }
+        if (userIndex.isEmpty()) {
+            branchesByUser.remove(entry.userId);
+        }
+    }
+
+    /**
+     * Splits the texts into distinct lower case words without diacritics, so {@code "Av. Peñaloza 1.500"} becomes
+     * {@code [av, penaloza, 1, 500]}.
+     */
+    static Set<String> words(String... texts) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            for (String word : SEPARATORS.split(fold(text))) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Lower case and without diacritics, the way MySQL's default collation compares text: {@code "Peñaloza"} becomes
+     * {@code "penaloza"}.
+     */
+    public static String fold(String text) {
+        return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static final class WordIndex {
+        private final NavigableMap<String, Postings> postingsByWord = new TreeMap<>();
+
+        /**
+         * Adds the id to the word and returns the stored instance of the word, so a word shared by many branches
+         * is kept once.
+         */
+        String add(String word, long id) {
+            postingsByWord.computeIfAbsent(word, w -> new Postings()).add(id);
+            return postingsByWord.floorKey(word);
+        }
+
+        void remove(String word, long id) {
+            Postings postings = postingsByWord.get(word);
+            if (postings.remove(id) == 0) {
+                postingsByWord.remove(word);
+            }
+        }
+
+        boolean isEmpty() {
+            return postingsByWord.isEmpty();
+        }
+
+        NavigableMap<String, Postings> range(String prefix) {
+            return postingsByWord.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+
+        /**
+         * Returns the distinct ids of the branches with a word starting with {@code prefix}, or null if there are
+         * more than {@code max} postings to read.
+         */
+        long[] collect(String prefix, int max) {
+            NavigableMap<String, Postings> range = range(prefix);
+            long total = 0;
+            for (Postings postings : range.values()) {
+                total += postings.size;
+                if (total > max) {
+                    return null;
+                }
+            }
+            long[] ids = new long[(int) total];
+            int size = 0;
+            for (Postings postings : range.values()) {
+                System.arraycopy(postings.ids, 0, ids, size, postings.size);
+                size += postings.size;
+            }
+            return Arrays.stream(ids).sorted().distinct().toArray();
+        }
+    }
+
+    private static final class Entry {
+        private final long userId;
+        private final String[] words;
+
+        Entry(Long userId, String[] words) {
+            this.userId = userId;
+            this.words = words;
+            Arrays.sort(this.words);
+        }
+
+        boolean matches(String[] prefixes) {
+            for (String prefix : prefixes) {
+                if (firstWordStartingWith(prefix) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String firstWordStartingWith(String prefix) {
+            for (String word : words) {
+                if (word.startsWith(prefix)) {
+                    return word;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Hit {
+        private final long id;
+        private final String word;
+
+        Hit(long id, String word) {
+            this.id = id;
+            this.word = word;
+        }
+    }
+
+    /**
+     * Branch ids in ascending order. Ids mostly arrive in order, so adding is usually an append.
+     */
+    private static final class Postings {
+        private long[] ids = new long[2];
+        private int size;
+
+        void add(long id) {
+            int index = size == 0 || ids[size - 1] < id ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+
+        /**
+         * Removes the id and returns the number of ids left.
+         */
+        int remove(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                size--;
+            }
+            return size;
+        }
+    }
+}
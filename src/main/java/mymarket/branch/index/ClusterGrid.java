@@ -0,0 +1,134 @@
+package mymarket.branch.index;
+
+import mymarket.branch.model.BranchCluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-zoom grid of branch counts and coordinate sums. At zoom {@code z} a cell spans
+ * {@code 360 / 2^z / CELLS_PER_TILE} degrees, i.e. a quarter of a web map tile, so a viewport always maps to a
+ * handful of clusters per tile. Not thread-safe: {@link BranchGeoIndex} guards it with its own lock.
+ */
+final class ClusterGrid {
+
+    static final int CELLS_PER_TILE = 4;
+
+    private final double[] cellDegrees;
+    private final List<Map<Long, Cluster>> levels;
+
+    ClusterGrid(int maxZoom) {
+        cellDegrees = new double[maxZoom + 1];
+        levels = new ArrayList<>(maxZoom + 1);
+        for (int zoom = 0; zoom <= maxZoom; zoom++) {
+            cellDegrees[zoom] = 360.0 / (1L << zoom) / CELLS_PER_TILE;
+            levels.add(new HashMap<>());
+        }
+    }
+
+    int maxZoom() {
+        return cellDegrees.length - 1;
+    }
+
+    void add(double latitude, double longitude) {
+        for (int zoom = 0; zoom < cellDegrees.length; zoom++) {
+            levels.get(zoom).computeIfAbsent(key(zoom, latitude, longitude), k -> new Cluster())
+                    .add(latitude, longitude);
+        }
+    }
+
+    void remove(double latitude, double longitude) {
+        for (int zoom = 0; zoom < cellDegrees.length; zoom++) {
+            Map<Long, Cluster> level = levels.get(zoom);
+            long key = key(zoom, latitude, longitude);
+            Cluster cluster = level.get(key);
+            if (cluster != null && cluster.remove(latitude, longitude) == 0) {
+                level.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the clusters of every cell at {@code zoom} that intersects the box. A box with {@code minLon > maxLon}
+     * crosses the antimeridian and is queried as its two halves.
+     */
+    List<BranchCluster> query(int zoom, double minLat, double minLon, double maxLat, double maxLon) {
+        Map<Long, BranchCluster> clusters = new LinkedHashMap<>();
+        if (minLon > maxLon) {
+            // A cell wide enough to hold both edges is met by both halves, hence the map.
+            query(zoom, minLat, minLon, maxLat, 180, clusters);
+            query(zoom, minLat, -180, maxLat, maxLon, clusters);
+        } else {
+            query(zoom, minLat, minLon, maxLat, maxLon, clusters);
+        }
+        return new ArrayList<>(clusters.values());
+    }
+
+    private void query(int zoom, double minLat, double minLon, double maxLat, double maxLon,
+                       Map<Long, BranchCluster> clusters) {
+        Map<Long, Cluster> level = levels.get(zoom);
+        int fromLat = index(minLat + 90, zoom);
+        int toLat = index(maxLat + 90, zoom);
+        int fromLon = index(minLon + 180, zoom);
+        int toLon = index(maxLon + 180, zoom);
+
+        long probes = (long) (toLat - fromLat + 1) * (toLon - fromLon + 1);
+        if (probes > level.size()) {
+            level.forEach((key, cluster) -> {
+                int latIndex = (int) (key >> 32);
+                int lonIndex = (int) (long) key;
+                if (latIndex >= fromLat && latIndex <= toLat && lonIndex >= fromLon && lonIndex <= toLon) {
+                    clusters.putIfAbsent(key, cluster.toBranchCluster());
+                }
+            });
+            return;
+        }
+        for (int latIndex = fromLat; latIndex <= toLat; latIndex++) {
+            for (int lonIndex = fromLon; lonIndex <= toLon; lonIndex++) {
+                long key = key(latIndex, lonIndex);
+                Cluster cluster = level.get(key);
+                if (cluster != null) {
+                    clusters.putIfAbsent(key, cluster.toBranchCluster());
+                }
+            }
+        }
+    }
+
+    private long key(int zoom, double latitude, double longitude) {
+        return key(index(latitude + 90, zoom), index(longitude + 180, zoom));
+    }
+
+    private int index(double offsetDegrees, int zoom) {
+        return (int) Math.floor(offsetDegrees / cellDegrees[zoom]);
+    }
+
+    private static long key(int latIndex, int lonIndex) {
+        return ((long) latIndex << 32) | (lonIndex & 0xffffffffL);
+    }
+
+    private static final class Cluster {
+        private long count;
+        private double latitudeSum;
+        private double longitudeSum;
+
+        void add(double latitude, double longitude) {
+            count++;
+            latitudeSum += latitude;
+            longitudeSum += longitude;
+        }
+
+        long remove(double latitude, double longitude) {
+            count--;
+            latitudeSum -= latitude;
+            longitudeSum -= longitude;
+            return count;
+        }
+
+        BranchCluster toBranchCluster() {
+            return new BranchCluster(latitudeSum / count, longitudeSum / count, count);
+        }
+    }
+}
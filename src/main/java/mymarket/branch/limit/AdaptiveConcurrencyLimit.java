@@ -0,0 +1,170 @@
+package mymarket.branch.limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to the observed latency with AIMD: every request answered within
+ * {@code latencyThreshold} while the limit is in use adds {@code 1 / limit}, so the limit grows by one per full window,
+ * and a slower or failed one multiplies it by {@code backoffRatio}. Only requests started after the last decrease can
+ * lower it again, so a burst of slow responses from the same window backs off once.
+ * <p>
+ * Requests over the limit wait in a queue of at most {@code queueSize}, for at most {@code maxWait}, and are then
+ * rejected; waiting requests are let in before new arrivals.
+ */
+public class AdaptiveConcurrencyLimit implements MeterBinder {
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final int queueSize;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long rejected;
+    private boolean decreased;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit(String name, int initialLimit, int minLimit, int maxLimit,
+                                    Duration latencyThreshold, double backoffRatio, int queueSize, Duration maxWait) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || backoffRatio <= 0 ||
+                backoffRatio >= 1) {
+            throw new IllegalArgumentException("The limits must satisfy 1 <= min <= initial <= max and the backoff " +
+                    "ratio be within (0, 1).");
+        }
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.queueSize = queueSize;
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * Takes a slot, waiting for one if the queue has room, and returns false when the request should be shed.
+     * Every true must be followed by {@link #release(long, long, boolean)}.
+     */
+    public boolean acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            if (queued >= queueSize) {
+                rejected++;
+                return false;
+            }
+            queued++;
+            try {
+                long remainingNanos = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remainingNanos <= 0) {
+                        rejected++;
+                        return false;
+                    }
+                    remainingNanos = released.awaitNanos(remainingNanos);
+                }
+                inFlight++;
+                return true;
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a request that ran from {@code startNanos} to {@code endNanos}, as given by
+     * {@link System#nanoTime()}, and adjusts the limit; {@code dropped} marks a request that failed on the server.
+     */
+    public void release(long startNanos, long endNanos, boolean dropped) {
+        lock.lock();
+        try {
+            if (dropped || endNanos - startNanos > latencyThresholdNanos) {
+                if (!decreased || startNanos - lastDecreaseNanos > 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    decreased = true;
+                    lastDecreaseNanos = endNanos;
+                }
+            } else if (inFlight >= limit / 2) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("branch.concurrency.limit", this, AdaptiveConcurrencyLimit::getLimit)
+                .tag("budget", name)
+                .register(registry);
+        Gauge.builder("branch.concurrency.in-flight", this, AdaptiveConcurrencyLimit::getInFlight)
+                .tag("budget", name)
+                .register(registry);
+        Gauge.builder("branch.concurrency.queued", this, AdaptiveConcurrencyLimit::getQueued)
+                .tag("budget", name)
+                .register(registry);
+        FunctionCounter.builder("branch.concurrency.rejected", this, AdaptiveConcurrencyLimit::getRejected)
+                .tag("budget", name)
+                .register(registry);
+    }
+}
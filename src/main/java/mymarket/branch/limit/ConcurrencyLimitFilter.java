@@ -0,0 +1,94 @@
+package mymarket.branch.limit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mymarket.exception.commons.exception.ErrorMessage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Sheds load before it reaches {@code BranchController}: reads and writes each go through their own
+ * {@link AdaptiveConcurrencyLimit}, and a request that finds no slot within the queue wait is answered right away with a
+ * 503 and Retry-After, instead of waiting in Tomcat until the connection pool times out. The import, export and change
+ * feed streams are long-lived by design and are not limited.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    static final String IMPORT_PATH = "/branches/import";
+    static final String EXPORT_PATH = "/branches/export";
+    static final String CHANGES_PATH = "/branches/changes";
+    static final String LOOKUP_PATH = "/branches/lookup";
+
+    private final AdaptiveConcurrencyLimit readLimit;
+    private final AdaptiveConcurrencyLimit writeLimit;
+    private final String retryAfterSeconds;
+    private final ObjectMapper objectMapper;
+
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimit readLimit, AdaptiveConcurrencyLimit writeLimit,
+                                  Duration retryAfter, ObjectMapper objectMapper) {
+        this.readLimit = readLimit;
+        this.writeLimit = writeLimit;
+        this.retryAfterSeconds = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = path(request);
+        return path.startsWith(IMPORT_PATH) || path.startsWith(EXPORT_PATH) || path.startsWith(CHANGES_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        AdaptiveConcurrencyLimit limit = isRead(request) ? readLimit : writeLimit;
+        boolean acquired;
+        try {
+            acquired = limit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            reject(request, response, limit);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            filterChain.doFilter(request, response);
+            dropped = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            limit.release(start, System.nanoTime(), dropped);
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, AdaptiveConcurrencyLimit limit)
+            throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorMessage(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                LocalDateTime.now(), "Too many concurrent " + limit.getName() + " requests, retry later.",
+                "uri=" + request.getRequestURI()));
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method) || path(request).equals(LOOKUP_PATH);
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -1,5 +1,6 @@
 package mymarket.branch.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 
 import javax.persistence.*;
@@ -10,7 +11,7 @@ import javax.persistence.*;
 @AllArgsConstructor
 @Data
 @ToString
-@Builder
+@Builder(toBuilder = true)
 public class Branch {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -27,4 +28,11 @@ public class Branch {
     private String latitude;
     @Column(name = "longitude")
     private String longitude;
+    /**
+     * Bumped by every update; it is what the ETag of a branch is made of, so clients cannot set it.
+     */
+    @Column(name = "version", nullable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Builder.Default
+    private Long version = 0L;
 }
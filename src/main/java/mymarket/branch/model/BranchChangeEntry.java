@@ -0,0 +1,27 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * One row of the {@code branch_outbox} table as sent on the change feed. {@code id} is the resumable offset; the
+ * branch is the state after the change, or the last state for a delete.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BranchChangeEntry {
+    private long id;
+    private Type type;
+    private Branch branch;
+    private Instant changedAt;
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+}
@@ -0,0 +1,15 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BranchLookup {
+    private List<Branch> found;
+    private List<Long> missing;
+}
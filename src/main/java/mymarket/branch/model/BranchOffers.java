@@ -0,0 +1,17 @@
+package mymarket.branch.model;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BranchOffers {
+    @JsonUnwrapped
+    private Branch branch;
+    private List<Offer> offers;
+}
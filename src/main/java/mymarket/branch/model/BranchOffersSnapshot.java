@@ -0,0 +1,20 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Branches with the offers current at the time they were read, together with the moment that stops being true: the
+ * earliest end of a listed offer or start of an upcoming one. Null when no offer of theirs starts or ends.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BranchOffersSnapshot {
+    private List<BranchOffers> branches;
+    private LocalDateTime validUntil;
+}
@@ -0,0 +1,20 @@
+package mymarket.branch.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BranchPage {
+    private List<Branch> items;
+    /**
+     * Opaque cursor to pass as {@code after} for the next page; absent on the last page.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String next;
+}
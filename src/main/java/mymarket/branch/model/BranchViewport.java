@@ -0,0 +1,18 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Either the individual branches in the viewport or, when zoomed out or too crowded, their grid clusters.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BranchViewport {
+    private List<Branch> branches;
+    private List<BranchCluster> clusters;
+}
@@ -0,0 +1,16 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A claimed Idempotency-Key with the hash of the request that claimed it, and its result once that request committed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+    private String requestHash;
+    private UpsertResult result;
+}
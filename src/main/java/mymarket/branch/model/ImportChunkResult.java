@@ -0,0 +1,25 @@
+package mymarket.branch.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportChunkResult {
+
+    public enum Status {
+        COMMITTED, FAILED
+    }
+
+    private int chunk;
+    private long firstRecord;
+    private long lastRecord;
+    private Status status;
+    private String error;
+}
@@ -0,0 +1,15 @@
+package mymarket.branch.model;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearbyBranch {
+    @JsonUnwrapped
+    private Branch branch;
+    private double distanceKm;
+}
@@ -0,0 +1,26 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An offer of the {@code offers} table, owned by offer-service; read here only to be listed with its branches.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Offer {
+    private Long id;
+    private Long productId;
+    private Float price;
+    private Float oldPrice;
+    private String offerType;
+    private String description;
+    private LocalDateTime fromDate;
+    private LocalDateTime toDate;
+}
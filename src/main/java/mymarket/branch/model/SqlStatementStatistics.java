@@ -0,0 +1,24 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SqlStatementStatistics {
+    private String shape;
+    private String sql;
+    private long count;
+    private double meanMillis;
+    private double maxMillis;
+    private double totalMillis;
+    /**
+     * The configured latency percentiles, e.g. {@code 0.99}, empty when none are.
+     */
+    private Map<String, Double> percentileMillis;
+    private double meanRows;
+}
@@ -0,0 +1,14 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpsertResult {
+    private int inserted;
+    private int updated;
+    private int unchanged;
+}
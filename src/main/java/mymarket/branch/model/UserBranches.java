@@ -0,0 +1,19 @@
+package mymarket.branch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The branches of a user together with the per-user version they were read at, which the list ETag is made of.
+ * The version is read before the branches, so it is never newer than them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserBranches {
+    private long version;
+    private List<Branch> branches;
+}
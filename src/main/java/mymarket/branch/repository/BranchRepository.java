@@ -1,13 +1,42 @@
 package mymarket.branch.repository;
 
 import mymarket.branch.model.Branch;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface BranchRepository extends JpaRepository<Branch, Long> {
+public interface BranchRepository extends JpaRepository<Branch, Long>, BranchRepositoryCustom {
 
     List<Branch> getByUserId(Long userID);
+
+    List<Branch> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Query("select b.version from Branch b where b.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from Branch b where b.id in :ids")
+    List<Branch> lockAllById(@Param("ids") Collection<Long> ids);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from Branch b where b.userId = :userId")
+    List<Branch> lockAllByUserId(@Param("userId") Long userId);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from Branch b where b.id in :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from Branch b where b.userId = :userId")
+    int deleteAllByUserId(@Param("userId") Long userId);
 }
@@ -0,0 +1,124 @@
+package mymarket.branch.repository;
+
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchOffers;
+import mymarket.branch.model.IdempotencyRecord;
+import mymarket.branch.model.UpsertResult;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Statements that Spring Data JPA cannot express efficiently; implemented over plain JDBC in
+ * {@link BranchRepositoryImpl}.
+ */
+public interface BranchRepositoryCustom {
+
+    /**
+     * Inserts new branches with multi-row INSERT statements of {@code branch.bulk-insert.chunk-size} rows each,
+     * and sets the generated ids on the given instances. Joins the caller's transaction.
+     */
+    List<Branch> insertAll(List<Branch> branches);
+
+    /**
+     * Inserts the branches, or updates the row with the same user_id and name, with multi-row INSERT ... ON DUPLICATE
+     * KEY UPDATE statements of {@code branch.bulk-insert.chunk-size} rows each; updated rows get their version bumped.
+     * Joins the caller's transaction.
+     */
+    void upsertAll(List<Branch> branches);
+
+    /**
+     * The branches with the same user_id and name as any of the given ones, locked until the caller's transaction
+     * ends, so no other writer inserts or changes them in between.
+     */
+    List<Branch> lockAllByNaturalKey(List<Branch> branches);
+
+    /**
+     * Same as {@link #lockAllByNaturalKey(List)}, without locking.
+     */
+    List<Branch> findAllByNaturalKey(List<Branch> branches);
+
+    /**
+     * Records the key as taken by the request with the given hash, unless it already is. A claim still without a
+     * result after five minutes was left by an instance that stopped mid-request and is taken over. Meant to
+     * commit on its own, before the request's transaction starts.
+     */
+    boolean claimIdempotencyKey(String idempotencyKey, String requestHash);
+
+    /**
+     * Drops the claim of a request that failed, so the key can be retried; a completed key is kept.
+     */
+    void releaseIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Stores the result of the request that claimed the key. Joins the caller's transaction.
+     */
+    void completeIdempotencyKey(String idempotencyKey, UpsertResult result);
+
+    Optional<IdempotencyRecord> findIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Keyset page: up to {@code limit} branches with an id greater than {@code afterId}, in id order, optionally
+     * restricted to one user. Rows are mapped straight from JDBC, so nothing piles up in a persistence context.
+     */
+    List<Branch> findPage(Long userId, long afterId, int limit);
+
+    /**
+     * Current version of the user's branch list, 0 if it never changed.
+     */
+    long findUserVersion(Long userId);
+
+    /**
+     * Bumps the list version of each user, in user id order so concurrent writers lock the rows in the same order.
+     * Joins the caller's transaction.
+     */
+    void incrementUserVersions(Collection<Long> userIds);
+
+    /**
+     * Number of branches of every city, grouping spellings that differ only in case or accents apart.
+     */
+    Map<String, Long> countByCity();
+
+    /**
+     * Number of branches of every user that has any.
+     */
+    Map<Long, Long> countByUser();
+
+    /**
+     * Writes the changes to the outbox with one batched INSERT, in order. Joins the caller's transaction, so the
+     * change feed holds exactly the committed writes.
+     */
+    void appendChanges(List<BranchChange> changes);
+
+    /**
+     * Up to {@code limit} outbox entries with an id greater than {@code afterId}, in id order.
+     */
+    List<BranchChangeEntry> findChangesAfter(long afterId, int limit);
+
+    /**
+     * The outbox entries with the given ids that exist, in id order.
+     */
+    List<BranchChangeEntry> findChangesByIds(Collection<Long> ids);
+
+    /**
+     * Highest outbox id, 0 if the outbox is empty.
+     */
+    long findLastChangeId();
+
+    /**
+     * The branch with its available offers that have not ended at {@code now}, upcoming ones included, read with a
+     * single join over {@code branches_x_offers}; empty if there is no such branch.
+     */
+    List<BranchOffers> findWithOffersById(Long id, LocalDateTime now);
+
+    /**
+     * Every branch of the user with its offers, as {@link #findWithOffersById(Long, LocalDateTime)}, in id order and
+     * with the same single join.
+     */
+    List<BranchOffers> findWithOffersByUserId(Long userId, LocalDateTime now);
+}
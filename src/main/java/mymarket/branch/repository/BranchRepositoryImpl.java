@@ -0,0 +1,357 @@
+package mymarket.branch.repository;
+
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchOffers;
+import mymarket.branch.model.IdempotencyRecord;
+import mymarket.branch.model.Offer;
+import mymarket.branch.model.UpsertResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * IDENTITY ids stop Hibernate from batching inserts, so bulk inserts are written here as one multi-row INSERT per
+ * chunk. MySQL hands out consecutive ids to the rows of a single INSERT, and the driver reports all of them through
+ * {@code getGeneratedKeys()} in row order.
+ */
+public class BranchRepositoryImpl implements BranchRepositoryCustom {
+
+    private static final String INSERT = "INSERT INTO branches (name, user_id, address, city, latitude, longitude) VALUES ";
+    private static final String ROW = "(?, ?, ?, ?, ?, ?)";
+    // VALUES() rather than a row alias, which MySQL only accepts from 8.0.19 on.
+    private static final String ON_DUPLICATE_KEY_UPDATE = " ON DUPLICATE KEY UPDATE name = VALUES(name), " +
+            "address = VALUES(address), city = VALUES(city), latitude = VALUES(latitude), " +
+            "longitude = VALUES(longitude), version = version + 1";
+    // Far longer than an upsert can run, lock waits and deadlock retries included.
+    static final Duration CLAIM_TIMEOUT = Duration.ofMinutes(5);
+    private static final String NATURAL_KEY = "(user_id = ? AND name = ?)";
+    private static final String SELECT = "SELECT id, name, user_id, address, city, latitude, longitude, version " +
+            "FROM branches ";
+    private static final String INCREMENT_USER_VERSION = "INSERT INTO user_branch_versions (user_id, version) VALUES (?, 1) " +
+            "ON DUPLICATE KEY UPDATE version = version + 1";
+
+    // The binary cast keeps MySQL's case and accent insensitive collation from merging "Batán" into "Batan".
+    private static final String COUNT_BY_CITY = "SELECT city, COUNT(*) FROM branches GROUP BY CAST(city AS BINARY), city";
+    private static final String COUNT_BY_USER = "SELECT user_id, COUNT(*) FROM branches GROUP BY user_id";
+
+    private static final String APPEND_CHANGE = "INSERT INTO branch_outbox (change_type, branch_id, user_id, name, " +
+            "address, city, latitude, longitude, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_CHANGES = "SELECT id, change_type, branch_id, user_id, name, address, city, " +
+            "latitude, longitude, version, changed_at FROM branch_outbox ";
+
+    // The offer conditions sit in the ON clause, so branches without current offers still get their row.
+    private static final String SELECT_WITH_OFFERS = "SELECT b.id, b.name, b.user_id, b.address, b.city, b.latitude, " +
+            "b.longitude, b.version, o.id AS offer_id, o.product_id, o.price, o.old_price, o.offer_type, " +
+            "o.offer_description, o.from_date, o.to_date FROM branches b " +
+            "LEFT JOIN branches_x_offers bo ON bo.branch_id = b.id " +
+            "LEFT JOIN offers o ON o.id = bo.offer_id AND o.available = 1 AND (o.to_date IS NULL OR o.to_date > ?) ";
+
+    private static final RowMapper<BranchChangeEntry> CHANGE_ROW_MAPPER = (resultSet, rowNum) -> BranchChangeEntry.builder()
+            .id(resultSet.getLong("id"))
+            .type(BranchChangeEntry.Type.valueOf(resultSet.getString("change_type")))
+            .branch(Branch.builder()
+                    .id(resultSet.getLong("branch_id"))
+                    .name(resultSet.getString("name"))
+                    .userId(resultSet.getLong("user_id"))
+                    .address(resultSet.getString("address"))
+                    .city(resultSet.getString("city"))
+                    .latitude(resultSet.getString("latitude"))
+                    .longitude(resultSet.getString("longitude"))
+                    .version(resultSet.getLong("version"))
+                    .build())
+            .changedAt(resultSet.getTimestamp("changed_at").toInstant())
+            .build();
+
+    private static final RowMapper<Branch> BRANCH_ROW_MAPPER = (resultSet, rowNum) -> Branch.builder()
+            .id(resultSet.getLong("id"))
+            .name(resultSet.getString("name"))
+            .userId(resultSet.getLong("user_id"))
+            .address(resultSet.getString("address"))
+            .city(resultSet.getString("city"))
+            .latitude(resultSet.getString("latitude"))
+            .longitude(resultSet.getString("longitude"))
+            .version(resultSet.getLong("version"))
+            .build();
+
+    /**
+     * Folds the joined rows, ordered by branch id, into one entry per branch; an offer linked twice is listed once.
+     */
+    private static final ResultSetExtractor<List<BranchOffers>> BRANCH_OFFERS_EXTRACTOR = resultSet -> {
+        Map<Long, BranchOffers> byBranchId = new LinkedHashMap<>();
+        Map<Long, Map<Long, Offer>> offersByBranchId = new HashMap<>();
+        while (resultSet.next()) {
+            long branchId = resultSet.getLong("id");
+            if (!byBranchId.containsKey(branchId)) {
+                byBranchId.put(branchId, new BranchOffers(BRANCH_ROW_MAPPER.mapRow(resultSet, 0), new ArrayList<>()));
+                offersByBranchId.put(branchId, new LinkedHashMap<>());
+            }
+            long offerId = resultSet.getLong("offer_id");
+            if (!resultSet.wasNull()) {
+                offersByBranchId.get(branchId).putIfAbsent(offerId, Offer.builder()
+                        .id(offerId)
+                        .productId(resultSet.getLong("product_id"))
+                        .price(resultSet.getFloat("price"))
+                        .oldPrice(resultSet.getFloat("old_price"))
+                        .offerType(resultSet.getString("offer_type"))
+                        .description(resultSet.getString("offer_description"))
+                        .fromDate(toLocalDateTime(resultSet.getTimestamp("from_date")))
+                        .toDate(toLocalDateTime(resultSet.getTimestamp("to_date")))
+                        .build());
+            }
+        }
+        byBranchId.forEach((branchId, branchOffers) ->
+                branchOffers.getOffers().addAll(offersByBranchId.get(branchId).values()));
+        return new ArrayList<>(byBranchId.values());
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+
+    public BranchRepositoryImpl(JdbcTemplate jdbcTemplate, @Value("${branch.bulk-insert.chunk-size:500}") int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("branch.bulk-insert.chunk-size must be positive, was " + chunkSize);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public List<Branch> insertAll(List<Branch> branches) {
+        for (int from = 0; from < branches.size(); from += chunkSize) {
+            insertChunk(branches.subList(from, Math.min(from + chunkSize, branches.size())));
+        }
+        return branches;
+    }
+
+    @Override
+    public void upsertAll(List<Branch> branches) {
+        for (int from = 0; from < branches.size(); from += chunkSize) {
+            List<Branch> chunk = branches.subList(from, Math.min(from + chunkSize, branches.size()));
+            String sql = INSERT + String.join(", ", Collections.nCopies(chunk.size(), ROW)) + ON_DUPLICATE_KEY_UPDATE;
+            jdbcTemplate.update(sql, statement -> bind(statement, chunk));
+        }
+    }
+
+    @Override
+    public List<Branch> lockAllByNaturalKey(List<Branch> branches) {
+        return findAllByNaturalKey(branches, " FOR UPDATE");
+    }
+
+    @Override
+    public List<Branch> findAllByNaturalKey(List<Branch> branches) {
+        return findAllByNaturalKey(branches, "");
+    }
+
+    @Override
+    public boolean claimIdempotencyKey(String idempotencyKey, String requestHash) {
+        if (insertIdempotencyKey(idempotencyKey, requestHash)) {
+            return true;
+        }
+        // created_at is set by the database, so the cutoff is computed there too.
+        return jdbcTemplate.update("DELETE FROM branch_idempotency_keys WHERE idempotency_key = ? " +
+                "AND inserted IS NULL AND created_at < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)",
+                idempotencyKey, -CLAIM_TIMEOUT.getSeconds()) > 0 && insertIdempotencyKey(idempotencyKey, requestHash);
+    }
+
+    @Override
+    public void releaseIdempotencyKey(String idempotencyKey) {
+        jdbcTemplate.update("DELETE FROM branch_idempotency_keys WHERE idempotency_key = ? AND inserted IS NULL",
+                idempotencyKey);
+    }
+
+    @Override
+    public void completeIdempotencyKey(String idempotencyKey, UpsertResult result) {
+        jdbcTemplate.update("UPDATE branch_idempotency_keys SET inserted = ?, updated = ?, unchanged = ? " +
+                "WHERE idempotency_key = ?", result.getInserted(), result.getUpdated(), result.getUnchanged(),
+                idempotencyKey);
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> findIdempotencyKey(String idempotencyKey) {
+        return jdbcTemplate.query("SELECT request_hash, inserted, updated, unchanged FROM branch_idempotency_keys " +
+                "WHERE idempotency_key = ?", (resultSet, rowNum) -> {
+            int inserted = resultSet.getInt("inserted");
+            UpsertResult result = resultSet.wasNull() ? null :
+                    new UpsertResult(inserted, resultSet.getInt("updated"), resultSet.getInt("unchanged"));
+            return new IdempotencyRecord(resultSet.getString("request_hash"), result);
+        }, idempotencyKey).stream().findFirst();
+    }
+
+    @Override
+    public List<Branch> findPage(Long userId, long afterId, int limit) {
+        return userId == null ?
+                jdbcTemplate.query(SELECT + "WHERE id > ? ORDER BY id LIMIT ?", BRANCH_ROW_MAPPER, afterId, limit) :
+                jdbcTemplate.query(SELECT + "WHERE user_id = ? AND id > ? ORDER BY id LIMIT ?", BRANCH_ROW_MAPPER,
+                        userId, afterId, limit);
+    }
+
+    @Override
+    public long findUserVersion(Long userId) {
+        List<Long> versions = jdbcTemplate.queryForList("SELECT version FROM user_branch_versions WHERE user_id = ?",
+                Long.class, userId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    @Override
+    public void incrementUserVersions(Collection<Long> userIds) {
+        List<Object[]> batch = new TreeSet<>(userIds).stream()
+                .map(userId -> new Object[]{userId})
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate(INCREMENT_USER_VERSION, batch);
+    }
+
+    @Override
+    public Map<String, Long> countByCity() {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query(COUNT_BY_CITY, resultSet -> {
+            counts.put(resultSet.getString(1), resultSet.getLong(2));
+        });
+        return counts;
+    }
+
+    @Override
+    public Map<Long, Long> countByUser() {
+        Map<Long, Long> counts = new HashMap<>();
+        jdbcTemplate.query(COUNT_BY_USER, resultSet -> {
+            counts.put(resultSet.getLong(1), resultSet.getLong(2));
+        });
+        return counts;
+    }
+
+    @Override
+    public void appendChanges(List<BranchChange> changes) {
+        jdbcTemplate.batchUpdate(APPEND_CHANGE, changes, changes.size(), (statement, change) -> {
+            Branch branch = change.isDelete() ? change.getBefore() : change.getAfter();
+            statement.setString(1, changeType(change).name());
+            statement.setObject(2, branch.getId());
+            statement.setObject(3, branch.getUserId());
+            statement.setString(4, branch.getName());
+            statement.setString(5, branch.getAddress());
+            statement.setString(6, branch.getCity());
+            statement.setString(7, branch.getLatitude());
+            statement.setString(8, branch.getLongitude());
+            statement.setObject(9, branch.getVersion());
+        });
+    }
+
+    @Override
+    public List<BranchChangeEntry> findChangesAfter(long afterId, int limit) {
+        return jdbcTemplate.query(SELECT_CHANGES + "WHERE id > ? ORDER BY id LIMIT ?", CHANGE_ROW_MAPPER, afterId, limit);
+    }
+
+    @Override
+    public List<BranchChangeEntry> findChangesByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        return jdbcTemplate.query(SELECT_CHANGES + "WHERE id IN (" + placeholders + ") ORDER BY id", CHANGE_ROW_MAPPER,
+                ids.toArray());
+    }
+
+    @Override
+    public long findLastChangeId() {
+        Long lastId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM branch_outbox", Long.class);
+        return lastId == null ? 0 : lastId;
+    }
+
+    @Override
+    public List<BranchOffers> findWithOffersById(Long id, LocalDateTime now) {
+        return jdbcTemplate.query(SELECT_WITH_OFFERS + "WHERE b.id = ? ORDER BY o.id", BRANCH_OFFERS_EXTRACTOR,
+                Timestamp.valueOf(now), id);
+    }
+
+    @Override
+    public List<BranchOffers> findWithOffersByUserId(Long userId, LocalDateTime now) {
+        return jdbcTemplate.query(SELECT_WITH_OFFERS + "WHERE b.user_id = ? ORDER BY b.id, o.id",
+                BRANCH_OFFERS_EXTRACTOR, Timestamp.valueOf(now), userId);
+    }
+
+    static BranchChangeEntry.Type changeType(BranchChange change) {
+        if (change.isCreate()) {
+            return BranchChangeEntry.Type.CREATED;
+        }
+        return change.isDelete() ? BranchChangeEntry.Type.DELETED : BranchChangeEntry.Type.UPDATED;
+    }
+
+    private boolean insertIdempotencyKey(String idempotencyKey, String requestHash) {
+        try {
+            jdbcTemplate.update("INSERT INTO branch_idempotency_keys (idempotency_key, request_hash) VALUES (?, ?)",
+                    idempotencyKey, requestHash);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private List<Branch> findAllByNaturalKey(List<Branch> branches, String lockClause) {
+        List<Branch> found = new ArrayList<>();
+        for (int from = 0; from < branches.size(); from += chunkSize) {
+            List<Branch> chunk = branches.subList(from, Math.min(from + chunkSize, branches.size()));
+            String sql = SELECT + "WHERE " + String.join(" OR ", Collections.nCopies(chunk.size(), NATURAL_KEY)) +
+                    lockClause;
+            found.addAll(jdbcTemplate.query(sql, statement -> {
+                int index = 1;
+                for (Branch branch : chunk) {
+                    statement.setObject(index++, branch.getUserId());
+                    statement.setString(index++, branch.getName());
+                }
+            }, BRANCH_ROW_MAPPER));
+        }
+        return found;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+
+    private void insertChunk(List<Branch> chunk) {
+        String sql = INSERT + String.join(", ", Collections.nCopies(chunk.size(), ROW));
+        jdbcTemplate.execute(connection -> connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS),
+                (PreparedStatementCallback<Void>) statement -> {
+                    bind(statement, chunk);
+                    statement.executeUpdate();
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        for (int i = 0; keys.next(); i++) {
+                            chunk.get(i).setId(keys.getLong(1));
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    private static void bind(PreparedStatement statement, List<Branch> chunk) throws SQLException {
+        int index = 1;
+        for (Branch branch : chunk) {
+            statement.setString(index++, branch.getName());
+            statement.setObject(index++, branch.getUserId());
+            statement.setString(index++, branch.getAddress());
+            statement.setString(index++, branch.getCity());
+            statement.setString(index++, branch.getLatitude());
+            statement.setString(index++, branch.getLongitude());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package mymarket.branch.repository;
+
+import io.r2dbc.spi.Row;
+import lombok.RequiredArgsConstructor;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.model.Branch;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Non-blocking access to the {@code branches} table for the {@code reactive} profile. {@link Branch} is mapped for
+ * JPA, so rows are mapped by hand over {@link DatabaseClient} with the same columns as {@link BranchRepositoryImpl}.
+ */
+@Repository
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveBranchRepository {
+
+    private static final String SELECT = "SELECT id, name, user_id, address, city, latitude, longitude, version " +
+            "FROM branches ";
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<Branch> findById(long id) {
+        return databaseClient.sql(SELECT + "WHERE id = :id")
+                .bind("id", id)
+                .map(ReactiveBranchRepository::toBranch)
+                .one();
+    }
+
+    /**
+     * Reads the row with {@code FOR UPDATE}, so inside a transaction a concurrent update of it waits for the commit.
+     */
+    public Mono<Branch> lockById(long id) {
+        return databaseClient.sql(SELECT + "WHERE id = :id FOR UPDATE")
+                .bind("id", id)
+                .map(ReactiveBranchRepository::toBranch)
+                .one();
+    }
+
+    public Mono<Long> findVersionById(long id) {
+        return databaseClient.sql("SELECT version FROM branches WHERE id = :id")
+                .bind("id", id)
+                .map(row -> row.get(0, Number.class).longValue())
+                .one();
+    }
+
+    public Flux<Branch> findAllById(Collection<Long> ids) {
+        return databaseClient.sql(SELECT + "WHERE id IN (:ids)")
+                .bind("ids", ids)
+                .map(ReactiveBranchRepository::toBranch)
+                .all();
+    }
+
+    /**
+     * Streams the user's branches in id order as the driver decodes them, without collecting them first.
+     */
+    public Flux<Branch> findByUserId(long userId) {
+        return databaseClient.sql(SELECT + "WHERE user_id = :userId ORDER BY id")
+                .bind("userId", userId)
+                .map(ReactiveBranchRepository::toBranch)
+                .all();
+    }
+
+    public Mono<Boolean> existsByUserId(long userId) {
+        return databaseClient.sql("SELECT 1 FROM branches WHERE user_id = :userId LIMIT 1")
+                .bind("userId", userId)
+                .map(row -> true)
+                .first()
+                .defaultIfEmpty(false);
+    }
+
+    public Mono<Long> findUserVersion(long userId) {
+        return databaseClient.sql("SELECT version FROM user_branch_versions WHERE user_id = :userId")
+                .bind("userId", userId)
+                .map(row -> row.get(0, Number.class).longValue())
+                .one()
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * Same as {@link BranchRepositoryCustom#incrementUserVersions(Collection)}, one statement per user.
+     */
+    public Mono<Void> incrementUserVersions(Collection<Long> userIds) {
+        return Flux.fromIterable(new TreeSet<>(userIds))
+                .concatMap(userId -> databaseClient.sql("INSERT INTO user_branch_versions (user_id, version) " +
+                        "VALUES (:userId, 1) ON DUPLICATE KEY UPDATE version = version + 1")
+                        .bind("userId", userId)
+                        .fetch()
+                        .rowsUpdated())
+                .then();
+    }
+
+    /**
+     * Same as {@link BranchRepositoryCustom#appendChanges(List)}, one statement per change.
+     */
+    public Mono<Void> appendChanges(List<BranchChange> changes) {
+        return Flux.fromIterable(changes)
+                .concatMap(change -> {
+                    Branch branch = change.isDelete() ? change.getBefore() : change.getAfter();
+                    DatabaseClient.GenericExecuteSpec append = databaseClient.sql("INSERT INTO branch_outbox " +
+                            "(change_type, branch_id, user_id, name, address, city, latitude, longitude, version) " +
+                            "VALUES (:type, :branchId, :userId, :name, :address, :city, :latitude, :longitude, :version)");
+                    return bindColumns(append, branch)
+                            .bind("type", BranchRepositoryImpl.changeType(change).name())
+                            .bind("branchId", branch.getId())
+                            .bind("version", branch.getVersion())
+                            .fetch()
+                            .rowsUpdated();
+                })
+                .then();
+    }
+
+    public Flux<Branch> findPage(long userId, long afterId, int limit) {
+        return databaseClient.sql(SELECT + "WHERE user_id = :userId AND id > :afterId ORDER BY id LIMIT :limit")
+                .bind("userId", userId)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveBranchRepository::toBranch)
+                .all();
+    }
+
+    /**
+     * Inserts the branch and returns a copy carrying the generated id and the initial version.
+     */
+    public Mono<Branch> insert(Branch branch) {
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("INSERT INTO branches " +
+                "(name, user_id, address, city, latitude, longitude) " +
+                "VALUES (:name, :userId, :address, :city, :latitude, :longitude)");
+        return bindColumns(insert, branch)
+                .filter((statement, next) -> next.execute(statement.returnGeneratedValues("id")))
+                .map(row -> row.get(0, Number.class).longValue())
+                .one()
+                .map(id -> branch.toBuilder().id(id).version(0L).build());
+    }
+
+    /**
+     * Updates the row and bumps its version.
+     */
+    public Mono<Integer> update(Branch branch) {
+        DatabaseClient.GenericExecuteSpec update = databaseClient.sql("UPDATE branches SET name = :name, " +
+                "user_id = :userId, address = :address, city = :city, latitude = :latitude, longitude = :longitude, " +
+                "version = version + 1 WHERE id = :id");
+        return bindColumns(update, branch)
+                .bind("id", branch.getId())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Integer> deleteById(long id) {
+        return databaseClient.sql("DELETE FROM branches WHERE id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindColumns(DatabaseClient.GenericExecuteSpec spec, Branch branch) {
+        spec = bindNullable(spec, "name", branch.getName(), String.class);
+        spec = bindNullable(spec, "userId", branch.getUserId(), Long.class);
+        spec = bindNullable(spec, "address", branch.getAddress(), String.class);
+        spec = bindNullable(spec, "city", branch.getCity(), String.class);
+        spec = bindNullable(spec, "latitude", branch.getLatitude(), String.class);
+        return bindNullable(spec, "longitude", branch.getLongitude(), String.class);
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name,
+                                                                 Object value, Class<?> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    private static Branch toBranch(Row row) {
+        return Branch.builder()
+                .id(row.get("id", Number.class).longValue())
+                .name(row.get("name", String.class))
+                .userId(row.get("user_id", Number.class).longValue())
+                .address(row.get("address", String.class))
+                .city(row.get("city", String.class))
+                .latitude(row.get("latitude", String.class))
+                .longitude(row.get("longitude", String.class))
+                .version(row.get("version", Number.class).longValue())
+                .build();
+    }
+}
@@ -0,0 +1,307 @@
+package mymarket.branch.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import mymarket.branch.config.BranchChangesProperties;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.repository.BranchRepository;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Relays the {@code branch_outbox} table to the change feed subscribers. Every {@code branch.changes.flush-interval}
+ * the rows committed since the last run are read in one batch and kept in a bounded in-memory buffer; each subscriber
+ * then gets, on the delivery pool, everything after its own offset, from the buffer or, when it lags further behind,
+ * from the table. A subscriber is sent one batch at a time, so a slow client only delays itself.
+ * <p>
+ * Outbox ids are handed out when rows are inserted but become visible when their transaction commits, so a lower id
+ * can show up after a higher one, and a rolled back write leaves a gap for good. The relay never waits at a gap: it
+ * moves on and looks the missing ids up again on every run, for {@code branch.changes.gap-timeout} at most. An entry
+ * that commits within it is sent out of order to the subscribers already past it; the others are given up. The ids
+ * missing below the last one at startup, within a batch, are looked up the same way, since their transactions may
+ * still be running.
+ */
+@Slf4j
+@Service
+@EnableConfigurationProperties(BranchChangesProperties.class)
+public class BranchChangeFeed {
+
+    static final String SKIPPED_COUNTER = "branch.changes.skipped";
+    static final String LATE_COUNTER = "branch.changes.late";
+
+    private final BranchRepository branchRepository;
+    private final BranchChangesProperties properties;
+    private final ExecutorService deliveryExecutor;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final Counter skippedCounter;
+    private final Counter lateCounter;
+
+    private final Object relayLock = new Object();
+    private final Deque<BranchChangeEntry> recent = new ArrayDeque<>();
+    private final Map<Long, Instant> pending = new TreeMap<>();
+    private long head = -1;
+    private long bufferFloor;
+
+    public BranchChangeFeed(BranchRepository branchRepository, BranchChangesProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.branchRepository = branchRepository;
+        this.properties = properties;
+        this.deliveryExecutor = Executors.newFixedThreadPool(properties.getDeliveryThreads(),
+                new CustomizableThreadFactory("branch-changes-"));
+        this.skippedCounter = Counter.builder(SKIPPED_COUNTER)
+                .description("Outbox ids the change feed gave up on after gap-timeout without seeing them commit")
+                .register(meterRegistry);
+        this.lateCounter = Counter.builder(LATE_COUNTER)
+                .description("Outbox ids that committed after a higher one and were relayed out of order")
+                .register(meterRegistry);
+    }
+
+    public Duration getStreamTimeout() {
+        return properties.getTimeout();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Starts sending the changes after {@code since}, or the ones made from now on when it is null. The subscriber
+     * is called with the next entries in id order, or with none as a heartbeat, and returns false once its client
+     * is gone.
+     */
+    public Subscription subscribe(Long since, Predicate<List<BranchChangeEntry>> subscriber) {
+        long offset = since != null ? since : head();
+        Subscription subscription = new Subscription(offset, subscriber);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    @Scheduled(fixedDelayString = "${branch.changes.flush-interval:PT0.5S}")
+    public void relay() {
+        long relayedUpTo = advance();
+        Instant heartbeatBefore = Instant.now().minus(properties.getHeartbeatInterval());
+        for (Subscription subscription : subscriptions) {
+            if ((subscription.offset < relayedUpTo || !subscription.late.isEmpty() ||
+                    subscription.lastSentAt.isBefore(heartbeatBefore)) &&
+                    subscription.delivering.compareAndSet(false, true)) {
+                deliveryExecutor.execute(() -> deliver(subscription, relayedUpTo));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        deliveryExecutor.shutdownNow();
+    }
+
+    /**
+     * Reads the rows committed after the current head into the buffer and returns the new head.
+     */
+    long advance() {
+        synchronized (relayLock) {
+            startLocked();
+            recheckPendingLocked();
+            Instant now = Instant.now();
+            for (BranchChangeEntry entry : branchRepository.findChangesAfter(head, properties.getBatchSize())) {
+                pendLocked(head + 1, entry.getId() - 1, now);
+                recent.addLast(entry);
+                head = entry.getId();
+                trimBufferLocked();
+            }
+            return head;
+        }
+    }
+
+    /**
+     * Remembers the missing ids, at most a batch of them, so later runs can still relay the ones that commit.
+     */
+    private void pendLocked(long from, long to, Instant now) {
+        for (long id = from; id <= to; id++) {
+            if (pending.size() < properties.getBatchSize()) {
+                pending.put(id, now);
+            } else {
+                skippedCounter.increment(to - id + 1);
+                log.warn("Outbox ids {} to {} are missing while {} others are pending, skipping them", id, to,
+                        pending.size());
+                return;
+            }
+        }
+    }
+
+    private void recheckPendingLocked() {
+        Instant giveUpBefore = Instant.now().minus(properties.getGapTimeout());
+        pending.values().removeIf(seenAt -> {
+            if (seenAt.isBefore(giveUpBefore)) {
+                skippedCounter.increment();
+                return true;
+            }
+            return false;
+        });
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (BranchChangeEntry entry : branchRepository.findChangesByIds(pending.keySet())) {
+            pending.remove(entry.getId());
+            lateCounter.increment();
+            log.debug("Outbox id {} committed after a higher one, relaying it out of order", entry.getId());
+            // Subscribers behind it read it in order, from the buffer or the table; the others get it on its own.
+            if (entry.getId() > bufferFloor) {
+                insertIntoBufferLocked(entry);
+            }
+            for (Subscription subscription : subscriptions) {
+                subscription.late.add(entry);
+            }
+        }
+    }
+
+    private void insertIntoBufferLocked(BranchChangeEntry late) {
+        List<BranchChangeEntry> entries = new ArrayList<>(recent);
+        int index = 0;
+        while (index < entries.size() && entries.get(index).getId() < late.getId()) {
+            index++;
+        }
+        entries.add(index, late);
+        recent.clear();
+        recent.addAll(entries);
+        trimBufferLocked();
+    }
+
+    private void trimBufferLocked() {
+        while (recent.size() > properties.getBufferSize()) {
+            bufferFloor = recent.removeFirst().getId();
+        }
+    }
+
+    private void deliver(Subscription subscription, long upTo) {
+        try {
+            boolean sent = false;
+            List<BranchChangeEntry> late = new ArrayList<>();
+            for (BranchChangeEntry entry = subscription.late.poll(); entry != null; entry = subscription.late.poll()) {
+                if (entry.getId() <= subscription.offset) {
+                    late.add(entry);
+                }
+            }
+            if (!late.isEmpty()) {
+                if (!subscription.send(late)) {
+                    return;
+                }
+                sent = true;
+            }
+            while (subscription.offset < upTo) {
+                List<BranchChangeEntry> entries = changesAfter(subscription.offset, upTo);
+                if (entries.isEmpty()) {
+                    subscription.offset = upTo;
+                    break;
+                }
+                if (!subscription.send(entries)) {
+                    return;
+                }
+                subscription.offset = entries.get(entries.size() - 1).getId();
+                sent = true;
+            }
+            if (!sent && subscription.lastSentAt.isBefore(Instant.now().minus(properties.getHeartbeatInterval()))) {
+                subscription.send(List.of());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Closing a change feed subscription after a failed delivery", e);
+            subscription.cancel();
+        } finally {
+            subscription.delivering.set(false);
+        }
+    }
+
+    private List<BranchChangeEntry> changesAfter(long offset, long upTo) {
+        synchronized (relayLock) {
+            if (offset >= bufferFloor) {
+                List<BranchChangeEntry> entries = new ArrayList<>();
+                for (BranchChangeEntry entry : recent) {
+                    if (entry.getId() > upTo || entries.size() == properties.getBatchSize()) {
+                        break;
+                    }
+                    if (entry.getId() > offset) {
+                        entries.add(entry);
+                    }
+                }
+                return entries;
+            }
+        }
+        List<BranchChangeEntry> entries = new ArrayList<>(branchRepository.findChangesAfter(offset,
+                properties.getBatchSize()));
+        entries.removeIf(entry -> entry.getId() > upTo);
+        return entries;
+    }
+
+    private long head() {
+        synchronized (relayLock) {
+            startLocked();
+            return head;
+        }
+    }
+
+    private void startLocked() {
+        if (head < 0) {
+            long last = branchRepository.findLastChangeId();
+            long from = Math.max(0, last - properties.getBatchSize());
+            long expected = from + 1;
+            if (from < last) {
+                Instant now = Instant.now();
+                for (BranchChangeEntry entry : branchRepository.findChangesAfter(from, properties.getBatchSize())) {
+                    if (entry.getId() > last) {
+                        break;
+                    }
+                    pendLocked(expected, entry.getId() - 1, now);
+                    expected = entry.getId() + 1;
+                }
+            }
+            head = last;
+            bufferFloor = last;
+        }
+    }
+
+    public class Subscription {
+        private final Predicate<List<BranchChangeEntry>> subscriber;
+        private final AtomicBoolean delivering = new AtomicBoolean();
+        private final Queue<BranchChangeEntry> late = new ConcurrentLinkedQueue<>();
+        private volatile long offset;
+        private volatile Instant lastSentAt = Instant.now();
+
+        private Subscription(long offset, Predicate<List<BranchChangeEntry>> subscriber) {
+            this.offset = offset;
+            this.subscriber = subscriber;
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        private boolean send(List<BranchChangeEntry> entries) {
+            if (!subscriber.test(entries)) {
+                cancel();
+                return false;
+            }
+            lastSentAt = Instant.now();
+            return true;
+        }
+    }
+}
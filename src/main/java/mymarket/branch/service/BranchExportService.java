@@ -0,0 +1,77 @@
+package mymarket.branch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.ExportFormat;
+import mymarket.branch.repository.BranchRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes branches to a stream one keyset page at a time, so only a single page is ever held in memory whatever
+ * the size of the export.
+ */
+@Service
+public class BranchExportService {
+
+    private static final String CSV_HEADER = "id,name,user_id,address,city,latitude,longitude";
+
+    private final BranchRepository branchRepository;
+    private final ObjectMapper objectMapper;
+    private final int pageSize;
+
+    public BranchExportService(BranchRepository branchRepository, ObjectMapper objectMapper,
+                               @Value("${branch.export.page-size:1000}") int pageSize) {
+        this.branchRepository = branchRepository;
+        this.objectMapper = objectMapper;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Exports every branch, or only those of {@code userId} when it is not null, in id order.
+     */
+    public void export(Long userId, ExportFormat format, OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long lastId = 0;
+        List<Branch> page;
+        do {
+            page = branchRepository.findPage(userId, lastId, pageSize);
+            for (Branch branch : page) {
+                writer.write(format == ExportFormat.CSV ? toCsv(branch) : objectMapper.writeValueAsString(branch));
+                writer.write('\n');
+            }
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
+        writer.flush();
+    }
+
+    private static String toCsv(Branch branch) {
+        return String.join(",", String.valueOf(branch.getId()), csvField(branch.getName()),
+                String.valueOf(branch.getUserId()), csvField(branch.getAddress()), csvField(branch.getCity()),
+                csvField(branch.getLatitude()), csvField(branch.getLongitude()));
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+}
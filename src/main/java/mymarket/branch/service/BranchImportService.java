@@ -0,0 +1,103 @@
+package mymarket.branch.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.ImportChunkResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports an unbounded stream of branches with memory bounded by one chunk. Branches are read one at a time, either
+ * as NDJSON or as a single JSON array, and every {@code branch.import.chunk-size} of them are saved in their own
+ * transaction. One {@link ImportChunkResult} per chunk is written to the progress stream as NDJSON as soon as the
+ * chunk commits or fails.
+ */
+@Service
+public class BranchImportService {
+
+    private final BranchService branchService;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader branchReader;
+    private final int chunkSize;
+
+    public BranchImportService(BranchService branchService, ObjectMapper objectMapper,
+                               @Value("${branch.import.chunk-size:1000}") int chunkSize) {
+        this.branchService = branchService;
+        this.objectMapper = objectMapper;
+        this.branchReader = objectMapper.readerFor(Branch.class);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * A failed chunk is reported and the import goes on with the next one. A malformed record stops the import, as
+     * the position of the next record can no longer be trusted; everything read before it is still saved.
+     */
+    public void importBranches(InputStream input, OutputStream progress) throws IOException {
+        List<Branch> chunk = new ArrayList<>(chunkSize);
+        int chunkNumber = 0;
+        long record = 0;
+
+        try (MappingIterator<Branch> branches = branchReader.readValues(input)) {
+            while (true) {
+                Branch branch;
+                try {
+                    if (!branches.hasNextValue()) {
+                        break;
+                    }
+                    branch = branches.nextValue();
+                } catch (JsonProcessingException ex) {
+                    if (!chunk.isEmpty()) {
+                        save(chunk, ++chunkNumber, record - chunk.size() + 1, progress);
+                    }
+                    report(progress, ImportChunkResult.builder().chunk(++chunkNumber)
+                            .firstRecord(record + 1).lastRecord(record + 1)
+                            .status(ImportChunkResult.Status.FAILED)
+                            .error("Malformed branch: " + ex.getOriginalMessage()).build());
+                    return;
+                }
+
+                record++;
+                // The import only creates branches; ids in the payload are ignored.
+                branch.setId(null);
+                chunk.add(branch);
+                if (chunk.size() == chunkSize) {
+                    save(chunk, ++chunkNumber, record - chunk.size() + 1, progress);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            save(chunk, ++chunkNumber, record - chunk.size() + 1, progress);
+        }
+    }
+
+    private void save(List<Branch> chunk, int chunkNumber, long firstRecord, OutputStream progress) throws IOException {
+        ImportChunkResult.ImportChunkResultBuilder result = ImportChunkResult.builder()
+                .chunk(chunkNumber)
+                .firstRecord(firstRecord)
+                .lastRecord(firstRecord + chunk.size() - 1);
+        try {
+            branchService.save(chunk);
+            result.status(ImportChunkResult.Status.COMMITTED);
+        } catch (DataAccessException ex) {
+            result.status(ImportChunkResult.Status.FAILED).error(ex.getMostSpecificCause().getMessage());
+        }
+        report(progress, result.build());
+    }
+
+    private void report(OutputStream progress, ImportChunkResult result) throws IOException {
+        progress.write(objectMapper.writeValueAsBytes(result));
+        progress.write('\n');
+        progress.flush();
+    }
+}
@@ -0,0 +1,77 @@
+package mymarket.branch.service;
+
+import mymarket.branch.config.CacheConfiguration;
+import mymarket.branch.exception.BranchNotFoundException;
+import mymarket.branch.model.BranchOffers;
+import mymarket.branch.model.BranchOffersSnapshot;
+import mymarket.branch.model.Offer;
+import mymarket.branch.repository.BranchRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Branches with their current offers, read with one join and cached until the next offer of theirs starts or ends;
+ * see {@link mymarket.branch.cache.OfferWindowExpiry}.
+ */
+@Service
+public class BranchOfferService {
+
+    private final BranchRepository branchRepository;
+    private final Clock clock;
+
+    @Autowired
+    public BranchOfferService(BranchRepository branchRepository) {
+        this(branchRepository, Clock.systemDefaultZone());
+    }
+
+    BranchOfferService(BranchRepository branchRepository, Clock clock) {
+        this.branchRepository = branchRepository;
+        this.clock = clock;
+    }
+
+    @Cacheable(cacheNames = CacheConfiguration.BRANCH_OFFERS_CACHE, key = "#id")
+    public BranchOffersSnapshot getById(Long id) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<BranchOffers> branches = branchRepository.findWithOffersById(id, now);
+        if (branches.isEmpty()) {
+            throw new BranchNotFoundException(id);
+        }
+        return snapshot(branches, now);
+    }
+
+    @Cacheable(cacheNames = CacheConfiguration.USER_BRANCH_OFFERS_CACHE, key = "#userId")
+    public BranchOffersSnapshot getByUserId(Long userId) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        return snapshot(branchRepository.findWithOffersByUserId(userId, now), now);
+    }
+
+    /**
+     * Keeps the offers that already started and notes when the first of them ends or of the rest starts.
+     */
+    static BranchOffersSnapshot snapshot(List<BranchOffers> branches, LocalDateTime now) {
+        List<BranchOffers> current = new ArrayList<>(branches.size());
+        LocalDateTime validUntil = null;
+        for (BranchOffers branch : branches) {
+            List<Offer> started = new ArrayList<>();
+            for (Offer offer : branch.getOffers()) {
+                boolean hasStarted = offer.getFromDate() == null || !offer.getFromDate().isAfter(now);
+                if (hasStarted) {
+                    started.add(offer);
+                }
+                validUntil = earliest(validUntil, hasStarted ? offer.getToDate() : offer.getFromDate());
+            }
+            current.add(new BranchOffers(branch.getBranch(), started));
+        }
+        return new BranchOffersSnapshot(current, validUntil);
+    }
+
+    private static LocalDateTime earliest(LocalDateTime current, LocalDateTime candidate) {
+        return current == null || (candidate != null && candidate.isBefore(current)) ? candidate : current;
+    }
+}
@@ -1,33 +1,523 @@
 package mymarket.branch.service;
 
 import lombok.RequiredArgsConstructor;
+import mymarket.branch.config.CacheConfiguration;
+import mymarket.branch.datasource.ReplicaReads;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.exception.BranchNotFoundException;
+import mymarket.branch.exception.IdempotencyKeyInProgressException;
+import mymarket.branch.index.BranchCounters;
+import mymarket.branch.index.BranchGeoIndex;
+import mymarket.branch.index.BranchSearchIndex;
 import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.BranchViewport;
+import mymarket.branch.model.IdempotencyRecord;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.model.UpsertResult;
+import mymarket.branch.model.UserBranches;
 import mymarket.branch.repository.BranchRepository;
-import mymarket.exception.commons.exception.NotFoundException;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DeadlockLoserDataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class BranchService {
 
+    static final int MAX_LOOKUP_IDS = 1000;
+    static final int MAX_UPSERT_BRANCHES = 1000;
+    static final int MAX_UPSERT_ATTEMPTS = 3;
+    static final int MAX_VIEWPORT_BRANCHES = 500;
+    static final int MAX_SEARCH_QUERY_LENGTH = 100;
+    static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     private final BranchRepository branchRepository;
+    private final BranchGeoIndex branchGeoIndex;
+    private final BranchSearchIndex branchSearchIndex;
+    private final BranchCounters branchCounters;
+    private final ReplicaReads replicaReads;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CacheManager cacheManager;
+    private final TransactionTemplate transactionTemplate;
 
+    /**
+     * New branches go through the chunked JDBC insert; branches that already carry an id are merged through JPA.
+     * Both run in one transaction.
+     */
+    @Transactional
     public List<Branch> save(List<Branch> branches) {
-        return branchRepository.saveAll(branches);
+        Map<Boolean, List<Branch>> byHasId = branches.stream()
+                .collect(Collectors.partitioningBy(branch -> branch.getId() != null));
+        List<Branch> created = byHasId.get(false);
+        List<Branch> existing = byHasId.get(true);
+
+        if (!created.isEmpty()) {
+            branchRepository.insertAll(created);
+        }
+        Map<Long, Branch> previous = snapshotExisting(existing);
+        existing.stream()
+                .filter(branch -> previous.containsKey(branch.getId()))
+                .forEach(branch -> branch.setVersion(previous.get(branch.getId()).getVersion() + 1));
+        Iterator<Branch> merged = existing.isEmpty() ? Collections.emptyIterator() :
+                branchRepository.saveAll(existing).iterator();
+
+        // Callers rely on the input order, e.g. the Location header points at the first branch sent. Both halves
+        // keep it, and the inserted branches are the very instances sent.
+        List<Branch> saved = new ArrayList<>(branches.size());
+        int nextCreated = 0;
+        for (Branch branch : branches) {
+            if (nextCreated < created.size() && created.get(nextCreated) == branch) {
+                saved.add(branch);
+                nextCreated++;
+            } else {
+                saved.add(merged.next());
+            }
+        }
+        publish(saved.stream()
+                .map(branch -> previous.containsKey(branch.getId()) ?
+                        BranchChange.updated(previous.get(branch.getId()), branch) :
+                        BranchChange.created(branch))
+                .collect(Collectors.toList()));
+        return saved;
+    }
+
+    /**
+     * Inserts the branches, or updates the one of the same user with the same name, ignoring the ids sent; rows
+     * whose fields already hold the sent values are left alone. The existing rows are read and locked first, which
+     * is what tells the three counts apart.
+     * <p>
+     * With an {@code idempotencyKey}, a retry of a committed request returns the first result without writing
+     * again, and reusing the key for a different request is rejected. The key is claimed in its own short transaction
+     * first, so a retry arriving while the request still runs is told so at once instead of waiting on the row lock;
+     * the claim is dropped again if the request fails.
+     * <p>
+     * The locking read also takes gap locks on the natural keys not inserted yet, so two upserts of new branches can
+     * deadlock on their inserts. The transaction MySQL rolls back is run again, up to {@code MAX_UPSERT_ATTEMPTS}
+     * times in all.
+     */
+    public UpsertResult upsert(List<Branch> branches, String idempotencyKey) {
+        checkUpsertArguments(branches, idempotencyKey);
+        if (idempotencyKey == null) {
+            return upsertWithRetries(branches, null);
+        }
+        String requestHash = requestHash(branches);
+        TransactionTemplate claimTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        claimTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (!Boolean.TRUE.equals(claimTransaction.execute(status ->
+                branchRepository.claimIdempotencyKey(idempotencyKey, requestHash)))) {
+            return replay(idempotencyKey, requestHash);
+        }
+        try {
+            return upsertWithRetries(branches, idempotencyKey);
+        } catch (RuntimeException e) {
+            try {
+                claimTransaction.executeWithoutResult(status -> branchRepository.releaseIdempotencyKey(idempotencyKey));
+            } catch (RuntimeException releaseFailure) {
+                e.addSuppressed(releaseFailure);
+            }
+            throw e;
+        }
+    }
+
+    private UpsertResult upsertWithRetries(List<Branch> branches, String idempotencyKey) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> upsertInTransaction(branches, idempotencyKey));
+            } catch (DeadlockLoserDataAccessException e) {
+                if (attempt == MAX_UPSERT_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private UpsertResult upsertInTransaction(List<Branch> branches, String idempotencyKey) {
+        // Rows are matched by the database's own comparison of names: a branch sent with exactly the stored name and
+        // fields is left alone, and every other one is written and told apart by the id of the row it landed on.
+        List<Branch> locked = branchRepository.lockAllByNaturalKey(branches);
+        Map<String, Branch> lockedByName = locked.stream()
+                .collect(Collectors.toMap(BranchService::naturalKey, Function.identity()));
+        Map<Long, Branch> previous = locked.stream().collect(Collectors.toMap(Branch::getId, Function.identity()));
+        Set<Long> unchangedIds = new HashSet<>();
+        List<Branch> written = new ArrayList<>();
+        for (Branch branch : branches) {
+            Branch existing = lockedByName.get(naturalKey(branch));
+            if (sameFields(existing, branch)) {
+                unchangedIds.add(existing.getId());
+            } else {
+                written.add(branch);
+            }
+        }
+        UpsertResult result = new UpsertResult(0, 0, branches.size() - written.size());
+        if (!written.isEmpty()) {
+            branchRepository.upsertAll(written);
+            List<Branch> afters = branchRepository.findAllByNaturalKey(written);
+            if (afters.size() < written.size() || afters.stream().map(Branch::getId).anyMatch(unchangedIds::contains)) {
+                throw new IllegalArgumentException("Some branches are sent more than once, with names that only " +
+                        "differ in case or accents.");
+            }
+            List<BranchChange> changes = new ArrayList<>(written.size());
+            for (Branch after : afters) {
+                Branch before = previous.get(after.getId());
+                changes.add(before == null ? BranchChange.created(after) : BranchChange.updated(before, after));
+            }
+            result.setInserted((int) changes.stream().filter(BranchChange::isCreate).count());
+            result.setUpdated(changes.size() - result.getInserted());
+            publish(changes);
+        }
+
+        if (idempotencyKey != null) {
+            branchRepository.completeIdempotencyKey(idempotencyKey, result);
+        }
+        return result;
     }
 
+    @Transactional
     public void deleteById(Long id) {
+        // Loads the row into the persistence context, so the delete below does not select it again.
+        Optional<Branch> branch = branchRepository.findById(id);
         branchRepository.deleteById(id);
+        branch.ifPresent(deleted -> publish(List.of(BranchChange.deleted(deleted))));
+    }
+
+    /**
+     * Deletes the given ids with one set-based DELETE. The rows are first read with SELECT ... FOR UPDATE in the
+     * same transaction: MySQL has no DELETE ... RETURNING, and the deleted rows are needed to purge the caches and
+     * in-memory indexes.
+     */
+    @Transactional
+    public int deleteByIds(List<Long> ids) {
+        checkLookupSize(ids);
+        List<Branch> deleted = branchRepository.lockAllById(ids);
+        if (deleted.isEmpty()) {
+            return 0;
+        }
+        int count = branchRepository.deleteAllByIdIn(ids);
+        publish(deleted.stream().map(BranchChange::deleted).collect(Collectors.toList()));
+        return count;
     }
 
+    /**
+     * Deletes every branch of the user with one set-based DELETE; see {@link #deleteByIds(List)}.
+     */
+    @Transactional
+    public int deleteByUserId(Long userId) {
+        List<Branch> deleted = branchRepository.lockAllByUserId(userId);
+        if (deleted.isEmpty()) {
+            return 0;
+        }
+        int count = branchRepository.deleteAllByUserId(userId);
+        publish(deleted.stream().map(BranchChange::deleted).collect(Collectors.toList()));
+        return count;
+    }
+
+    /**
+     * Read from a replica when there are any, unless the branch was written within the sticky window.
+     */
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfiguration.BRANCHES_CACHE, key = "#id")
     public Branch getById(Long id) {
-        return branchRepository.findById(id).orElseThrow(() ->
-                new NotFoundException("Branch with id " + id + " not found."));
+        replicaReads.routeToReplica(null, id);
+        return branchRepository.findById(id).orElseThrow(() -> new BranchNotFoundException(id));
+    }
+
+    /**
+     * Version of the branch, from the id cache or a single-column read, so a conditional GET can be answered
+     * without loading the entity.
+     */
+    public long getVersion(Long id) {
+        Branch cached = cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE).get(id, Branch.class);
+        if (cached != null) {
+            return cached.getVersion();
+        }
+        return branchRepository.findVersionById(id).orElseThrow(() -> new BranchNotFoundException(id));
+    }
+
+    /**
+     * The version is read before the branches: a write committing in between can only make the list newer than
+     * its version, which costs the client one extra full response but never hides a change behind a 304. Both reads
+     * share one transaction, so they come from the same replica.
+     */
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfiguration.USER_BRANCHES_CACHE, key = "#userId")
+    public UserBranches getByUserId(Long userId) {
+        replicaReads.routeToReplica(userId, null);
+        long version = branchRepository.findUserVersion(userId);
+        return new UserBranches(version, branchRepository.getByUserId(userId));
+    }
+
+    /**
+     * Version of the user's branch list, from the list cache or the per-user version table, without loading
+     * the branches.
+     */
+    public long getUserVersion(Long userId) {
+        UserBranches cached = cacheManager.getCache(CacheConfiguration.USER_BRANCHES_CACHE)
+                .get(userId, UserBranches.class);
+        return cached != null ? cached.getVersion() : branchRepository.findUserVersion(userId);
+    }
+
+    /**
+     * Resolves many ids at once: hits come from the id cache, and all misses are read with a single IN query and
+     * put back into the cache. Unknown ids are reported in {@code missing} instead of failing the call.
+     */
+    public BranchLookup getByIds(List<Long> ids) {
+        checkLookupSize(ids);
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        Cache cache = cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE);
+        Map<Long, Branch> found = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : distinctIds) {
+            Branch cached = cache.get(id, Branch.class);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (Branch branch : branchRepository.findAllById(misses)) {
+                found.put(branch.getId(), branch);
+                cache.put(branch.getId(), branch);
+            }
+        }
+
+        List<Branch> branches = new ArrayList<>(found.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : distinctIds) {
+            if (found.containsKey(id)) {
+                branches.add(found.get(id));
+            } else {
+                missing.add(id);
+            }
+        }
+        return new BranchLookup(branches, missing);
+    }
+
+    /**
+     * Keyset page over the user's branches in id order; fetches one extra row to know whether a next page exists.
+     */
+    public BranchPage getPageByUserId(Long userId, String after, Integer limit) {
+        checkPageLimit(limit);
+        long afterId = after == null ? 0 : PageCursor.decode(after, userId);
+        List<Branch> rows = branchRepository.findPage(userId, afterId, limit + 1);
+        if (rows.size() <= limit) {
+            return new BranchPage(rows, null);
+        }
+
+        List<Branch> items = rows.subList(0, limit);
+        return new BranchPage(items, PageCursor.encode(userId, items.get(limit - 1).getId()));
+    }
+
+    public List<NearbyBranch> getNearby(Double latitude, Double longitude, Double radiusKm, Integer limit) {
+        checkNearbyArguments(latitude, longitude, radiusKm, limit);
+        List<BranchGeoIndex.Hit> hits = branchGeoIndex.nearest(latitude, longitude, radiusKm, limit);
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Branch> branchesById = branchRepository
+                .findAllById(hits.stream().map(BranchGeoIndex.Hit::getBranchId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Branch::getId, Function.identity()));
+        return hits.stream()
+                .filter(hit -> branchesById.containsKey(hit.getBranchId()))
+                .map(hit -> new NearbyBranch(branchesById.get(hit.getBranchId()), hit.getDistanceKm()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Above the deepest cluster zoom the viewport lists its branches, unless there are more than
+     * {@link #MAX_VIEWPORT_BRANCHES}; otherwise it is answered from the precomputed clusters of the geo index.
+     */
+    public BranchViewport getViewport(Double minLat, Double minLon, Double maxLat, Double maxLon, Integer zoom) {
+        checkViewportArguments(minLat, minLon, maxLat, maxLon, zoom);
+        int clusterMaxZoom = branchGeoIndex.getClusterMaxZoom();
+        if (zoom > clusterMaxZoom) {
+            List<Long> ids = branchGeoIndex.within(minLat, minLon, maxLat, maxLon, MAX_VIEWPORT_BRANCHES + 1);
+            if (ids.size() <= MAX_VIEWPORT_BRANCHES) {
+                return new BranchViewport(ids.isEmpty() ? List.of() : branchRepository.findAllById(ids), List.of());
+            }
+        }
+        return new BranchViewport(List.of(),
+                branchGeoIndex.clusters(Math.min(zoom, clusterMaxZoom), minLat, minLon, maxLat, maxLon));
+    }
+
+    /**
+     * Type-ahead search over name, city and address, answered by the search index; the hits are resolved like
+     * {@link #getByIds(List)}, mostly from the id cache.
+     */
+    public List<Branch> search(String query, Long userId, Integer limit) {
+        checkSearchArguments(query, limit);
+        List<Long> ids = branchSearchIndex.search(query, userId, limit);
+        return ids.isEmpty() ? List.of() : getByIds(ids).getFound();
+    }
+
+    /**
+     * Dashboard counts, kept by {@link BranchCounters} as the writes happen instead of grouping the table.
+     */
+    public Map<String, Long> countByCity() {
+        return branchCounters.countByCity();
+    }
+
+    public Map<Long, Long> countByUser() {
+        return branchCounters.countByUser();
+    }
+
+    public long countOfUser(Long userId) {
+        return branchCounters.countOfUser(userId);
+    }
+
+    static void checkLookupSize(List<Long> ids) {
+        if (ids.size() > MAX_LOOKUP_IDS) {
+            throw new IllegalArgumentException("At most " + MAX_LOOKUP_IDS + " ids can be looked up at once.");
+        }
+        if (ids.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Ids cannot be null.");
+        }
+    }
+
+    static void checkUpsertArguments(List<Branch> branches, String idempotencyKey) {
+        if (branches.size() > MAX_UPSERT_BRANCHES) {
+            throw new IllegalArgumentException("At most " + MAX_UPSERT_BRANCHES + " branches can be upserted at once.");
+        }
+        if (idempotencyKey != null &&
+                (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new IllegalArgumentException("Idempotency-Key must have between 1 and " + MAX_IDEMPOTENCY_KEY_LENGTH +
+                    " characters.");
+        }
+        Set<String> naturalKeys = new HashSet<>();
+        for (Branch branch : branches) {
+            if (branch.getUserId() == null || branch.getName() == null) {
+                throw new IllegalArgumentException("Every branch needs a userId and a name to be upserted.");
+            }
+            if (!naturalKeys.add(naturalKey(branch))) {
+                throw new IllegalArgumentException("Branch " + branch.getName() + " of user " + branch.getUserId() +
+                        " is sent more than once.");
+            }
+        }
+    }
+
+    static void checkPageLimit(Integer limit) {
+        if (limit < 1 || limit > 500) {
+            throw new IllegalArgumentException("limit must be within [1, 500].");
+        }
+    }
+
+    static void checkNearbyArguments(Double latitude, Double longitude, Double radiusKm, Integer limit) {
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180 || radiusKm <= 0 || limit < 1 || limit > 100) {
+            throw new IllegalArgumentException("lat must be within [-90, 90], lon within [-180, 180], " +
+                    "radiusKm greater than 0 and limit within [1, 100].");
+        }
+    }
+
+    static void checkViewportArguments(Double minLat, Double minLon, Double maxLat, Double maxLon, Integer zoom) {
+        // minLon > maxLon is a box crossing the antimeridian.
+        if (minLat < -90 || maxLat > 90 || minLat > maxLat || minLon < -180 || maxLon > 180 || zoom < 0 || zoom > 22) {
+            throw new IllegalArgumentException("minLat <= maxLat must be within [-90, 90], minLon and maxLon within " +
+                    "[-180, 180] and zoom within [0, 22].");
+        }
+    }
+
+    static void checkSearchArguments(String query, Integer limit) {
+        if (query.isBlank() || query.length() > MAX_SEARCH_QUERY_LENGTH || limit < 1 || limit > 50) {
+            throw new IllegalArgumentException("q must have between 1 and " + MAX_SEARCH_QUERY_LENGTH +
+                    " characters and limit be within [1, 50].");
+        }
+    }
+
+    private UpsertResult replay(String idempotencyKey, String requestHash) {
+        IdempotencyRecord record = branchRepository.findIdempotencyKey(idempotencyKey).orElseThrow(() ->
+                new IllegalStateException("Idempotency-Key " + idempotencyKey + " was claimed but cannot be read."));
+        if (!record.getRequestHash().equals(requestHash)) {
+            throw new IllegalArgumentException("Idempotency-Key " + idempotencyKey +
+                    " was already used for a different request.");
+        }
+        if (record.getResult() == null) {
+            throw new IdempotencyKeyInProgressException(idempotencyKey);
+        }
+        return record.getResult();
+    }
+
+    /**
+     * user_id and name exactly as sent. Names the unique index also considers equal, e.g. differing only in case or
+     * accents, are left for the database to match.
+     */
+    private static String naturalKey(Branch branch) {
+        return branch.getUserId() + ":" + branch.getName();
+    }
+
+    private static boolean sameFields(Branch existing, Branch branch) {
+        return existing != null && existing.getName().equals(branch.getName()) &&
+                Objects.equals(existing.getAddress(), branch.getAddress()) &&
+                Objects.equals(existing.getCity(), branch.getCity()) &&
+                Objects.equals(existing.getLatitude(), branch.getLatitude()) &&
+                Objects.equals(existing.getLongitude(), branch.getLongitude());
+    }
+
+    static String requestHash(List<Branch> branches) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Branch branch : branches) {
+                String fields = String.join("\u0000", String.valueOf(branch.getUserId()), branch.getName(),
+                        String.valueOf(branch.getAddress()), String.valueOf(branch.getCity()),
+                        String.valueOf(branch.getLatitude()), String.valueOf(branch.getLongitude()));
+                digest.update(fields.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return String.format("%064x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<Long, Branch> snapshotExisting(List<Branch> branches) {
+        List<Long> ids = branches.stream().map(Branch::getId).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // Locked, so a concurrent save of the same branch waits and bumps the version this one wrote. Copies,
+        // because saveAll merges the incoming state into these same managed instances.
+        return branchRepository.lockAllById(ids).stream()
+                .map(branch -> branch.toBuilder().build())
+                .collect(Collectors.toMap(Branch::getId, Function.identity()));
     }
 
-    public List<Branch> getByUserId(Long userId) {
-        return branchRepository.getByUserId(userId);
+    /**
+     * Every write ends here, inside its transaction, so the per-user list versions and the change feed outbox move
+     * together with the rows.
+     */
+    private void publish(List<BranchChange> changes) {
+        if (!changes.isEmpty()) {
+            branchRepository.incrementUserVersions(BranchChange.userIds(changes));
+            branchRepository.appendChanges(changes);
+            eventPublisher.publishEvent(new BranchChangedEvent(changes));
+        }
     }
 }
@@ -0,0 +1,33 @@
+package mymarket.branch.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes the {@code (user_id, id)} keyset position of the last row of a page as an opaque URL-safe token.
+ */
+final class PageCursor {
+
+    private PageCursor() {
+    }
+
+    static String encode(Long userId, Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((userId + ":" + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the last id of the previous page, rejecting cursors that are malformed or belong to another user.
+     */
+    static long decode(String cursor, Long userId) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (position.length == 2 && Long.parseLong(position[0]) == userId) {
+                return Long.parseLong(position[1]);
+            }
+        } catch (IllegalArgumentException ex) {
+            // falls through to the error below; NumberFormatException is an IllegalArgumentException too
+        }
+        throw new IllegalArgumentException("Invalid cursor " + cursor + " for userId " + userId + ".");
+    }
+}
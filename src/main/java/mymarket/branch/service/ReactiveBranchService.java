@@ -0,0 +1,254 @@
+package mymarket.branch.service;
+
+import lombok.RequiredArgsConstructor;
+import mymarket.branch.config.CacheConfiguration;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.exception.BranchNotFoundException;
+import mymarket.branch.index.BranchCounters;
+import mymarket.branch.index.BranchGeoIndex;
+import mymarket.branch.index.BranchSearchIndex;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.BranchViewport;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.repository.ReactiveBranchRepository;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * {@link BranchService} for the {@code reactive} profile. Reads and writes go through {@link ReactiveBranchRepository};
+ * writes publish the same {@link BranchChangedEvent}s, so the caches and in-memory indexes shared with the servlet
+ * stack stay in sync.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveBranchService {
+
+    private final ReactiveBranchRepository branchRepository;
+    private final BranchGeoIndex branchGeoIndex;
+    private final BranchSearchIndex branchSearchIndex;
+    private final BranchCounters branchCounters;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CacheManager cacheManager;
+    private final TransactionalOperator transactionalOperator;
+
+    /**
+     * Saves the branches one statement at a time, in order, in one R2DBC transaction together with the user version
+     * bump and the outbox rows. As in {@link BranchService#save(List)}, the {@link BranchChangedEvent} is only
+     * published once that transaction has committed.
+     */
+    public Mono<List<Branch>> save(List<Branch> branches) {
+        return Flux.fromIterable(branches)
+                .concatMap(this::save)
+                .collectList()
+                .flatMap(changes -> record(changes).thenReturn(changes))
+                .as(transactionalOperator::transactional)
+                .doOnNext(this::publish)
+                .map(changes -> changes.stream().map(BranchChange::getAfter).collect(Collectors.toList()));
+    }
+
+    public Mono<Void> deleteById(Long id) {
+        return branchRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> notFound(id)))
+                .flatMap(branch -> {
+                    List<BranchChange> changes = List.of(BranchChange.deleted(branch));
+                    return branchRepository.deleteById(id).then(record(changes)).thenReturn(changes);
+                })
+                .as(transactionalOperator::transactional)
+                .doOnNext(this::publish)
+                .then();
+    }
+
+    public Mono<Branch> getById(Long id) {
+        Cache cache = cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE);
+        Branch cached = cache.get(id, Branch.class);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return branchRepository.findById(id)
+                .doOnNext(branch -> cache.put(id, branch))
+                .switchIfEmpty(Mono.error(() -> notFound(id)));
+    }
+
+    public Mono<Long> getVersion(Long id) {
+        Branch cached = cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE).get(id, Branch.class);
+        if (cached != null) {
+            return Mono.just(cached.getVersion());
+        }
+        return branchRepository.findVersionById(id)
+                .switchIfEmpty(Mono.error(() -> notFound(id)));
+    }
+
+    /**
+     * Read before streaming the branches, for the same reason as in {@link BranchService#getByUserId(Long)}.
+     */
+    public Mono<Long> getUserVersion(Long userId) {
+        return branchRepository.findUserVersion(userId);
+    }
+
+    public Mono<Boolean> hasBranches(Long userId) {
+        return branchRepository.existsByUserId(userId);
+    }
+
+    public Flux<Branch> getByUserId(Long userId) {
+        return branchRepository.findByUserId(userId);
+    }
+
+    /**
+     * Same as {@link BranchService#getByIds(List)}: hits come from the id cache and the misses from one IN query.
+     */
+    public Mono<BranchLookup> getByIds(List<Long> ids) {
+        BranchService.checkLookupSize(ids);
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        Cache cache = cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE);
+        List<Branch> hits = new ArrayList<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : distinctIds) {
+            Branch cached = cache.get(id, Branch.class);
+            if (cached != null) {
+                hits.add(cached);
+            } else {
+                misses.add(id);
+            }
+        }
+
+        Flux<Branch> loaded = misses.isEmpty() ? Flux.empty() :
+                branchRepository.findAllById(misses).doOnNext(branch -> cache.put(branch.getId(), branch));
+        return Flux.concat(Flux.fromIterable(hits), loaded)
+                .collectMap(Branch::getId)
+                .map(found -> {
+                    List<Branch> branches = new ArrayList<>(found.size());
+                    List<Long> missing = new ArrayList<>();
+                    for (Long id : distinctIds) {
+                        if (found.containsKey(id)) {
+                            branches.add(found.get(id));
+                        } else {
+                            missing.add(id);
+                        }
+                    }
+                    return new BranchLookup(branches, missing);
+                });
+    }
+
+    public Mono<BranchPage> getPageByUserId(Long userId, String after, Integer limit) {
+        BranchService.checkPageLimit(limit);
+        long afterId = after == null ? 0 : PageCursor.decode(after, userId);
+        return branchRepository.findPage(userId, afterId, limit + 1)
+                .collectList()
+                .map(rows -> {
+                    if (rows.size() <= limit) {
+                        return new BranchPage(rows, null);
+                    }
+                    List<Branch> items = rows.subList(0, limit);
+                    return new BranchPage(items, PageCursor.encode(userId, items.get(limit - 1).getId()));
+                });
+    }
+
+    public Mono<List<NearbyBranch>> getNearby(Double latitude, Double longitude, Double radiusKm, Integer limit) {
+        BranchService.checkNearbyArguments(latitude, longitude, radiusKm, limit);
+        List<BranchGeoIndex.Hit> hits = branchGeoIndex.nearest(latitude, longitude, radiusKm, limit);
+        if (hits.isEmpty()) {
+            return Mono.just(List.of());
+        }
+
+        return branchRepository
+                .findAllById(hits.stream().map(BranchGeoIndex.Hit::getBranchId).collect(Collectors.toList()))
+                .collectMap(Branch::getId)
+                .map(branchesById -> hits.stream()
+                        .filter(hit -> branchesById.containsKey(hit.getBranchId()))
+                        .map(hit -> new NearbyBranch(branchesById.get(hit.getBranchId()), hit.getDistanceKm()))
+                        .collect(Collectors.toList()));
+    }
+
+    public Mono<List<Branch>> search(String query, Long userId, Integer limit) {
+        BranchService.checkSearchArguments(query, limit);
+        List<Long> ids = branchSearchIndex.search(query, userId, limit);
+        return ids.isEmpty() ? Mono.just(List.of()) : getByIds(ids).map(BranchLookup::getFound);
+    }
+
+    public Mono<BranchViewport> getViewport(Double minLat, Double minLon, Double maxLat, Double maxLon, Integer zoom) {
+        BranchService.checkViewportArguments(minLat, minLon, maxLat, maxLon, zoom);
+        int clusterMaxZoom = branchGeoIndex.getClusterMaxZoom();
+        if (zoom > clusterMaxZoom) {
+            List<Long> ids = branchGeoIndex.within(minLat, minLon, maxLat, maxLon, BranchService.MAX_VIEWPORT_BRANCHES + 1);
+            if (ids.isEmpty()) {
+                return Mono.just(new BranchViewport(List.of(), List.of()));
+            }
+            if (ids.size() <= BranchService.MAX_VIEWPORT_BRANCHES) {
+                return branchRepository.findAllById(ids)
+                        .collectList()
+                        .map(branches -> new BranchViewport(branches, List.of()));
+            }
+        }
+        return Mono.just(new BranchViewport(List.of(),
+                branchGeoIndex.clusters(Math.min(zoom, clusterMaxZoom), minLat, minLon, maxLat, maxLon)));
+    }
+
+    public Mono<Map<String, Long>> countByCity() {
+        return Mono.fromSupplier(branchCounters::countByCity);
+    }
+
+    public Mono<Map<Long, Long>> countByUser() {
+        return Mono.fromSupplier(branchCounters::countByUser);
+    }
+
+    public Mono<Long> countOfUser(Long userId) {
+        return Mono.fromSupplier(() -> branchCounters.countOfUser(userId));
+    }
+
+    /**
+     * Branches with an id are updated when the row still exists, like a JPA merge; everything else is inserted. The
+     * row is locked first, so concurrent updates bump its version one after the other and each reports its own.
+     */
+    private Mono<BranchChange> save(Branch branch) {
+        Mono<BranchChange> insert = Mono.defer(() -> branchRepository.insert(branch).map(BranchChange::created));
+        if (branch.getId() == null) {
+            return insert;
+        }
+        return branchRepository.lockById(branch.getId())
+                .flatMap(previous -> branchRepository.update(branch)
+                        .thenReturn(BranchChange.updated(previous,
+                                branch.toBuilder().version(previous.getVersion() + 1).build())))
+                .switchIfEmpty(insert);
+    }
+
+    /**
+     * Bumps the user versions and appends the outbox rows, inside the transaction of the write.
+     */
+    private Mono<Void> record(List<BranchChange> changes) {
+        if (changes.isEmpty()) {
+            return Mono.empty();
+        }
+        return branchRepository.incrementUserVersions(BranchChange.userIds(changes))
+                .then(branchRepository.appendChanges(changes));
+    }
+
+    /**
+     * Runs once the transaction has committed: a transactional Mono only emits its value after the commit.
+     */
+    private void publish(List<BranchChange> changes) {
+        if (!changes.isEmpty()) {
+            eventPublisher.publishEvent(new BranchChangedEvent(changes));
+        }
+    }
+
+    private static BranchNotFoundException notFound(Long id) {
+        return new BranchNotFoundException(id);
+    }
+}
@@ -0,0 +1,86 @@
+package mymarket.branch.xray;
+
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Entity;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.Subsegment;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands finished segments to a single daemon thread, which serializes them and sends them through the wrapped
+ * emitter, so neither the JSON serialization nor the socket write runs on the request thread. When the queue is full
+ * the segment is dropped and counted, as the daemon itself does under load.
+ */
+@Slf4j
+public class AsyncSegmentEmitter extends Emitter implements AutoCloseable {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final Emitter delegate;
+    private final BlockingQueue<Entity> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public AsyncSegmentEmitter(Emitter delegate, int queueCapacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.worker = new Thread(this::drain, "xray-emitter");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public boolean sendSegment(Segment segment) {
+        return enqueue(segment);
+    }
+
+    @Override
+    public boolean sendSubsegment(Subsegment subsegment) {
+        return enqueue(subsegment);
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting work and waits briefly for the queued segments to be sent.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(1));
+    }
+
+    private boolean enqueue(Entity entity) {
+        if (running && queue.offer(entity)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Entity entity = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entity instanceof Segment) {
+                    delegate.sendSegment((Segment) entity);
+                } else if (entity instanceof Subsegment) {
+                    delegate.sendSubsegment((Subsegment) entity);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                log.warn("Could not emit X-Ray entity", ex);
+            }
+        }
+    }
+}
@@ -1,16 +1,74 @@
 package mymarket.branch.xray;
 
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.AWSXRayRecorder;
+import com.amazonaws.xray.AWSXRayRecorderBuilder;
+import com.amazonaws.xray.config.DaemonConfiguration;
+import com.amazonaws.xray.emitters.Emitter;
 import com.amazonaws.xray.javax.servlet.AWSXRayServletFilter;
+import com.amazonaws.xray.strategy.SegmentNamingStrategy;
+import com.amazonaws.xray.strategy.sampling.CentralizedSamplingStrategy;
+import com.amazonaws.xray.strategy.sampling.LocalizedSamplingStrategy;
+import com.amazonaws.xray.strategy.sampling.SamplingStrategy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.servlet.Filter;
+import java.io.IOException;
+import java.net.URL;
 
+/**
+ * Builds the global X-Ray recorder from {@code branch.xray.*}: the sampling rules, the daemon address and an optional
+ * off-thread emitter. With {@code branch.xray.enabled=false} nothing here, nor the {@link XRayInspector}, is created.
+ */
 @Configuration
+@ConditionalOnProperty(name = "branch.xray.enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(XRayProperties.class)
 public class AwsXrayConfig {
 
     @Bean
-    public Filter TracingFilter() {
-        return new AWSXRayServletFilter("branch");
+    public Filter TracingFilter(AWSXRayRecorder recorder) {
+        return new AWSXRayServletFilter(SegmentNamingStrategy.fixed("branch"), recorder);
     }
-}
\ No newline at end of file
+
+    @Bean
+    public AWSXRayRecorder awsXRayRecorder(SamplingStrategy samplingStrategy, Emitter xrayEmitter) {
+        AWSXRayRecorder recorder = AWSXRayRecorderBuilder.standard()
+                .withSamplingStrategy(samplingStrategy)
+                .withEmitter(xrayEmitter)
+                .build();
+        // XRayInspector and the SDK instrumentation read the global recorder.
+        AWSXRay.setGlobalRecorder(recorder);
+        return recorder;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public SamplingStrategy samplingStrategy(XRayProperties properties) throws IOException {
+        URL rules = properties.getSamplingRules().getURL();
+        return properties.isCentralizedSampling() ?
+                new CentralizedSamplingStrategy(rules) :
+                new LocalizedSamplingStrategy(rules);
+    }
+
+    @Bean
+    public Emitter xrayEmitter(XRayProperties properties, MeterRegistry meterRegistry) throws IOException {
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration();
+        if (properties.getDaemonAddress() != null) {
+            daemonConfiguration.setDaemonAddress(properties.getDaemonAddress());
+        }
+        Emitter udpEmitter = Emitter.create(daemonConfiguration);
+        if (!properties.getAsyncEmitter().isEnabled()) {
+            return udpEmitter;
+        }
+
+        AsyncSegmentEmitter emitter = new AsyncSegmentEmitter(udpEmitter, properties.getAsyncEmitter().getQueueCapacity());
+        FunctionCounter.builder("branch.xray.emitter.dropped", emitter, AsyncSegmentEmitter::getDropped)
+                .description("X-Ray segments dropped because the emitter queue was full")
+                .register(meterRegistry);
+        return emitter;
+    }
+}
@@ -1,24 +1,60 @@
 package mymarket.branch.xray;
 
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.entities.Segment;
 import com.amazonaws.xray.entities.Subsegment;
 import com.amazonaws.xray.spring.aop.BaseAbstractXRayInterceptor;
+import lombok.RequiredArgsConstructor;
+import mymarket.branch.repository.BranchRepository;
+import mymarket.branch.service.BranchService;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
 
+/**
+ * Opens a subsegment per call on {@code @XRayEnabled} beans, {@link BranchService} and {@link BranchRepository}.
+ * Calls on layers left out of {@code branch.xray.subsegments}, and all calls of requests that were not sampled, skip
+ * the subsegment bookkeeping entirely.
+ */
 @Aspect
 @Component
+@ConditionalOnProperty(name = "branch.xray.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
 public class XRayInspector extends BaseAbstractXRayInterceptor {
+
+    private final XRayProperties properties;
+
     @Override
     protected Map<String, Map<String, Object>> generateMetadata(ProceedingJoinPoint proceedingJoinPoint, Subsegment subsegment) {
         return super.generateMetadata(proceedingJoinPoint, subsegment);
     }
 
     @Override
-    @Pointcut("@within(com.amazonaws.xray.spring.aop.XRayEnabled) && bean(*)")
+    protected Object processXRayTrace(ProceedingJoinPoint proceedingJoinPoint) throws Throwable {
+        boolean sampled = AWSXRay.getCurrentSegmentOptional().map(Segment::isSampled).orElse(false);
+        if (!sampled || !properties.getSubsegments().contains(layerOf(proceedingJoinPoint))) {
+            return proceedingJoinPoint.proceed();
+        }
+        return super.processXRayTrace(proceedingJoinPoint);
+    }
+
+    @Override
+    @Pointcut("(@within(com.amazonaws.xray.spring.aop.XRayEnabled) && bean(*)) || " +
+            "within(mymarket.branch.service.BranchService) || this(mymarket.branch.repository.BranchRepository)")
     public void xrayEnabledClasses() {
     }
-}
\ No newline at end of file
+
+    private static XRayProperties.TracedLayer layerOf(ProceedingJoinPoint proceedingJoinPoint) {
+        if (proceedingJoinPoint.getThis() instanceof BranchRepository) {
+            return XRayProperties.TracedLayer.REPOSITORY;
+        }
+        if (proceedingJoinPoint.getTarget() instanceof BranchService) {
+            return XRayProperties.TracedLayer.SERVICE;
+        }
+        return XRayProperties.TracedLayer.CONTROLLER;
+    }
+}
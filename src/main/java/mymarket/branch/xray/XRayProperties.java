@@ -0,0 +1,51 @@
+package mymarket.branch.xray;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@Data
+@ConfigurationProperties("branch.xray")
+public class XRayProperties {
+
+    /**
+     * Turns off the servlet filter and the method subsegments altogether.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Local sampling rules: per-endpoint fixed targets (reservoir per second) plus a rate for the rest.
+     */
+    private Resource samplingRules = new ClassPathResource("xray-sampling-rules.json");
+
+    /**
+     * Pulls the rules from the X-Ray service through the daemon, falling back to {@link #samplingRules}.
+     */
+    private boolean centralizedSampling = false;
+
+    /**
+     * Daemon address such as {@code 127.0.0.1:2000}; when unset the SDK default or AWS_XRAY_DAEMON_ADDRESS is used.
+     */
+    private String daemonAddress;
+
+    /**
+     * Layers that get one subsegment per method call on sampled requests.
+     */
+    private Set<TracedLayer> subsegments = EnumSet.allOf(TracedLayer.class);
+
+    private final AsyncEmitter asyncEmitter = new AsyncEmitter();
+
+    public enum TracedLayer {
+        CONTROLLER, SERVICE, REPOSITORY
+    }
+
+    @Data
+    public static class AsyncEmitter {
+        private boolean enabled = false;
+        private int queueCapacity = 4096;
+    }
+}
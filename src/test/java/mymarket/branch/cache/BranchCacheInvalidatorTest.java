@@ -0,0 +1,80 @@
+package mymarket.branch.cache;
+
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.model.Branch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.List;
+
+import static mymarket.branch.config.CacheConfiguration.BRANCHES_CACHE;
+import static mymarket.branch.config.CacheConfiguration.BRANCH_OFFERS_CACHE;
+import static mymarket.branch.config.CacheConfiguration.USER_BRANCHES_CACHE;
+import static mymarket.branch.config.CacheConfiguration.USER_BRANCH_OFFERS_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BranchCacheInvalidatorTest {
+
+    private BranchCacheInvalidator branchCacheInvalidator;
+
+    private Cache branches, userBranches, branchOffers, userBranchOffers;
+    private Branch branch1, branch2;
+
+    @BeforeEach
+    void setUp() {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(BRANCHES_CACHE, USER_BRANCHES_CACHE,
+                BRANCH_OFFERS_CACHE, USER_BRANCH_OFFERS_CACHE);
+        branchCacheInvalidator = new BranchCacheInvalidator(cacheManager);
+        branches = cacheManager.getCache(BRANCHES_CACHE);
+        userBranches = cacheManager.getCache(USER_BRANCHES_CACHE);
+        branchOffers = cacheManager.getCache(BRANCH_OFFERS_CACHE);
+        userBranchOffers = cacheManager.getCache(USER_BRANCH_OFFERS_CACHE);
+
+        branch1 = Branch.builder().id(1L).name("Olavarria 560").userId(1L).build();
+        branch2 = Branch.builder().id(2L).name("Corrientes 1500").userId(2L).build();
+        branches.put(1L, branch1);
+        branches.put(2L, branch2);
+        userBranches.put(1L, List.of(branch1));
+        userBranches.put(2L, List.of(branch2));
+        userBranches.put(3L, List.of());
+        branchOffers.put(1L, List.of(branch1));
+        branchOffers.put(2L, List.of(branch2));
+        userBranchOffers.put(1L, List.of(branch1));
+        userBranchOffers.put(2L, List.of(branch2));
+    }
+
+    @Test
+    public void onChanged_UpdatedUser_EvictsBothUsers() {
+        //given
+        Branch moved = branch1.toBuilder().userId(3L).build();
+
+        //when
+        branchCacheInvalidator.onChanged(new BranchChangedEvent(List.of(BranchChange.updated(branch1, moved))));
+
+        //then
+        assertThat(branches.get(1L)).isNull();
+        assertThat(userBranches.get(1L)).isNull();
+        assertThat(userBranches.get(3L)).isNull();
+        assertThat(branches.get(2L)).isNotNull();
+        assertThat(userBranches.get(2L)).isNotNull();
+    }
+
+    @Test
+    public void onChanged_Deleted_EvictsIdAndUser() {
+        //when
+        branchCacheInvalidator.onChanged(new BranchChangedEvent(List.of(BranchChange.deleted(branch2))));
+
+        //then
+        assertThat(branches.get(2L)).isNull();
+        assertThat(userBranches.get(2L)).isNull();
+        assertThat(branchOffers.get(2L)).isNull();
+        assertThat(userBranchOffers.get(2L)).isNull();
+        assertThat(branches.get(1L)).isNotNull();
+        assertThat(userBranches.get(1L)).isNotNull();
+        assertThat(branchOffers.get(1L)).isNotNull();
+        assertThat(userBranchOffers.get(1L)).isNotNull();
+    }
+}
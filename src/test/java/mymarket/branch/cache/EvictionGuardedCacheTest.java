@@ -0,0 +1,169 @@
+package mymarket.branch.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy.VarExpiration;
+import mymarket.branch.config.BranchDataSourceProperties;
+import mymarket.branch.datasource.ReplicaReads;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EvictionGuardedCacheTest {
+
+    private final BranchDataSourceProperties dataSourceProperties = new BranchDataSourceProperties();
+
+    private final EvictionGuardedCache cache = new EvictionGuardedCache("branches", Caffeine.newBuilder().build(),
+            true);
+
+    @Test
+    public void put_AfterMiss_Cached() {
+        //given
+        assertThat(cache.get(1L)).isNull();
+
+        //when
+        cache.put(1L, "loaded");
+
+        //then
+        assertThat(cache.get(1L).get()).isEqualTo("loaded");
+    }
+
+    @Test
+    public void put_EvictedSinceMiss_NotCached() {
+        //given
+        assertThat(cache.get(1L)).isNull();
+        cache.evict(1L);
+
+        //when
+        cache.put(1L, "stale");
+
+        //then
+        assertThat(cache.get(1L)).isNull();
+    }
+
+    @Test
+    public void put_ClearedSinceMiss_NotCached() {
+        //given
+        assertThat(cache.get(1L)).isNull();
+        cache.clear();
+
+        //when
+        cache.put(1L, "stale");
+
+        //then
+        assertThat(cache.get(1L)).isNull();
+    }
+
+    @Test
+    public void put_OtherKeyEvictedSinceMiss_Cached() {
+        //given
+        assertThat(cache.get(1L)).isNull();
+        cache.evictIfPresent(2L);
+
+        //when
+        cache.put(1L, "loaded");
+
+        //then
+        assertThat(cache.get(1L).get()).isEqualTo("loaded");
+    }
+
+    @Test
+    public void put_ServedByReplica_ExpiresAfterReplicaReadTimeToLive() {
+        //given
+        Cache<Object, Object> nativeCache = Caffeine.newBuilder()
+                .expireAfter(new TimeToLiveExpiry(Duration.ofMinutes(10))).build();
+        EvictionGuardedCache replicaCache = new EvictionGuardedCache("branches", nativeCache, true,
+                Duration.ofSeconds(2));
+        assertThat(replicaCache.get(1L)).isNull();
+        assertThat(replicaCache.get(2L)).isNull();
+
+        //when
+        routeToReplica();
+        replicaCache.put(1L, "replica");
+        replicaCache.put(2L, "primary");
+
+        //then
+        VarExpiration<Object, Object> expiration = nativeCache.policy().expireVariably().orElseThrow();
+        assertThat(expiration.getExpiresAfter(1L, TimeUnit.SECONDS).getAsLong()).isLessThanOrEqualTo(2);
+        assertThat(expiration.getExpiresAfter(2L, TimeUnit.MINUTES).getAsLong()).isGreaterThan(5);
+    }
+
+    @Test
+    public void put_SameInstanceAfterReplicaRead_KeepsShorterExpiry() {
+        //given
+        Cache<Object, Object> nativeCache = Caffeine.newBuilder()
+                .expireAfter(new TimeToLiveExpiry(Duration.ofMinutes(10))).build();
+        EvictionGuardedCache replicaCache = new EvictionGuardedCache("branches", nativeCache, true,
+                Duration.ofSeconds(2));
+        String loaded = "replica";
+        replicaCache.get(1L);
+        routeToReplica();
+        replicaCache.put(1L, loaded);
+
+        //when
+        replicaCache.get(2L);
+        replicaCache.put(1L, loaded);
+
+        //then
+        assertThat(nativeCache.policy().expireVariably().orElseThrow().getExpiresAfter(1L, TimeUnit.SECONDS)
+                .getAsLong()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void constructor_ReplicaReadTimeToLiveWithoutVariableExpiry_Rejected() {
+        assertThatThrownBy(() -> new EvictionGuardedCache("branches", Caffeine.newBuilder().build(), true,
+                Duration.ofSeconds(2))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void put_WithoutMiss_Cached() {
+        //given
+        cache.evict(1L);
+
+        //when
+        cache.put(1L, "written");
+
+        //then
+        assertThat(cache.get(1L).get()).isEqualTo("written");
+    }
+
+    /**
+     * Lets a read-only transaction of this thread go to a replica, as BranchService#getById does.
+     */
+    private void routeToReplica() {
+        dataSourceProperties.getReplicas().add(new BranchDataSourceProperties.Replica());
+        ReplicaReads replicaReads = new ReplicaReads(dataSourceProperties);
+        TransactionTemplate transaction = new TransactionTemplate(new NoOpTransactionManager());
+        transaction.setReadOnly(true);
+        Boolean routed = transaction.execute(status -> replicaReads.routeToReplica(null, 1L));
+        assertThat(routed).isTrue();
+    }
+
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
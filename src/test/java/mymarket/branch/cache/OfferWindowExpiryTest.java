@@ -0,0 +1,44 @@
+package mymarket.branch.cache;
+
+import mymarket.branch.model.BranchOffersSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OfferWindowExpiryTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2021, 3, 10, 12, 0);
+
+    private final OfferWindowExpiry expiry = new OfferWindowExpiry(Duration.ofMinutes(1),
+            Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+    @Test
+    public void expireAfterCreate_NextChangeWithinTimeToLive_ExpiresThen() {
+        assertThat(expireAfterCreate(NOW.plusSeconds(20))).isEqualTo(Duration.ofSeconds(20).toNanos());
+        assertThat(expireAfterCreate(NOW.minusSeconds(1))).isZero();
+    }
+
+    @Test
+    public void expireAfterCreate_NoOrLaterChange_TimeToLive() {
+        assertThat(expireAfterCreate(null)).isEqualTo(Duration.ofMinutes(1).toNanos());
+        assertThat(expireAfterCreate(LocalDateTime.MAX)).isEqualTo(Duration.ofMinutes(1).toNanos());
+    }
+
+    @Test
+    public void expireAfterReadAndUpdate_ExpectedValues_ReadKeepsUpdateRecomputes() {
+        BranchOffersSnapshot snapshot = new BranchOffersSnapshot(List.of(), NOW.plusSeconds(5));
+
+        assertThat(expiry.expireAfterRead(1L, snapshot, 0, 42)).isEqualTo(42);
+        assertThat(expiry.expireAfterUpdate(1L, snapshot, 0, 42)).isEqualTo(Duration.ofSeconds(5).toNanos());
+    }
+
+    private long expireAfterCreate(LocalDateTime validUntil) {
+        return expiry.expireAfterCreate(1L, new BranchOffersSnapshot(List.of(), validUntil), 0);
+    }
+}
@@ -0,0 +1,166 @@
+package mymarket.branch.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.config.BranchDataSourceProperties;
+import mymarket.branch.datasource.ReplicaReads;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.UserBranches;
+import mymarket.branch.repository.BranchRepository;
+import mymarket.branch.service.BranchService;
+import mymarket.exception.commons.exception.NotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class SingleFlightAspectTest {
+
+    @Mock
+    private BranchRepository branchRepository;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private SingleFlightAspect singleFlightAspect;
+
+    private BranchService branchService;
+
+    @BeforeEach
+    void setUp() {
+        AspectJProxyFactory serviceProxy = new AspectJProxyFactory(
+                new BranchService(branchRepository, null, null, null,
+                        new ReplicaReads(new BranchDataSourceProperties()), null, null, null));
+        serviceProxy.setProxyTargetClass(true);
+        singleFlightAspect = new SingleFlightAspect(meterRegistry);
+        serviceProxy.addAspect(singleFlightAspect);
+        branchService = serviceProxy.getProxy();
+    }
+
+    @Test
+    public void getById_ConcurrentCalls_OneQueryForAll() throws Exception {
+        //given
+        Branch branch = Branch.builder().id(1L).name("Olavarria 560").userId(1L).build();
+        willAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(branch);
+        }).given(branchRepository).findById(1L);
+
+        //when
+        List<CompletableFuture<Branch>> calls = concurrently(3, () -> branchService.getById(1L), "getById");
+
+        //then
+        for (CompletableFuture<Branch> call : calls) {
+            assertThat(call.get(5, TimeUnit.SECONDS)).isSameAs(branch);
+        }
+        then(branchRepository).should().findById(1L);
+        assertThat(coalesced("getById")).isEqualTo(2);
+    }
+
+    @Test
+    public void getById_QueryFails_EveryCallerGetsTheException() throws Exception {
+        //given
+        willAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.empty();
+        }).given(branchRepository).findById(1L);
+
+        //when
+        List<CompletableFuture<Branch>> calls = concurrently(2, () -> branchService.getById(1L), "getById");
+
+        //then
+        for (CompletableFuture<Branch> call : calls) {
+            assertThatThrownBy(() -> call.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(NotFoundException.class);
+        }
+        then(branchRepository).should().findById(1L);
+    }
+
+    @Test
+    public void getById_BranchChangedWhileInFlight_LaterCallQueriesAgain() throws Exception {
+        //given
+        Branch before = Branch.builder().id(1L).name("Olavarria 560").userId(1L).build();
+        Branch after = Branch.builder().id(1L).name("Rivadavia 1200").userId(1L).build();
+        CountDownLatch queried = new CountDownLatch(1);
+        willAnswer(invocation -> {
+            queried.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(before);
+        }).willReturn(Optional.of(after)).given(branchRepository).findById(1L);
+        CompletableFuture<Branch> stale = CompletableFuture.supplyAsync(() -> branchService.getById(1L));
+        assertThat(queried.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //when
+        singleFlightAspect.onChanged(new BranchChangedEvent(List.of(BranchChange.updated(before, after))));
+        Branch fresh = branchService.getById(1L);
+
+        //then
+        release.countDown();
+        assertThat(fresh).isSameAs(after);
+        assertThat(stale.get(5, TimeUnit.SECONDS)).isSameAs(before);
+        then(branchRepository).should(times(2)).findById(1L);
+        assertThat(coalesced("getById")).isZero();
+    }
+
+    @Test
+    public void getByUserId_SequentialAndOtherKeys_NotCoalesced() {
+        //given
+        given(branchRepository.getByUserId(1L)).willReturn(List.of());
+        given(branchRepository.getByUserId(2L)).willReturn(List.of());
+
+        //when
+        UserBranches first = branchService.getByUserId(1L);
+        branchService.getByUserId(1L);
+        branchService.getByUserId(2L);
+
+        //then
+        assertThat(first.getBranches()).isEmpty();
+        then(branchRepository).should(times(2)).getByUserId(1L);
+        assertThat(meterRegistry.find(SingleFlightAspect.COALESCED_COUNTER).counter()).isNull();
+    }
+
+    /**
+     * Starts the first call, waits until the others joined it and only then lets the query return.
+     */
+    private <T> List<CompletableFuture<T>> concurrently(int calls, Supplier<T> call, String method)
+            throws InterruptedException {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        futures.add(CompletableFuture.supplyAsync(call));
+        then(branchRepository).should(timeout(5000)).findById(1L);
+        for (int i = 1; i < calls; i++) {
+            futures.add(CompletableFuture.supplyAsync(call));
+        }
+        while (coalesced(method) < calls - 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        return futures;
+    }
+
+    private double coalesced(String method) {
+        return meterRegistry.counter(SingleFlightAspect.COALESCED_COUNTER, "method", method).count();
+    }
+}
@@ -0,0 +1,78 @@
+package mymarket.branch.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeferredFlushFilterTest {
+
+    private static final String BODY = "[{\"id\":1}]";
+
+    private final DeferredFlushFilter filter = new DeferredFlushFilter();
+
+    @Test
+    public void doFilter_JsonBody_FlushesDeferred() throws Exception {
+        //when
+        MockHttpServletResponse response = writeAndFlush("/branches");
+
+        //then
+        assertThat(response.isCommitted()).isFalse();
+        assertThat(response.getContentAsString()).isEqualTo(BODY);
+    }
+
+    @Test
+    public void doFilter_Import_KeepsFlushing() throws Exception {
+        //when
+        MockHttpServletResponse response = writeAndFlush(DeferredFlushFilter.IMPORT_PATH);
+
+        //then
+        assertThat(response.isCommitted()).isTrue();
+        assertThat(response.getContentAsString()).isEqualTo(BODY);
+    }
+
+    @Test
+    public void doFilter_Changes_KeepsFlushing() throws Exception {
+        //when
+        MockHttpServletResponse response = writeAndFlush(DeferredFlushFilter.CHANGES_PATH);
+
+        //then
+        assertThat(response.isCommitted()).isTrue();
+    }
+
+    @Test
+    public void doFilter_FlushBuffer_Deferred() throws Exception {
+        //given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/branches/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        filter.doFilter(request, response, (req, res) -> res.flushBuffer());
+
+        //then
+        assertThat(response.isCommitted()).isFalse();
+    }
+
+    private MockHttpServletResponse writeAndFlush(String path) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                ServletOutputStream out = resp.getOutputStream();
+                out.write(BODY.getBytes());
+                out.flush();
+            }
+        }));
+        return response;
+    }
+}
@@ -1,53 +1,105 @@
 package mymarket.branch.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.exception.BranchNotFoundException;
+import mymarket.branch.exception.IdempotencyKeyInProgressException;
 import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchCluster;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchOffers;
+import mymarket.branch.model.BranchOffersSnapshot;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.BranchViewport;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.model.Offer;
+import mymarket.branch.model.UpsertResult;
+import mymarket.branch.model.ExportFormat;
+import mymarket.branch.model.UserBranches;
+import mymarket.branch.service.BranchChangeFeed;
+import mymarket.branch.service.BranchExportService;
+import mymarket.branch.service.BranchImportService;
+import mymarket.branch.service.BranchOfferService;
 import mymarket.branch.service.BranchService;
 import mymarket.exception.commons.exception.NotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 @ExtendWith(MockitoExtension.class)
 public class BranchControllerTest {
 
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+    private static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
     @Autowired
     MockMvc mockMvc;
 
     @Mock
     private BranchService branchService;
 
+    @Mock
+    private BranchImportService branchImportService;
+
+    @Mock
+    private BranchExportService branchExportService;
+
+    @Mock
+    private BranchChangeFeed branchChangeFeed;
+
+    @Mock
+    private BranchOfferService branchOfferService;
+
     @InjectMocks
     private BranchController branchController;
 
+    @Captor
+    private ArgumentCaptor<Predicate<List<BranchChangeEntry>>> subscriber;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private Branch branch1, branch2;
     private final List<Branch> branches = new ArrayList<>();
 
     @BeforeEach
     void setUp() {
         mockMvc = MockMvcBuilders.standaloneSetup(branchController)
-                .setControllerAdvice(new ExceptionController())
+                .setControllerAdvice(new ExceptionController(meterRegistry), new BranchFormatAdvice())
                 .build();
 
         branch1 = Branch.builder().name("Olavarria 560").userId(1L)
@@ -102,6 +154,53 @@ public class BranchControllerTest {
         assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
     }
 
+    @Test
+    public void importBranches_Ndjson_StreamsProgress() throws Exception {
+        String body = asJsonString(branch1) + "\n" + asJsonString(branch2) + "\n";
+
+        //given
+        willAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("{\"chunk\":1}\n".getBytes());
+            return null;
+        }).given(branchImportService).importBranches(any(), any());
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(post("/branches/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(body))
+                .andReturn().getResponse();
+
+        //then
+        then(branchImportService).should().importBranches(any(), any());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON_VALUE);
+        assertThat(response.getContentAsString()).isEqualTo("{\"chunk\":1}\n");
+    }
+
+    @Test
+    public void exportBranches_Csv_Attachment() throws Exception {
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/export?userId=1&format=csv"))
+                .andReturn().getResponse();
+
+        //then
+        then(branchExportService).should().export(eq(1L), eq(ExportFormat.CSV), any());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo("text/csv;charset=UTF-8");
+        assertThat(response.getHeader("Content-Disposition")).isEqualTo("attachment; filename=\"branches.csv\"");
+    }
+
+    @Test
+    public void exportBranches_UnknownFormat_BadRequest() throws Exception {
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/export?format=xml"))
+                .andReturn().getResponse();
+
+        //then
+        then(branchExportService).shouldHaveNoInteractions();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
     @Test
     public void deleteById_ExpectedValues_Ok() throws Exception {
         //given
@@ -140,6 +239,52 @@ public class BranchControllerTest {
         assertThat(response.getStatus()).isNotNull();
         assertThat(response.getContentType()).isNotNull();
         assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(meterRegistry.get("branch.errors").tag("outcome", "NOT_FOUND")
+                .tag("exception", "EmptyResultDataAccessException").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void deleteByIds_ExpectedValues_Ok() throws Exception {
+        //given
+        given(branchService.deleteByIds(List.of(1L, 2L))).willReturn(2);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(delete("/branches?ids=1,2")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should().deleteByIds(List.of(1L, 2L));
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo("{\"deleted\":2}");
+    }
+
+    @Test
+    public void deleteByUserId_ExpectedValues_Ok() throws Exception {
+        //given
+        given(branchService.deleteByUserId(1L)).willReturn(5);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(delete("/branches?userId=1")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should().deleteByUserId(1L);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo("{\"deleted\":5}");
+    }
+
+    @Test
+    public void delete_IdsAndUserId_BadRequest() throws Exception {
+        //when
+        MockHttpServletResponse response = mockMvc.perform(delete("/branches?ids=1&userId=2")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        then(branchService).shouldHaveNoInteractions();
     }
 
     @Test
@@ -167,7 +312,7 @@ public class BranchControllerTest {
         Long errorIdNumber = 150L;
 
         //given
-        willThrow(new NotFoundException("")).given(branchService).getById(errorIdNumber);
+        willThrow(new BranchNotFoundException(errorIdNumber)).given(branchService).getById(errorIdNumber);
 
         //when
         MockHttpServletResponse response = mockMvc.perform(get("/branches/" + errorIdNumber)
@@ -181,6 +326,8 @@ public class BranchControllerTest {
         assertThat(response.getStatus()).isNotNull();
         assertThat(response.getContentType()).isNotNull();
         assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(meterRegistry.get("branch.errors").tag("handler", "notFound").tag("outcome", "NOT_FOUND")
+                .tag("exception", "BranchNotFoundException").counter().count()).isEqualTo(1);
     }
 
     @Test
@@ -188,7 +335,7 @@ public class BranchControllerTest {
         Long userId = branches.get(0).getUserId();
 
         //given
-        given(branchService.getByUserId(userId)).willReturn(branches);
+        given(branchService.getByUserId(userId)).willReturn(new UserBranches(2L, branches));
 
         //when
         MockHttpServletResponse response = mockMvc.perform(get("/branches?userId=" + userId)
@@ -204,6 +351,408 @@ public class BranchControllerTest {
         assertThat(response.getContentAsString()).isNotNull();
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
         assertThat(response.getContentAsString()).isEqualTo(asJsonString(branches));
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"user-1-2\"");
+        assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT);
+    }
+
+    @Test
+    public void getByUserId_SmileAccepted_FormatETag() throws Exception {
+        Long userId = branches.get(0).getUserId();
+
+        //given
+        given(branchService.getByUserId(userId)).willReturn(new UserBranches(2L, branches));
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches?userId=" + userId)
+                .accept(SMILE))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo(SMILE.toString());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"user-1-2+x-jackson-smile\"");
+        assertThat(new ObjectMapper(new SmileFactory()).readValue(response.getContentAsByteArray(), Branch[].class))
+                .containsExactly(branch1, branch2);
+    }
+
+    @Test
+    public void getByUserId_CurrentCborETag_NotModified() throws Exception {
+        //given
+        given(branchService.getUserVersion(1L)).willReturn(2L);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches?userId=1")
+                .accept(CBOR)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"user-1-2+cbor\""))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should(never()).getByUserId(anyLong());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"user-1-2+cbor\"");
+        assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT);
+    }
+
+    @Test
+    public void save_CborBody_Created() throws Exception {
+        List<Branch> saved = List.of(branch1.toBuilder().id(1L).build());
+
+        //given
+        given(branchService.save(branches)).willReturn(saved);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(post("/branches")
+                .contentType(CBOR)
+                .content(new ObjectMapper(new CBORFactory()).writeValueAsBytes(branches)))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should().save(branches);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.CREATED.value());
+    }
+
+    @Test
+    public void getByUserId_CurrentETag_NotModified() throws Exception {
+        //given
+        given(branchService.getUserVersion(1L)).willReturn(2L);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches?userId=1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"user-1-2\""))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should(never()).getByUserId(anyLong());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"user-1-2\"");
+        assertThat(response.getContentAsString()).isEmpty();
+    }
+
+    @Test
+    public void getByUserId_StaleETag_Ok() throws Exception {
+        //given
+        given(branchService.getUserVersion(1L)).willReturn(3L);
+        given(branchService.getByUserId(1L)).willReturn(new UserBranches(3L, List.of()));
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches?userId=1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"user-1-2\""))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NO_CONTENT.value());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"user-1-3\"");
+    }
+
+    @Test
+    public void getById_CurrentETag_NotModified() throws Exception {
+        //given
+        given(branchService.getVersion(1L)).willReturn(4L);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1-3\", W/\"1-4\""))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should(never()).getById(anyLong());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+    }
+
+    @Test
+    public void getById_StaleETag_Ok() throws Exception {
+        Branch branch = branch1.toBuilder().id(1L).version(5L).build();
+
+        //given
+        given(branchService.getVersion(1L)).willReturn(5L);
+        given(branchService.getById(1L)).willReturn(branch);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1-4\""))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"1-5\"");
+        assertThat(response.getContentAsString()).isEqualTo(asJsonString(branch));
+    }
+
+    @Test
+    public void getByIds_ExpectedValues_Ok() throws Exception {
+        BranchLookup lookup = new BranchLookup(branches, List.of(150L));
+
+        //given
+        given(branchService.getByIds(List.of(1L, 2L, 150L))).willReturn(lookup);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches?ids=1,2,150")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should().getByIds(List.of(1L, 2L, 150L));
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(asJsonString(lookup));
+    }
+
+    @Test
+    public void lookup_ExpectedValues_Ok() throws Exception {
+        BranchLookup lookup = new BranchLookup(branches, List.of());
+
+        //given
+        given(branchService.getByIds(List.of(1L, 2L))).willReturn(lookup);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(post("/branches/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1,2]")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(asJsonString(lookup));
+    }
+
+    @Test
+    public void getPageByUserId_ExpectedValues_Ok() throws Exception {
+        BranchPage page = new BranchPage(branches, "MTo0Mg");
+
+        //given
+        given(branchService.getPageByUserId(1L, "MToxMA", 2)).willReturn(page);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches?userId=1&after=MToxMA&limit=2")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should().getPageByUserId(1L, "MToxMA", 2);
+        then(branchService).should(never()).getByUserId(anyLong());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(asJsonString(page));
+    }
+
+    @Test
+    public void getNearby_ExpectedValues_Ok() throws Exception {
+        List<NearbyBranch> nearbyBranches = List.of(new NearbyBranch(branch1, 0.4), new NearbyBranch(branch2, 2.1));
+
+        //given
+        given(branchService.getNearby(-38.0, -57.55, 5.0, 2)).willReturn(nearbyBranches);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/nearby?lat=-38.0&lon=-57.55&radiusKm=5&limit=2")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should().getNearby(-38.0, -57.55, 5.0, 2);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(asJsonString(nearbyBranches));
+    }
+
+    @Test
+    public void getNearby_MissingLatitude_BadRequest() throws Exception {
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/nearby?lon=-57.55")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).shouldHaveNoInteractions();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(meterRegistry.get("branch.errors").tag("handler", "badRequest").tag("outcome", "BAD_REQUEST")
+                .tag("exception", "MissingServletRequestParameterException").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void upsert_WithIdempotencyKey_Counts() throws Exception {
+        //given
+        given(branchService.upsert(anyList(), eq("retry-1"))).willReturn(new UpsertResult(1, 1, 0));
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(post("/branches?mode=upsert")
+                .header("Idempotency-Key", "retry-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(branches))
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should().upsert(branches, "retry-1");
+        then(branchService).should(never()).save(anyList());
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo("{\"inserted\":1,\"updated\":1,\"unchanged\":0}");
+    }
+
+    @Test
+    public void upsert_IdempotencyKeyInProgress_Conflict() throws Exception {
+        //given
+        given(branchService.upsert(anyList(), eq("retry-1")))
+                .willThrow(new IdempotencyKeyInProgressException("retry-1"));
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(post("/branches?mode=upsert")
+                .header("Idempotency-Key", "retry-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(branches))
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.CONFLICT.value());
+        assertThat(response.getContentAsString()).contains("is still in progress.");
+        assertThat(meterRegistry.get("branch.errors").tag("handler", "conflict").tag("outcome", "CONFLICT")
+                .tag("exception", "IdempotencyKeyInProgressException").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void getOffersById_ExpectedValues_Ok() throws Exception {
+        BranchOffers branchOffers = new BranchOffers(branch1, List.of(Offer.builder().id(4L).productId(9L)
+                .price(80f).oldPrice(100f).offerType("discount").description("20% off").build()));
+
+        //given
+        given(branchOfferService.getById(1L)).willReturn(new BranchOffersSnapshot(List.of(branchOffers), null));
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/1/offers")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchOfferService).should().getById(1L);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(asJsonString(branchOffers))
+                .contains("\"name\":\"Olavarria 560\"", "\"offers\":[{\"id\":4,");
+    }
+
+    @Test
+    public void getOffersById_NonexistentId_NotFound() throws Exception {
+        //given
+        given(branchOfferService.getById(1L)).willThrow(new NotFoundException("Branch with id 1 not found."));
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/1/offers")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void getOffersByUserId_NoBranches_NoContent() throws Exception {
+        //given
+        given(branchOfferService.getByUserId(1L)).willReturn(new BranchOffersSnapshot(List.of(), null));
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/offers?userId=1")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchOfferService).should().getByUserId(1L);
+        then(branchService).shouldHaveNoInteractions();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NO_CONTENT.value());
+    }
+
+    @Test
+    public void search_ExpectedValues_Ok() throws Exception {
+        //given
+        given(branchService.search("mar del", 1L, 10)).willReturn(branches);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/search?q=mar del&userId=1")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(asJsonString(branches));
+    }
+
+    @Test
+    public void countByCity_ExpectedValues_Ok() throws Exception {
+        //given
+        given(branchService.countByCity()).willReturn(Map.of("Mar del Plata", 2L));
+        given(branchService.countOfUser(1L)).willReturn(2L);
+
+        //when
+        MockHttpServletResponse byCity = mockMvc.perform(get("/branches/counts/cities")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+        MockHttpServletResponse ofUser = mockMvc.perform(get("/branches/counts/users/1")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(byCity.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(byCity.getContentAsString()).isEqualTo("{\"Mar del Plata\":2}");
+        assertThat(ofUser.getContentAsString()).isEqualTo("2");
+    }
+
+    @Test
+    public void changes_LastEventIdAndEntries_StreamedAsEvents() throws Exception {
+        BranchChangeEntry entry = new BranchChangeEntry(6L, BranchChangeEntry.Type.CREATED, branch1, Instant.EPOCH);
+
+        //given
+        given(branchChangeFeed.getStreamTimeout()).willReturn(Duration.ofMinutes(1));
+        given(branchChangeFeed.subscribe(eq(5L), subscriber.capture()))
+                .willReturn(mock(BranchChangeFeed.Subscription.class));
+
+        //when
+        MvcResult result = mockMvc.perform(get("/branches/changes?since=1")
+                .header("Last-Event-ID", "5")
+                .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        boolean heartbeatSent = subscriber.getValue().test(List.of());
+        boolean entrySent = subscriber.getValue().test(List.of(entry));
+
+        //then
+        assertThat(heartbeatSent).isTrue();
+        assertThat(entrySent).isTrue();
+        assertThat(result.getResponse().getContentAsString())
+                .startsWith(":heartbeat\n\n")
+                .contains("id:6\nevent:created\ndata:{\"id\":6,\"type\":\"CREATED\"");
+    }
+
+    @Test
+    public void search_NoHits_NoContent() throws Exception {
+        //given
+        given(branchService.search("zz", null, 5)).willReturn(List.of());
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/branches/search?q=zz&limit=5"))
+                .andReturn().getResponse();
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.NO_CONTENT.value());
+    }
+
+    @Test
+    public void getViewport_ZoomedOut_Clusters() throws Exception {
+        BranchViewport viewport = new BranchViewport(List.of(), List.of(new BranchCluster(-38.0, -57.5, 42)));
+
+        //given
+        given(branchService.getViewport(-40.0, -60.0, -36.0, -55.0, 6)).willReturn(viewport);
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(
+                get("/branches/viewport?minLat=-40&minLon=-60&maxLat=-36&maxLon=-55&zoom=6")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse();
+
+        //then
+        then(branchService).should().getViewport(-40.0, -60.0, -36.0, -55.0, 6);
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(asJsonString(viewport));
     }
 
     private static String asJsonString(final Object obj) {
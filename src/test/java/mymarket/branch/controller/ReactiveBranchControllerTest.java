@@ -0,0 +1,448 @@
+package mymarket.branch.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchCluster;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.BranchViewport;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.service.BranchChangeFeed;
+import mymarket.branch.service.ReactiveBranchService;
+import mymarket.exception.commons.exception.NotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.FluxExchangeResult;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveBranchControllerTest {
+
+    private WebTestClient webTestClient;
+
+    @Mock
+    private ReactiveBranchService branchService;
+
+    @Mock
+    private BranchChangeFeed branchChangeFeed;
+
+    @InjectMocks
+    private ReactiveBranchController branchController;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private Branch branch1, branch2;
+
+    @BeforeEach
+    void setUp() {
+        webTestClient = WebTestClient.bindToController(branchController)
+                .controllerAdvice(new ReactiveExceptionController(meterRegistry))
+                .webFilter(new ReactiveBranchFormatFilter())
+                .build();
+
+        branch1 = Branch.builder().id(1L).name("Olavarria 560").userId(1L)
+                .address("3460, Avenida Vertiz").city("Mar del Plata").build();
+        branch2 = Branch.builder().id(2L).name("Corrientes 1500")
+                .userId(1L).address("4776, Lavalle").city("Mar del Plata").build();
+    }
+
+    @Test
+    public void save_ExpectedValues_Created() {
+        List<Branch> branches = List.of(branch1.toBuilder().id(null).build());
+
+        //given
+        given(branchService.save(branches)).willReturn(Mono.just(List.of(branch1)));
+
+        //when
+        webTestClient.post().uri("/branches")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(branches)
+                .exchange()
+                //then
+                .expectStatus().isCreated()
+                .expectHeader().valueMatches("Location", ".*/branches/1");
+    }
+
+    @Test
+    public void save_EmptyList_NoContent() {
+        //given
+        given(branchService.save(List.of())).willReturn(Mono.just(List.of()));
+
+        //when
+        webTestClient.post().uri("/branches")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of())
+                .exchange()
+                //then
+                .expectStatus().isNoContent();
+    }
+
+    @Test
+    public void save_UpsertMode_BadRequest() {
+        //when
+        webTestClient.post().uri("/branches?mode=upsert")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(branch1))
+                .exchange()
+                //then
+                .expectStatus().isBadRequest();
+
+        then(branchService).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void deleteById_ExpectedValues_Ok() {
+        //given
+        given(branchService.deleteById(1L)).willReturn(Mono.empty());
+
+        //when
+        webTestClient.delete().uri("/branches/1")
+                .exchange()
+                //then
+                .expectStatus().isOk();
+    }
+
+    @Test
+    public void getById_ExpectedValues_Ok() {
+        //given
+        given(branchService.getById(1L)).willReturn(Mono.just(branch1));
+
+        //when
+        webTestClient.get().uri("/branches/1")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectBody(Branch.class).isEqualTo(branch1);
+    }
+
+    @Test
+    public void getById_NonexistentId_NotFound() {
+        //given
+        given(branchService.getById(99L)).willReturn(Mono.error(new NotFoundException("Branch with id 99 not found.")));
+
+        //when
+        webTestClient.get().uri("/branches/99")
+                .exchange()
+                //then
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.message").isEqualTo("Branch with id 99 not found.");
+
+        assertThat(meterRegistry.get(ExceptionController.ERRORS_COUNTER).tag("handler", "notFound")
+                .tag("outcome", "NOT_FOUND").tag("exception", "NotFoundException").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void getByUserId_ExpectedValues_Ok() {
+        //given
+        given(branchService.getUserVersion(1L)).willReturn(Mono.just(2L));
+        given(branchService.hasBranches(1L)).willReturn(Mono.just(true));
+        given(branchService.getByUserId(1L)).willReturn(Flux.just(branch1, branch2));
+
+        //when
+        webTestClient.get().uri("/branches?userId=1")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"user-1-2\"")
+                .expectBodyList(Branch.class).isEqualTo(List.of(branch1, branch2));
+    }
+
+    @Test
+    public void getByUserId_SmileAccepted_FormatETag() {
+        //given
+        given(branchService.getUserVersion(1L)).willReturn(Mono.just(2L));
+        given(branchService.hasBranches(1L)).willReturn(Mono.just(true));
+        given(branchService.getByUserId(1L)).willReturn(Flux.just(branch1, branch2));
+
+        //when
+        webTestClient.get().uri("/branches?userId=1")
+                .accept(MediaType.valueOf("application/x-jackson-smile"))
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"user-1-2+x-jackson-smile\"")
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+
+    @Test
+    public void getByUserId_CurrentETag_NotModified() {
+        //given
+        given(branchService.getUserVersion(1L)).willReturn(Mono.just(2L));
+
+        //when
+        webTestClient.get().uri("/branches?userId=1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"user-1-2\"")
+                .exchange()
+                //then
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+
+        then(branchService).should(never()).hasBranches(1L);
+        then(branchService).should(never()).getByUserId(1L);
+    }
+
+    @Test
+    public void getById_CurrentETag_NotModified() {
+        //given
+        given(branchService.getVersion(1L)).willReturn(Mono.just(3L));
+
+        //when
+        webTestClient.get().uri("/branches/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"1-3+x-jackson-smile\"")
+                .exchange()
+                //then
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1-3+x-jackson-smile\"");
+
+        then(branchService).should(never()).getById(1L);
+    }
+
+    @Test
+    public void getById_StaleETag_Ok() {
+        Branch branch = branch1.toBuilder().version(4L).build();
+
+        //given
+        given(branchService.getVersion(1L)).willReturn(Mono.just(4L));
+        given(branchService.getById(1L)).willReturn(Mono.just(branch));
+
+        //when
+        webTestClient.get().uri("/branches/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1-3\"")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1-4\"")
+                .expectBody().jsonPath("$.version").isEqualTo(4);
+    }
+
+    @Test
+    public void getByUserId_NoBranches_NoContent() {
+        //given
+        given(branchService.getUserVersion(1L)).willReturn(Mono.just(0L));
+        given(branchService.hasBranches(1L)).willReturn(Mono.just(false));
+
+        //when
+        webTestClient.get().uri("/branches?userId=1")
+                .exchange()
+                //then
+                .expectStatus().isNoContent();
+
+        then(branchService).should(never()).getByUserId(1L);
+    }
+
+    @Test
+    public void getByUserId_MissingUserId_BadRequest() {
+        //when
+        webTestClient.get().uri("/branches")
+                .exchange()
+                //then
+                .expectStatus().isBadRequest();
+
+        assertThat(meterRegistry.get(ExceptionController.ERRORS_COUNTER).tag("handler", "badRequest")
+                .tag("outcome", "BAD_REQUEST").tag("exception", "ServerWebInputException").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void getByIds_ExpectedValues_Ok() {
+        BranchLookup lookup = new BranchLookup(List.of(branch1), List.of(3L));
+
+        //given
+        given(branchService.getByIds(List.of(1L, 3L))).willReturn(Mono.just(lookup));
+
+        //when
+        webTestClient.get().uri("/branches?ids=1,3")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectBody(BranchLookup.class).isEqualTo(lookup);
+    }
+
+    @Test
+    public void lookup_ExpectedValues_Ok() {
+        BranchLookup lookup = new BranchLookup(List.of(branch1, branch2), List.of());
+
+        //given
+        given(branchService.getByIds(List.of(1L, 2L))).willReturn(Mono.just(lookup));
+
+        //when
+        webTestClient.post().uri("/branches/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(1L, 2L))
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectBody(BranchLookup.class).isEqualTo(lookup);
+    }
+
+    @Test
+    public void getPageByUserId_ExpectedValues_Ok() {
+        BranchPage page = new BranchPage(List.of(branch1), "next");
+
+        //given
+        given(branchService.getPageByUserId(1L, null, 1)).willReturn(Mono.just(page));
+
+        //when
+        webTestClient.get().uri("/branches?userId=1&limit=1")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectBody(BranchPage.class).isEqualTo(page);
+    }
+
+    @Test
+    public void getPageByUserId_EmptyPage_NoContent() {
+        //given
+        given(branchService.getPageByUserId(1L, "cursor", 1)).willReturn(Mono.just(new BranchPage(List.of(), null)));
+
+        //when
+        webTestClient.get().uri("/branches?userId=1&after=cursor&limit=1")
+                .exchange()
+                //then
+                .expectStatus().isNoContent();
+    }
+
+    @Test
+    public void getPageByUserId_InvalidLimit_BadRequest() {
+        //given
+        given(branchService.getPageByUserId(1L, null, 0)).willThrow(new IllegalArgumentException("limit must be within [1, 500]."));
+
+        //when
+        webTestClient.get().uri("/branches?userId=1&limit=0")
+                .exchange()
+                //then
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("limit must be within [1, 500].");
+    }
+
+    @Test
+    public void getNearby_ExpectedValues_Ok() {
+        //given
+        given(branchService.getNearby(-38.0, -57.5, 10.0, 20))
+                .willReturn(Mono.just(List.of(new NearbyBranch(branch1, 0.5))));
+
+        //when
+        webTestClient.get().uri("/branches/nearby?lat=-38.0&lon=-57.5")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$[0].id").isEqualTo(1);
+    }
+
+    @Test
+    public void getNearby_NoHits_NoContent() {
+        //given
+        given(branchService.getNearby(-38.0, -57.5, 5.0, 3)).willReturn(Mono.just(List.of()));
+
+        //when
+        webTestClient.get().uri("/branches/nearby?lat=-38.0&lon=-57.5&radiusKm=5&limit=3")
+                .exchange()
+                //then
+                .expectStatus().isNoContent();
+    }
+
+    @Test
+    public void search_ExpectedValues_Ok() {
+        //given
+        given(branchService.search("pla", null, 10)).willReturn(Mono.just(List.of(branch1, branch2)));
+
+        //when
+        webTestClient.get().uri("/branches/search?q=pla")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectBodyList(Branch.class).isEqualTo(List.of(branch1, branch2));
+    }
+
+    @Test
+    public void countByUser_ExpectedValues_Ok() {
+        //given
+        given(branchService.countByUser()).willReturn(Mono.just(Map.of(1L, 2L)));
+
+        //when
+        webTestClient.get().uri("/branches/counts/users")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectBody().json("{\"1\":2}");
+    }
+
+    @Test
+    public void changes_Entries_StreamedAsEvents() {
+        BranchChangeFeed.Subscription subscription = mock(BranchChangeFeed.Subscription.class);
+        BranchChangeEntry entry = new BranchChangeEntry(6L, BranchChangeEntry.Type.DELETED, branch1, Instant.EPOCH);
+
+        //given
+        given(branchChangeFeed.subscribe(eq(5L), any())).willAnswer(invocation -> {
+            Predicate<List<BranchChangeEntry>> subscriber = invocation.getArgument(1);
+            subscriber.test(List.of());
+            subscriber.test(List.of(entry));
+            return subscription;
+        });
+
+        //when
+        FluxExchangeResult<ServerSentEvent<BranchChangeEntry>> result = webTestClient.get()
+                .uri("/branches/changes?since=5")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<>() {
+                });
+
+        //then
+        StepVerifier.create(result.getResponseBody())
+                .expectNextMatches(event -> "heartbeat".equals(event.comment()))
+                .expectNextMatches(event -> "6".equals(event.id()) && "deleted".equals(event.event()) &&
+                        event.data().equals(entry))
+                .thenCancel()
+                .verify();
+        then(subscription).should(timeout(5000)).cancel();
+    }
+
+    @Test
+    public void search_NoHits_NoContent() {
+        //given
+        given(branchService.search("zz", 1L, 3)).willReturn(Mono.just(List.of()));
+
+        //when
+        webTestClient.get().uri("/branches/search?q=zz&userId=1&limit=3")
+                .exchange()
+                //then
+                .expectStatus().isNoContent();
+    }
+
+    @Test
+    public void getViewport_ExpectedValues_Ok() {
+        BranchViewport viewport = new BranchViewport(List.of(), List.of(new BranchCluster(-38.0, -57.5, 2)));
+
+        //given
+        given(branchService.getViewport(-40.0, -60.0, -30.0, -50.0, 5)).willReturn(Mono.just(viewport));
+
+        //when
+        webTestClient.get().uri("/branches/viewport?minLat=-40&minLon=-60&maxLat=-30&maxLon=-50&zoom=5")
+                .exchange()
+                //then
+                .expectStatus().isOk()
+                .expectBody(BranchViewport.class).isEqualTo(viewport);
+    }
+}
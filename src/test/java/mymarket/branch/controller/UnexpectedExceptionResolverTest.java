@@ -0,0 +1,62 @@
+package mymarket.branch.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.config.ErrorLogProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.ModelAndView;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UnexpectedExceptionResolverTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final UnexpectedExceptionResolver resolver =
+            new UnexpectedExceptionResolver(meterRegistry, new ErrorLogProperties(), objectMapper);
+
+    @Test
+    public void resolveException_UnexpectedException_InternalServerError() throws Exception {
+        //given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/branches/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        ModelAndView modelAndView = resolver.resolveException(request, response, null,
+                new IllegalStateException("Connection refused"));
+
+        //then
+        assertThat(modelAndView).isNotNull();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR.value());
+        assertThat(response.getContentType()).isEqualTo(MediaType.APPLICATION_JSON_VALUE);
+        assertThat(objectMapper.readTree(response.getContentAsString()).get("message").asText())
+                .isEqualTo("Internal Server Error");
+        assertThat(meterRegistry.get(ExceptionController.ERRORS_COUNTER).tag("handler", "unexpected")
+                .tag("outcome", "INTERNAL_SERVER_ERROR").tag("exception", "IllegalStateException").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void resolveException_ResponseCommitted_NotResolved() {
+        //given
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCommitted(true);
+
+        //when
+        ModelAndView modelAndView = resolver.resolveException(new MockHttpServletRequest("GET", "/branches/export"),
+                response, null, new IllegalStateException("Broken pipe"));
+
+        //then
+        assertThat(modelAndView).isNull();
+        assertThat(meterRegistry.get(ExceptionController.ERRORS_COUNTER).tag("handler", "unexpected").counter()
+                .count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,173 @@
+package mymarket.branch.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import mymarket.branch.config.BranchDataSourceProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+
+public class ReadWriteRoutingDataSourceTest {
+
+    private EmbeddedDatabase primary, replica, secondReplica;
+
+    private ReplicaReads replicaReads;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+        secondReplica = database("second");
+        BranchDataSourceProperties properties = new BranchDataSourceProperties();
+        properties.getReplicas().add(new BranchDataSourceProperties.Replica());
+        replicaReads = new ReplicaReads(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        primary.shutdown();
+        replica.shutdown();
+        secondReplica.shutdown();
+    }
+
+    @Test
+    public void getConnection_ReplicaRequested_ReadFromReplica() {
+        //given
+        ReadWriteRoutingDataSource dataSource = routing(ReadWriteRoutingDataSource.Selection.ROUND_ROBIN, replica);
+
+        //then
+        assertThat(readEmail(dataSource, true, true)).isEqualTo("replica@mymarket.com");
+        assertThat(readEmail(dataSource, true, false)).isEqualTo("primary@mymarket.com");
+        assertThat(readEmail(dataSource, false, true)).isEqualTo("primary@mymarket.com");
+        assertThat(new JdbcTemplate(dataSource).queryForObject("SELECT email FROM users", String.class))
+                .isEqualTo("primary@mymarket.com");
+    }
+
+    @Test
+    public void getConnection_RoundRobin_ReplicasAlternate() {
+        //given
+        ReadWriteRoutingDataSource dataSource = routing(ReadWriteRoutingDataSource.Selection.ROUND_ROBIN,
+                replica, secondReplica);
+
+        //when
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            emails.add(readEmail(dataSource, true, true));
+        }
+
+        //then
+        assertThat(emails).containsExactly("replica@mymarket.com", "second@mymarket.com",
+                "replica@mymarket.com", "second@mymarket.com");
+    }
+
+    @Test
+    public void getConnection_LeastConnections_IdleReplicaFirst() throws Exception {
+        //given
+        HikariDataSource busy = pool(replica);
+        HikariDataSource idle = pool(secondReplica);
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary, List.of(busy, idle),
+                ReadWriteRoutingDataSource.Selection.LEAST_CONNECTIONS, Duration.ofSeconds(1));
+
+        //when
+        List<String> emails;
+        try (Connection ignored = busy.getConnection()) {
+            emails = List.of(readEmail(dataSource, true, true), readEmail(dataSource, true, true));
+        }
+        dataSource.close();
+
+        //then
+        assertThat(emails).containsOnly("second@mymarket.com");
+        assertThat(busy.isClosed()).isTrue();
+        assertThat(idle.isClosed()).isTrue();
+    }
+
+    @Test
+    public void getConnection_ReplicaDown_PrimaryUntilHealthCheckPasses() throws SQLException {
+        //given
+        DataSource flaky = mock(DataSource.class);
+        given(flaky.getConnection()).willThrow(new SQLException("Connection refused"));
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(primary, List.of(flaky),
+                ReadWriteRoutingDataSource.Selection.ROUND_ROBIN, Duration.ofSeconds(1));
+
+        //when
+        String duringOutage = readEmail(dataSource, true, true);
+        dataSource.checkReplicas();
+        int upDuringOutage = dataSource.getReplicasUp();
+        willAnswer(invocation -> replica.getConnection()).given(flaky).getConnection();
+        dataSource.checkReplicas();
+
+        //then
+        assertThat(duringOutage).isEqualTo("primary@mymarket.com");
+        assertThat(upDuringOutage).isZero();
+        assertThat(dataSource.getReplicasUp()).isEqualTo(1);
+        assertThat(readEmail(dataSource, true, true)).isEqualTo("replica@mymarket.com");
+    }
+
+    @Test
+    public void router_CredentialsAndUnwrap_PrimaryUnderneath() throws SQLException {
+        //given
+        DataSource router = routing(ReadWriteRoutingDataSource.Selection.ROUND_ROBIN, replica).getTargetDataSource();
+
+        //then
+        assertThatThrownBy(() -> router.getConnection("sa", "")).isInstanceOf(SQLFeatureNotSupportedException.class);
+        assertThat(router.unwrap(AbstractDataSource.class)).isSameAs(router);
+        assertThat(router.unwrap(SimpleDriverDataSource.class)).isSameAs(primary.unwrap(SimpleDriverDataSource.class));
+        assertThat(router.isWrapperFor(AbstractDataSource.class)).isTrue();
+        assertThat(router.isWrapperFor(SimpleDriverDataSource.class)).isTrue();
+        assertThat(router.isWrapperFor(HikariDataSource.class)).isFalse();
+    }
+
+    private String readEmail(DataSource dataSource, boolean readOnly, boolean replicaRequested) {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> {
+            if (replicaRequested) {
+                replicaReads.routeToReplica(1L, null);
+            }
+            return new JdbcTemplate(dataSource).queryForObject("SELECT email FROM users", String.class);
+        });
+    }
+
+    private ReadWriteRoutingDataSource routing(ReadWriteRoutingDataSource.Selection selection,
+                                               DataSource... replicas) {
+        return new ReadWriteRoutingDataSource(primary, List.of(replicas), selection, Duration.ofSeconds(1));
+    }
+
+    private static HikariDataSource pool(DataSource dataSource) {
+        HikariConfig config = new HikariConfig();
+        config.setDataSource(dataSource);
+        return new HikariDataSource(config);
+    }
+
+    private static EmbeddedDatabase database(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+                .addScript("file:schema.sql")
+                .build();
+        new JdbcTemplate(database).update("INSERT INTO users (email) VALUES (?)", name + "@mymarket.com");
+        return database;
+    }
+}
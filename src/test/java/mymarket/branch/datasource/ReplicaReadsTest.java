@@ -0,0 +1,104 @@
+package mymarket.branch.datasource;
+
+import mymarket.branch.config.BranchDataSourceProperties;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.model.Branch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplicaReadsTest {
+
+    private EmbeddedDatabase database;
+
+    private final BranchDataSourceProperties properties = new BranchDataSourceProperties();
+
+    private final Branch puerto = Branch.builder().id(1L).userId(1L).build();
+    private final Branch moved = Branch.builder().id(1L).userId(2L).build();
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName("replica-reads").build();
+        properties.getReplicas().add(new BranchDataSourceProperties.Replica());
+        properties.setStickyWindow(Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void routeToReplica_ReadOnlyTransaction_RoutedUntilItEnds() {
+        //given
+        ReplicaReads replicaReads = new ReplicaReads(properties);
+
+        //when
+        Boolean requestedInside = inTransaction(true, () -> {
+            replicaReads.routeToReplica(1L, 1L);
+            return ReplicaReads.isRequested() && replicaReads.routeToReplica(1L, 1L);
+        });
+
+        //then
+        assertThat(requestedInside).isTrue();
+        assertThat(ReplicaReads.isRequested()).isFalse();
+    }
+
+    @Test
+    public void routeToReplica_RecentlyWritten_StaysOnPrimary() {
+        //given
+        ReplicaReads replicaReads = new ReplicaReads(properties);
+
+        //when
+        replicaReads.onChanged(new BranchChangedEvent(List.of(BranchChange.updated(puerto, moved))));
+
+        //then
+        assertThat(inTransaction(true, () -> replicaReads.routeToReplica(1L, null))).isFalse();
+        assertThat(inTransaction(true, () -> replicaReads.routeToReplica(2L, null))).isFalse();
+        assertThat(inTransaction(true, () -> replicaReads.routeToReplica(null, 1L))).isFalse();
+        assertThat(inTransaction(true, () -> replicaReads.routeToReplica(3L, 2L))).isTrue();
+    }
+
+    @Test
+    public void routeToReplica_StickyWindowOver_Routed() {
+        //given
+        properties.setStickyWindow(Duration.ZERO);
+        ReplicaReads replicaReads = new ReplicaReads(properties);
+
+        //when
+        replicaReads.onChanged(new BranchChangedEvent(List.of(BranchChange.created(puerto))));
+
+        //then
+        assertThat(inTransaction(true, () -> replicaReads.routeToReplica(1L, 1L))).isTrue();
+    }
+
+    @Test
+    public void routeToReplica_NoReplicasOrNotReadOnly_NotRouted() {
+        //given
+        ReplicaReads withReplicas = new ReplicaReads(properties);
+        ReplicaReads withoutReplicas = new ReplicaReads(new BranchDataSourceProperties());
+
+        //then
+        assertThat(withReplicas.routeToReplica(1L, 1L)).isFalse();
+        assertThat(inTransaction(false, () -> withReplicas.routeToReplica(1L, 1L))).isFalse();
+        assertThat(inTransaction(true, () -> withoutReplicas.routeToReplica(1L, 1L))).isFalse();
+    }
+
+    private <T> T inTransaction(boolean readOnly, Supplier<T> action) {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(database));
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> action.get());
+    }
+}
@@ -0,0 +1,40 @@
+package mymarket.branch.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlShapesTest {
+
+    @Test
+    public void shapeOf_LiteralsAndLists_Collapsed() {
+        assertThat(SqlShapes.shapeOf("SELECT * FROM branches\n   WHERE id IN (1, 2, 3) AND name = 'O''Higgins' " +
+                "LIMIT 50"))
+                .isEqualTo("SELECT * FROM branches WHERE id IN (?...) AND name = ? LIMIT ?");
+        assertThat(SqlShapes.shapeOf("SELECT * FROM branches WHERE latitude > -38.5 AND id IN (?, ?)"))
+                .isEqualTo("SELECT * FROM branches WHERE latitude > ? AND id IN (?...)");
+    }
+
+    @Test
+    public void shapeOf_RepeatedRowsAndKeys_Collapsed() {
+        assertThat(SqlShapes.shapeOf("INSERT INTO branches (name, user_id) VALUES (?, ?), (?, ?), (?, ?)"))
+                .isEqualTo("INSERT INTO branches (name, user_id) VALUES (?...)...");
+        assertThat(SqlShapes.shapeOf("SELECT id FROM branches WHERE (user_id = ? AND name = ?) OR " +
+                "(user_id = ? AND name = ?) FOR UPDATE"))
+                .isEqualTo("SELECT id FROM branches WHERE (user_id = ? AND name = ?)... FOR UPDATE");
+    }
+
+    @Test
+    public void shapeOf_DigitsInIdentifiers_Kept() {
+        assertThat(SqlShapes.shapeOf("select branch0_.id as id1_0_ from branches branch0_ where branch0_.id=?"))
+                .isEqualTo("select branch0_.id as id1_0_ from branches branch0_ where branch0_.id=?");
+    }
+
+    @Test
+    public void operationOf_ExpectedValues() {
+        assertThat(SqlShapes.operationOf("SELECT 1")).isEqualTo("select");
+        assertThat(SqlShapes.operationOf("insert into users (email) values (?)")).isEqualTo("insert");
+        assertThat(SqlShapes.operationOf("CALL cleanup()")).isEqualTo("other");
+        assertThat(SqlShapes.operationOf("COMMIT")).isEqualTo("other");
+    }
+}
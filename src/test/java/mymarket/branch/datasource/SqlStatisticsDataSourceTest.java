@@ -0,0 +1,167 @@
+package mymarket.branch.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.config.SqlStatisticsProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class SqlStatisticsDataSourceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final SqlStatisticsProperties properties = new SqlStatisticsProperties();
+
+    private EmbeddedDatabase database;
+
+    private SqlStatistics statistics;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("statistics;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+                .addScript("file:schema.sql")
+                .build();
+        statistics = new SqlStatistics(meterRegistry, properties);
+        jdbcTemplate = new JdbcTemplate(new SqlStatisticsDataSource(database, statistics));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void getConnection_PreparedStatements_TimedAndRowsCountedPerShape() {
+        //given
+        jdbcTemplate.batchUpdate("INSERT INTO users (email) VALUES (?)", List.of(
+                new Object[]{"a@mymarket.com"}, new Object[]{"b@mymarket.com"}, new Object[]{"c@mymarket.com"}));
+
+        //when
+        List<String> first = jdbcTemplate.queryForList("SELECT email FROM users WHERE id IN (?, ?)", String.class,
+                1, 2);
+        List<String> second = jdbcTemplate.queryForList("SELECT email FROM users WHERE id IN (?, ?, ?)",
+                String.class, 1, 2, 3);
+
+        //then
+        assertThat(first).hasSize(2);
+        assertThat(second).hasSize(3);
+        String select = "SELECT email FROM users WHERE id IN (?...)";
+        assertThat(timerCount(select)).isEqualTo(2);
+        assertThat(rowsTotal(select)).isEqualTo(5);
+        String insert = "INSERT INTO users (email) VALUES (?)";
+        assertThat(timerCount(insert)).isEqualTo(1);
+        assertThat(rowsTotal(insert)).isEqualTo(3);
+    }
+
+    @Test
+    public void getConnection_PlainStatementWithLiterals_SameShape() {
+        //when
+        jdbcTemplate.update("INSERT INTO users (email) VALUES ('a@mymarket.com')");
+        jdbcTemplate.update("INSERT INTO users (email) VALUES ('b@mymarket.com')");
+        jdbcTemplate.queryForList("SELECT email FROM users WHERE id = 1", String.class);
+
+        //then
+        assertThat(timerCount("INSERT INTO users (email) VALUES (?)")).isEqualTo(2);
+        assertThat(rowsTotal("INSERT INTO users (email) VALUES (?)")).isEqualTo(2);
+        assertThat(rowsTotal("SELECT email FROM users WHERE id = ?")).isEqualTo(1);
+    }
+
+    @Test
+    public void getConnection_ResultSetLeftOpen_RowsCountedWhenStatementCloses() throws Exception {
+        //given
+        jdbcTemplate.update("INSERT INTO users (email) VALUES (?)", "a@mymarket.com");
+        jdbcTemplate.update("INSERT INTO users (email) VALUES (?)", "b@mymarket.com");
+
+        //when
+        try (Connection connection = jdbcTemplate.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT email FROM users WHERE id > ?")) {
+            statement.setLong(1, 0);
+            statement.clearParameters();
+            statement.setNull(1, Types.BIGINT);
+            statement.setLong(1, 0);
+            assertThat(statement.execute()).isTrue();
+            ResultSet resultSet = statement.getResultSet();
+            while (resultSet.next()) {
+                assertThat(resultSet.getString(1)).endsWith("@mymarket.com");
+            }
+
+            //then
+            assertThat(statement.getConnection()).isSameAs(connection);
+            assertThat(resultSet.getStatement()).isSameAs(statement);
+            assertThat(connection).isEqualTo(connection).isNotEqualTo(statement);
+            assertThat(connection.hashCode()).isEqualTo(System.identityHashCode(connection));
+            assertThat(connection.toString()).startsWith("SqlStatistics proxy of ");
+        }
+        assertThat(rowsTotal("SELECT email FROM users WHERE id > ?")).isEqualTo(2);
+    }
+
+    @Test
+    public void getConnection_FailedStatementAndPlainBatch_StillTimed() throws Exception {
+        //when
+        try (Connection connection = jdbcTemplate.getDataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.addBatch("INSERT INTO users (email) VALUES ('a@mymarket.com')");
+            statement.addBatch("INSERT INTO users (email) VALUES ('b@mymarket.com')");
+            statement.executeBatch();
+            statement.addBatch("INSERT INTO users (email) VALUES ('c@mymarket.com')");
+            statement.clearBatch();
+            assertThatThrownBy(() -> statement.executeQuery("SELECT missing FROM users"))
+                    .isInstanceOf(SQLException.class);
+        }
+
+        //then
+        assertThat(rowsTotal("INSERT INTO users (email) VALUES (?)")).isEqualTo(2);
+        assertThat(timerCount("SELECT missing FROM users")).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    public void slowest_MoreShapesThanTheMaximum_RestCountedAsOther() {
+        //given
+        properties.setMaxShapes(1);
+        statistics = new SqlStatistics(meterRegistry, properties);
+        jdbcTemplate = new JdbcTemplate(new SqlStatisticsDataSource(database, statistics));
+
+        //when
+        jdbcTemplate.queryForList("SELECT email FROM users", String.class);
+        jdbcTemplate.queryForList("SELECT id FROM users", String.class);
+        jdbcTemplate.queryForList("SELECT id FROM users", String.class);
+
+        //then
+        assertThat(statistics.slowest(10)).extracting("sql", "count")
+                .containsExactlyInAnyOrder(tuple("SELECT email FROM users", 1L),
+                        tuple(SqlStatistics.OTHER_SHAPE, 2L));
+    }
+
+    private long timerCount(String shape) {
+        return meterRegistry.get(SqlStatistics.STATEMENTS_TIMER).tag("shape", id(shape)).timer().count();
+    }
+
+    private double rowsTotal(String shape) {
+        return meterRegistry.get(SqlStatistics.ROWS_SUMMARY).tag("shape", id(shape)).summary().totalAmount();
+    }
+
+    private static String id(String shape) {
+        return String.format("%08x", shape.hashCode());
+    }
+}
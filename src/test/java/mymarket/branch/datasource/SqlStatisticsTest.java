@@ -0,0 +1,118 @@
+package mymarket.branch.datasource;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.config.SqlStatisticsProperties;
+import mymarket.branch.model.SqlStatementStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SqlStatisticsTest {
+
+    private static final String SELECT = "SELECT * FROM branches WHERE id = ? AND name = ?";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final SqlStatisticsProperties properties = new SqlStatisticsProperties();
+
+    private final Logger log = (Logger) LoggerFactory.getLogger(SqlStatistics.class);
+
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        log.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        log.detachAppender(appender);
+    }
+
+    @Test
+    public void executed_SlowStatement_LoggedWithRedactedParameters() {
+        //given
+        SqlStatistics statistics = new SqlStatistics(meterRegistry, properties);
+        Object[] parameters = {null, 7L, "Olavarria 560", null};
+
+        //when
+        statistics.executed(SELECT, TimeUnit.MILLISECONDS.toNanos(10), parameters, 2, 0);
+        statistics.executed(SELECT, TimeUnit.MILLISECONDS.toNanos(250), parameters, 2, 0);
+        statistics.executed("INSERT INTO users (email) VALUES (?)", TimeUnit.MILLISECONDS.toNanos(300), null, 0, 40);
+
+        //then
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage).containsExactly(
+                "Slow SQL statement took 250 ms: " + SELECT + " with [7, <String>]",
+                "Slow SQL statement took 300 ms: INSERT INTO users (email) VALUES (?) (batch of 40)");
+    }
+
+    @Test
+    public void executed_RedactionDisabled_ParametersLogged() {
+        //given
+        properties.setRedactParameters(false);
+        properties.setSlowThreshold(Duration.ZERO);
+        SqlStatistics statistics = new SqlStatistics(meterRegistry, properties);
+
+        Object[] manyParameters = new Object[30];
+        Arrays.fill(manyParameters, 1, 30, 5);
+
+        //when
+        statistics.executed(SELECT, 0, new Object[]{null, 7L, "Olavarria 560", null}, 2, 0);
+        statistics.executed("SELECT * FROM branches WHERE id IN (?...)", 0, manyParameters, 29, 0);
+
+        //then
+        assertThat(appender.list).extracting(ILoggingEvent::getFormattedMessage).containsExactly(
+                "Slow SQL statement took 0 ms: " + SELECT + " with [7, Olavarria 560]",
+                "Slow SQL statement took 0 ms: SELECT * FROM branches WHERE id IN (?...) with [" +
+                        String.join(", ", Collections.nCopies(20, "5")) + ", ...]");
+    }
+
+    @Test
+    public void slowest_ExpectedValues_SlowestFirst() {
+        //given
+        SqlStatistics statistics = new SqlStatistics(meterRegistry, properties);
+        statistics.executed(SELECT, TimeUnit.MILLISECONDS.toNanos(2), null, 0, 0).rows(1);
+        statistics.executed("SELECT * FROM branches WHERE user_id = 1", TimeUnit.MILLISECONDS.toNanos(8), null, 0, 0)
+                .rows(30);
+        statistics.executed("SELECT * FROM branches WHERE user_id = 2", TimeUnit.MILLISECONDS.toNanos(4), null, 0, 0)
+                .rows(10);
+        statistics.executed("DELETE FROM branches WHERE id = 3", TimeUnit.MILLISECONDS.toNanos(1), null, 0, 0);
+
+        //when
+        List<SqlStatementStatistics> slowest = new SqlStatementsEndpoint(statistics, 2).slowest(null);
+
+        //then
+        assertThat(slowest).hasSize(2);
+        assertThat(slowest.get(0).getSql()).isEqualTo("SELECT * FROM branches WHERE user_id = ?");
+        assertThat(slowest.get(0).getCount()).isEqualTo(2);
+        assertThat(slowest.get(0).getMeanMillis()).isEqualTo(6);
+        assertThat(slowest.get(0).getMaxMillis()).isEqualTo(8);
+        assertThat(slowest.get(0).getTotalMillis()).isEqualTo(12);
+        assertThat(slowest.get(0).getMeanRows()).isEqualTo(20);
+        assertThat(slowest.get(1).getSql()).isEqualTo(SELECT);
+        assertThat(new SqlStatementsEndpoint(statistics, 2).slowest(10)).hasSize(3);
+        assertThat(meterRegistry.get(SqlStatistics.STATEMENTS_TIMER).tag("operation", "delete").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void new_InvalidMaxShapes_ExceptionThrown() {
+        properties.setMaxShapes(0);
+        assertThatThrownBy(() -> new SqlStatistics(meterRegistry, properties))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,74 @@
+package mymarket.branch.exception;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+@ExtendWith(MockitoExtension.class)
+public class SampledStackTraceLoggerTest {
+
+    @Mock
+    private Logger log;
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private final IllegalStateException ex = new IllegalStateException("Connection refused");
+
+    @Test
+    public void error_BurstThenSampled_EveryNthLogged() {
+        //given
+        SampledStackTraceLogger logger = logger(2, 3);
+
+        //when
+        int logged = 0;
+        for (int i = 0; i < 8; i++) {
+            if (logger.error("GET /branches/1 failed", ex)) {
+                logged++;
+            }
+        }
+
+        //then
+        assertThat(logged).isEqualTo(4);
+        then(log).should(times(2)).error("{} ({} more errors since the last one logged)", "GET /branches/1 failed",
+                2L, ex);
+    }
+
+    @Test
+    public void error_NextInterval_BurstLoggedAgain() {
+        //given
+        SampledStackTraceLogger logger = logger(1, 100);
+        logger.error("GET /branches/1 failed", ex);
+        logger.error("GET /branches/1 failed", ex);
+
+        //when
+        nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+        boolean logged = logger.error("GET /branches/1 failed", ex);
+
+        //then
+        assertThat(logged).isTrue();
+        then(log).should().error("GET /branches/1 failed", ex);
+        then(log).should().error("{} ({} more errors since the last one logged)", "GET /branches/1 failed", 1L, ex);
+    }
+
+    @Test
+    public void new_InvalidSampleRate_ExceptionThrown() {
+        assertThatThrownBy(() -> new SampledStackTraceLogger(log, 10, Duration.ofMinutes(1), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SampledStackTraceLogger(log, 10, Duration.ZERO, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private SampledStackTraceLogger logger(int burst, int sampleRate) {
+        return new SampledStackTraceLogger(log, burst, Duration.ofMinutes(1), sampleRate, nanoTime::get);
+    }
+}
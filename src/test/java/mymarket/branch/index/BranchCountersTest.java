@@ -0,0 +1,98 @@
+package mymarket.branch.index;
+
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.repository.BranchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class BranchCountersTest {
+
+    @Mock
+    private BranchRepository branchRepository;
+
+    @InjectMocks
+    private BranchCounters branchCounters;
+
+    private Branch centro, puerto, batan;
+
+    @BeforeEach
+    void setUp() {
+        centro = Branch.builder().id(1L).userId(1L).city("Mar del Plata").build();
+        puerto = Branch.builder().id(2L).userId(1L).city("Mar del Plata").build();
+        batan = Branch.builder().id(3L).userId(2L).city("Batán").build();
+        branchCounters.onLoaded(new BranchesLoadedEvent(List.of(centro, puerto, batan)));
+    }
+
+    @Test
+    public void onLoaded_ExpectedValues_Counted() {
+        assertThat(branchCounters.countByCity()).containsExactly(entry("Batán", 1L), entry("Mar del Plata", 2L));
+        assertThat(branchCounters.countByUser()).containsExactly(entry(1L, 2L), entry(2L, 1L));
+        assertThat(branchCounters.countOfUser(1L)).isEqualTo(2);
+        assertThat(branchCounters.countOfUser(99L)).isZero();
+    }
+
+    @Test
+    public void onChanged_CreatedMovedAndDeleted_CountsAdjusted() {
+        //given
+        Branch tandil = Branch.builder().id(4L).userId(3L).city("Tandil").build();
+        Branch moved = puerto.toBuilder().userId(2L).city("Batán").build();
+
+        //when
+        branchCounters.onChanged(new BranchChangedEvent(List.of(
+                BranchChange.created(tandil), BranchChange.updated(puerto, moved), BranchChange.deleted(centro))));
+
+        //then
+        assertThat(branchCounters.countByCity()).containsExactly(entry("Batán", 2L), entry("Tandil", 1L));
+        assertThat(branchCounters.countByUser()).containsExactly(entry(2L, 2L), entry(3L, 1L));
+    }
+
+    @Test
+    public void reconcile_DriftedCounts_Repaired() {
+        //given
+        given(branchRepository.countByCity()).willReturn(Map.of("Mar del Plata", 3L, "Batán", 1L));
+        given(branchRepository.countByUser()).willReturn(Map.of(1L, 2L, 2L, 2L));
+
+        //when
+        int repaired = branchCounters.reconcile();
+
+        //then
+        assertThat(repaired).isEqualTo(2);
+        assertThat(branchCounters.countByCity()).containsExactly(entry("Batán", 1L), entry("Mar del Plata", 3L));
+        assertThat(branchCounters.countByUser()).containsExactly(entry(1L, 2L), entry(2L, 2L));
+        assertThat(branchCounters.reconcile()).isZero();
+    }
+
+    @Test
+    public void reconcile_KeyChangedDuringQuery_LeftForNextRun() {
+        //given
+        Branch tandil = Branch.builder().id(4L).userId(2L).city("Tandil").build();
+        given(branchRepository.countByCity()).willAnswer(invocation -> {
+            branchCounters.onChanged(new BranchChangedEvent(List.of(BranchChange.created(tandil))));
+            return Map.of("Mar del Plata", 2L, "Batán", 1L);
+        });
+        given(branchRepository.countByUser()).willReturn(Map.of(1L, 2L, 2L, 1L));
+
+        //when
+        int repaired = branchCounters.reconcile();
+
+        //then
+        assertThat(repaired).isZero();
+        assertThat(branchCounters.countByCity()).containsEntry("Tandil", 1L);
+        assertThat(branchCounters.countOfUser(2L)).isEqualTo(2);
+    }
+}
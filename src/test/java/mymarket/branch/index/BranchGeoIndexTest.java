@@ -0,0 +1,191 @@
+package mymarket.branch.index;
+
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.event.BranchChangesRelayedEvent;
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchCluster;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class BranchGeoIndexTest {
+
+    private BranchGeoIndex branchGeoIndex;
+
+    private Branch centro, puerto, batan, noCoordinates;
+
+    @BeforeEach
+    void setUp() {
+        branchGeoIndex = new BranchGeoIndex(0.05, 14);
+
+        centro = Branch.builder().id(1L).userId(1L).latitude("-38.0023").longitude("-57.5575").build();
+        puerto = Branch.builder().id(2L).userId(1L).latitude("-38.0386").longitude("-57.5348").build();
+        batan = Branch.builder().id(3L).userId(2L).latitude("-37.9450").longitude("-57.7050").build();
+        noCoordinates = Branch.builder().id(4L).userId(2L).latitude("").longitude(null).build();
+        branchGeoIndex.onLoaded(new BranchesLoadedEvent(List.of(centro, puerto, batan, noCoordinates)));
+    }
+
+    @Test
+    public void nearest_ExpectedValues_ClosestFirst() {
+        //when
+        List<BranchGeoIndex.Hit> hits = branchGeoIndex.nearest(-38.0, -57.55, 50, 20);
+
+        //then
+        assertThat(branchGeoIndex.size()).isEqualTo(3);
+        assertThat(hits).extracting(BranchGeoIndex.Hit::getBranchId).containsExactly(1L, 2L, 3L);
+        assertThat(hits.get(0).getDistanceKm()).isLessThan(1);
+    }
+
+    @Test
+    public void nearest_LimitAndRadius_Truncated() {
+        //when
+        List<BranchGeoIndex.Hit> limited = branchGeoIndex.nearest(-38.0, -57.55, 50, 1);
+        List<BranchGeoIndex.Hit> inRadius = branchGeoIndex.nearest(-38.0, -57.55, 5, 20);
+
+        //then
+        assertThat(limited).extracting(BranchGeoIndex.Hit::getBranchId).containsExactly(1L);
+        assertThat(inRadius).extracting(BranchGeoIndex.Hit::getBranchId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void onChanged_MovedAndDeleted_IndexUpdated() {
+        //given
+        Branch movedCentro = centro.toBuilder().latitude("-34.6037").longitude("-58.3816").build();
+
+        //when
+        branchGeoIndex.onChanged(new BranchChangedEvent(List.of(
+                BranchChange.updated(centro, movedCentro), BranchChange.deleted(puerto))));
+
+        //then
+        assertThat(branchGeoIndex.nearest(-38.0, -57.55, 50, 20))
+                .extracting(BranchGeoIndex.Hit::getBranchId).containsExactly(3L);
+        assertThat(branchGeoIndex.nearest(-34.6, -58.38, 1, 20))
+                .extracting(BranchGeoIndex.Hit::getBranchId).containsExactly(1L);
+    }
+
+    @Test
+    public void onRelayed_MovedAndDeleted_IndexUpdated() {
+        //given
+        Branch movedCentro = centro.toBuilder().latitude("-34.6037").longitude("-58.3816").build();
+
+        //when
+        branchGeoIndex.onRelayed(new BranchChangesRelayedEvent(List.of(
+                BranchChangeEntry.builder().id(10L).type(BranchChangeEntry.Type.UPDATED).branch(movedCentro).build(),
+                BranchChangeEntry.builder().id(11L).type(BranchChangeEntry.Type.DELETED).branch(puerto).build())));
+
+        //then
+        assertThat(branchGeoIndex.size()).isEqualTo(2);
+        assertThat(branchGeoIndex.nearest(-38.0, -57.55, 50, 20))
+                .extracting(BranchGeoIndex.Hit::getBranchId).containsExactly(3L);
+        assertThat(branchGeoIndex.nearest(-34.6, -58.38, 1, 20))
+                .extracting(BranchGeoIndex.Hit::getBranchId).containsExactly(1L);
+    }
+
+    @Test
+    public void nearest_ManyBranches_MatchesBruteForce() {
+        //given
+        BranchGeoIndex index = new BranchGeoIndex(0.05, 14);
+        Random random = new Random(7);
+        double[][] points = new double[5000][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[]{-39 + random.nextDouble() * 2, -59 + random.nextDouble() * 2};
+            index.put(Branch.builder().id((long) i).latitude(String.valueOf(points[i][0]))
+                    .longitude(String.valueOf(points[i][1])).build());
+        }
+
+        //when
+        List<BranchGeoIndex.Hit> hits = index.nearest(-38.1, -58.2, 500, 10);
+
+        //then
+        double tenth = Arrays.stream(points)
+                .mapToDouble(p -> BranchGeoIndex.distanceKm(-38.1, -58.2, p[0], p[1]))
+                .sorted().skip(9).findFirst().getAsDouble();
+        assertThat(hits).hasSize(10);
+        assertThat(hits.get(9).getDistanceKm()).isEqualTo(tenth);
+    }
+
+    @Test
+    public void within_Box_OnlyBranchesInside() {
+        //when
+        List<Long> ids = branchGeoIndex.within(-38.05, -57.6, -37.99, -57.5, 10);
+
+        //then
+        assertThat(ids).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(branchGeoIndex.within(-38.05, -57.8, -37.9, -57.5, 2)).hasSize(2);
+    }
+
+    @Test
+    public void clusters_ZoomedOutAndIn_CountsAndCentroids() {
+        //when
+        List<BranchCluster> world = branchGeoIndex.clusters(0, -90, -180, 90, 180);
+        List<BranchCluster> city = branchGeoIndex.clusters(12, -38.1, -57.8, -37.9, -57.5);
+
+        //then
+        assertThat(world).hasSize(1);
+        assertThat(world.get(0).getCount()).isEqualTo(3);
+        assertThat(world.get(0).getLatitude()).isCloseTo((-38.0023 - 38.0386 - 37.9450) / 3, within(1e-9));
+        assertThat(city).extracting(BranchCluster::getCount).containsOnly(1L);
+        assertThat(city).hasSize(3);
+    }
+
+    @Test
+    public void clusters_MovedAndDeleted_MaintainedIncrementally() {
+        //given
+        Branch movedCentro = centro.toBuilder().latitude("-34.6037").longitude("-58.3816").build();
+
+        //when
+        branchGeoIndex.onChanged(new BranchChangedEvent(List.of(
+                BranchChange.updated(centro, movedCentro), BranchChange.deleted(puerto))));
+
+        //then
+        assertThat(branchGeoIndex.clusters(8, -38.1, -57.8, -37.9, -57.5))
+                .extracting(BranchCluster::getCount).containsExactly(1L);
+        assertThat(branchGeoIndex.clusters(8, -34.7, -58.5, -34.5, -58.3))
+                .extracting(BranchCluster::getLatitude).containsExactly(-34.6037);
+    }
+
+    @Test
+    public void nearest_AcrossAntimeridian_BothSidesFound() {
+        //given
+        // Enough cells elsewhere that the query walks the rings instead of scanning every cell.
+        for (long id = 100; id < 200; id++) {
+            branchGeoIndex.put(Branch.builder().id(id).latitude(String.valueOf(id - 150)).longitude("0").build());
+        }
+        branchGeoIndex.put(Branch.builder().id(10L).latitude("-16.8").longitude("179.99").build());
+        branchGeoIndex.put(Branch.builder().id(11L).latitude("-16.8").longitude("-179.99").build());
+
+        //when
+        List<BranchGeoIndex.Hit> hits = branchGeoIndex.nearest(-16.8, 179.99, 5, 2);
+
+        //then
+        assertThat(hits).extracting(BranchGeoIndex.Hit::getBranchId).containsExactly(10L, 11L);
+    }
+
+    @Test
+    public void withinAndClusters_BoxAcrossAntimeridian_BothHalves() {
+        //given
+        branchGeoIndex.put(Branch.builder().id(10L).latitude("-16.8").longitude("179.99").build());
+        branchGeoIndex.put(Branch.builder().id(11L).latitude("-16.8").longitude("-179.99").build());
+        branchGeoIndex.put(Branch.builder().id(12L).latitude("-16.8").longitude("-180").build());
+        branchGeoIndex.put(Branch.builder().id(13L).latitude("0").longitude("7").build());
+
+        //when
+        List<Long> ids = branchGeoIndex.within(-17, 179.9, -16, -179.9, 10);
+        List<BranchCluster> clusters = branchGeoIndex.clusters(0, -17, 170, -16, -170);
+        List<BranchCluster> almostWorld = branchGeoIndex.clusters(0, -90, 10, 90, 5);
+
+        //then
+        assertThat(ids).containsExactlyInAnyOrder(10L, 11L, 12L);
+        assertThat(clusters).extracting(BranchCluster::getCount).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(almostWorld).extracting(BranchCluster::getCount).containsExactlyInAnyOrder(1L, 1L, 2L, 3L);
+    }
+}
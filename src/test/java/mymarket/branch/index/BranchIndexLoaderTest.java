@@ -0,0 +1,129 @@
+package mymarket.branch.index;
+
+import mymarket.branch.event.BranchChangesRelayedEvent;
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.repository.BranchRepository;
+import mymarket.branch.service.BranchChangeFeed;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.BDDMockito.then;
+
+@ExtendWith(MockitoExtension.class)
+public class BranchIndexLoaderTest {
+
+    @Mock
+    private BranchRepository branchRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private BranchChangeFeed branchChangeFeed;
+
+    @Captor
+    private ArgumentCaptor<Predicate<List<BranchChangeEntry>>> subscriber;
+
+    @InjectMocks
+    private BranchIndexLoader branchIndexLoader;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(branchIndexLoader, "pageSize", 2);
+    }
+
+    @Test
+    public void afterSingletonsInstantiated_SeveralPages_PublishesEachPage() {
+        List<Branch> firstPage = List.of(Branch.builder().id(1L).build(), Branch.builder().id(4L).build());
+        List<Branch> lastPage = List.of(Branch.builder().id(7L).build());
+
+        //given
+        given(branchRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2))).willReturn(firstPage);
+        given(branchRepository.findByIdGreaterThanOrderByIdAsc(4L, PageRequest.of(0, 2))).willReturn(lastPage);
+
+        //when
+        branchIndexLoader.afterSingletonsInstantiated();
+
+        //then
+        then(eventPublisher).should().publishEvent(new BranchesLoadedEvent(firstPage));
+        then(eventPublisher).should().publishEvent(new BranchesLoadedEvent(lastPage));
+        then(eventPublisher).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    public void afterSingletonsInstantiated_EmptyTable_NothingPublished() {
+        //given
+        given(branchRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2))).willReturn(List.of());
+
+        //when
+        branchIndexLoader.afterSingletonsInstantiated();
+
+        //then
+        then(eventPublisher).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void afterSingletonsInstantiated_ChangesRelayedDuringWalk_PublishedAfterPages() {
+        List<Branch> page = List.of(Branch.builder().id(1L).build());
+        List<BranchChangeEntry> entries = List.of(BranchChangeEntry.builder().id(9L)
+                .type(BranchChangeEntry.Type.DELETED).branch(page.get(0)).build());
+
+        //given
+        given(branchRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2))).willAnswer(invocation -> {
+            then(branchChangeFeed).should().subscribe(isNull(), subscriber.capture());
+            assertThat(subscriber.getValue().test(entries)).isTrue();
+            return page;
+        });
+
+        //when
+        branchIndexLoader.afterSingletonsInstantiated();
+
+        //then
+        InOrder inOrder = inOrder(eventPublisher);
+        inOrder.verify(eventPublisher).publishEvent(new BranchesLoadedEvent(page));
+        inOrder.verify(eventPublisher).publishEvent(new BranchChangesRelayedEvent(entries));
+    }
+
+    @Test
+    public void afterSingletonsInstantiated_ChangesRelayedAfterWalk_PublishedRightAway() {
+        List<BranchChangeEntry> entries = List.of(BranchChangeEntry.builder().id(9L)
+                .type(BranchChangeEntry.Type.CREATED).branch(Branch.builder().id(3L).build()).build());
+
+        //given
+        given(branchRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2))).willReturn(List.of());
+        branchIndexLoader.afterSingletonsInstantiated();
+        then(branchChangeFeed).should().subscribe(isNull(), subscriber.capture());
+        willThrow(new IllegalStateException("index")).given(eventPublisher).publishEvent(any(Object.class));
+
+        //when
+        boolean heartbeat = subscriber.getValue().test(List.of());
+        boolean failed = subscriber.getValue().test(entries);
+
+        //then
+        assertThat(heartbeat).isTrue();
+        assertThat(failed).isTrue();
+        then(eventPublisher).should().publishEvent(new BranchChangesRelayedEvent(entries));
+        then(eventPublisher).shouldHaveNoMoreInteractions();
+    }
+}
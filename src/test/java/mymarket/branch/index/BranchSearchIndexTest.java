@@ -0,0 +1,145 @@
+package mymarket.branch.index;
+
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.event.BranchChangesRelayedEvent;
+import mymarket.branch.event.BranchesLoadedEvent;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BranchSearchIndexTest {
+
+    private BranchSearchIndex branchSearchIndex;
+
+    private Branch centro, puerto, penaloza, batan;
+
+    @BeforeEach
+    void setUp() {
+        branchSearchIndex = new BranchSearchIndex(20_000);
+
+        centro = Branch.builder().id(1L).userId(1L).name("Centro").address("Avenida Colón 1500")
+                .city("Mar del Plata").build();
+        puerto = Branch.builder().id(2L).userId(1L).name("Puerto").address("Juan B. Justo 200")
+                .city("Mar del Plata").build();
+        penaloza = Branch.builder().id(3L).userId(2L).name("PEÑALOZA").address("Avenida Colon 3400")
+                .city("Mar del Plata").build();
+        batan = Branch.builder().id(4L).userId(2L).name("Batán").address("Ruta 88 km 14")
+                .city("Batán").build();
+        branchSearchIndex.onLoaded(new BranchesLoadedEvent(List.of(centro, puerto, penaloza, batan)));
+    }
+
+    @Test
+    public void words_AccentsCaseAndPunctuation_Folded() {
+        assertThat(BranchSearchIndex.words("Av. Peñaloza 1.500", null, "MAR DEL PLATA", "Peñaloza"))
+                .containsExactly("av", "penaloza", "1", "500", "mar", "del", "plata");
+    }
+
+    @Test
+    public void search_OneWord_OrderedByCompletionThenId() {
+        //when
+        List<Long> byCity = branchSearchIndex.search("mar", null, 10);
+        List<Long> byPrefix = branchSearchIndex.search("P", null, 10);
+        List<Long> limited = branchSearchIndex.search("mar", null, 2);
+
+        //then
+        assertThat(branchSearchIndex.size()).isEqualTo(4);
+        assertThat(byCity).containsExactly(1L, 2L, 3L);
+        // "penaloza" < "plata" < "puerto"
+        assertThat(byPrefix).containsExactly(3L, 1L, 2L);
+        assertThat(limited).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void search_AccentedOrUpperCaseQuery_Folded() {
+        assertThat(branchSearchIndex.search("batan", null, 10)).containsExactly(4L);
+        assertThat(branchSearchIndex.search("COLÓN", null, 10)).containsExactly(1L, 3L);
+        assertThat(branchSearchIndex.search("peña", null, 10)).containsExactly(3L);
+    }
+
+    @Test
+    public void search_SeveralWords_EveryWordMatched() {
+        assertThat(branchSearchIndex.search("avenida col 15", null, 10)).containsExactly(1L);
+        assertThat(branchSearchIndex.search("plata av", null, 10)).containsExactly(1L, 3L);
+        assertThat(branchSearchIndex.search("batan colon", null, 10)).isEmpty();
+        assertThat(branchSearchIndex.search(" -.", null, 10)).isEmpty();
+    }
+
+    @Test
+    public void search_ByUser_OtherUsersFiltered() {
+        assertThat(branchSearchIndex.search("mar", 2L, 10)).containsExactly(3L);
+        assertThat(branchSearchIndex.search("mar pla", 1L, 1)).containsExactly(1L);
+        assertThat(branchSearchIndex.search("mar", 99L, 10)).isEmpty();
+    }
+
+    @Test
+    public void search_OverScanBudget_SameOrderAsWalked() {
+        //given
+        BranchSearchIndex ranking = new BranchSearchIndex(2);
+        ranking.onLoaded(new BranchesLoadedEvent(List.of(centro, puerto, penaloza, batan)));
+
+        //then
+        assertThat(ranking.search("colon p", null, 10)).containsExactly(3L, 1L);
+        for (String query : List.of("mar p", "avenida c", "a", "plata 1", "centro m", "justo p", "colon p")) {
+            assertThat(ranking.search(query, null, 10)).isEqualTo(branchSearchIndex.search(query, null, 10));
+            assertThat(ranking.search(query, 1L, 10)).isEqualTo(branchSearchIndex.search(query, 1L, 10));
+        }
+    }
+
+    @Test
+    public void onChanged_RenamedAndDeleted_IndexUpdated() {
+        //given
+        Branch renamed = puerto.toBuilder().name("Güemes").build();
+
+        //when
+        branchSearchIndex.onChanged(new BranchChangedEvent(List.of(
+                BranchChange.updated(puerto, renamed), BranchChange.deleted(batan))));
+
+        //then
+        assertThat(branchSearchIndex.size()).isEqualTo(3);
+        assertThat(branchSearchIndex.search("puerto", null, 10)).isEmpty();
+        assertThat(branchSearchIndex.search("guemes", null, 10)).containsExactly(2L);
+        assertThat(branchSearchIndex.search("batan", null, 10)).isEmpty();
+        assertThat(branchSearchIndex.search("mar", 2L, 10)).containsExactly(3L);
+    }
+
+    @Test
+    public void onRelayed_OtherInstanceChanges_IndexUpdated() {
+        //given
+        Branch renamed = puerto.toBuilder().name("Güemes").build();
+        Branch created = Branch.builder().id(5L).userId(2L).name("Sierra").city("Tandil").build();
+
+        //when
+        branchSearchIndex.onRelayed(new BranchChangesRelayedEvent(List.of(
+                BranchChangeEntry.builder().id(10L).type(BranchChangeEntry.Type.UPDATED).branch(renamed).build(),
+                BranchChangeEntry.builder().id(11L).type(BranchChangeEntry.Type.DELETED).branch(batan).build(),
+                BranchChangeEntry.builder().id(12L).type(BranchChangeEntry.Type.CREATED).branch(created).build(),
+                BranchChangeEntry.builder().id(13L).type(BranchChangeEntry.Type.UPDATED).branch(renamed).build())));
+
+        //then
+        assertThat(branchSearchIndex.size()).isEqualTo(4);
+        assertThat(branchSearchIndex.search("puerto", null, 10)).isEmpty();
+        assertThat(branchSearchIndex.search("guemes", null, 10)).containsExactly(2L);
+        assertThat(branchSearchIndex.search("batan", null, 10)).isEmpty();
+        assertThat(branchSearchIndex.search("tandil", 2L, 10)).containsExactly(5L);
+    }
+
+    @Test
+    public void put_OutOfOrderIds_PostingsSorted() {
+        //given
+        branchSearchIndex.put(Branch.builder().id(0L).userId(3L).name("Mar Chiquita").address("Costanera")
+                .city("Mar Chiquita").build());
+
+        //when
+        branchSearchIndex.remove(2L);
+        branchSearchIndex.remove(42L);
+
+        //then
+        assertThat(branchSearchIndex.search("mar", null, 10)).containsExactly(0L, 1L, 3L);
+    }
+}
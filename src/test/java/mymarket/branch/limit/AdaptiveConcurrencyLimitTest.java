@@ -0,0 +1,137 @@
+package mymarket.branch.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void release_FastRequestsAtTheLimit_LimitIncreased() throws InterruptedException {
+        //given
+        AdaptiveConcurrencyLimit limit = limit(2, 0, Duration.ZERO);
+
+        //when
+        for (int i = 0; i < 4; i++) {
+            limit.acquire();
+            limit.acquire();
+            limit.release(0, FAST, false);
+            limit.release(0, FAST, false);
+        }
+
+        //then
+        assertThat(limit.getLimit()).isEqualTo(3);
+        assertThat(limit.getInFlight()).isZero();
+    }
+
+    @Test
+    public void release_SlowAndFailedRequestsOfTheSameWindow_BackedOffOnce() throws InterruptedException {
+        //given
+        AdaptiveConcurrencyLimit limit = limit(4, 0, Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            limit.acquire();
+        }
+
+        //when
+        limit.release(0, SLOW, false);
+        limit.release(0, FAST, true);
+        limit.release(0, SLOW, false);
+        limit.release(0, FAST, false);
+        int afterWindow = limit.getLimit();
+        limit.acquire();
+        limit.release(2 * SLOW, 3 * SLOW, false);
+
+        //then
+        assertThat(afterWindow).isEqualTo(2);
+        assertThat(limit.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    public void acquire_LimitAndQueueFull_Rejected() throws InterruptedException {
+        //given
+        AdaptiveConcurrencyLimit limit = limit(1, 0, Duration.ZERO);
+        limit.acquire();
+
+        //then
+        assertThat(limit.acquire()).isFalse();
+        assertThat(limit.getRejected()).isEqualTo(1);
+        assertThat(limit.getQueued()).isZero();
+    }
+
+    @Test
+    public void acquire_SlotReleasedWhileQueued_Acquired() throws Exception {
+        //given
+        AdaptiveConcurrencyLimit limit = limit(1, 1, Duration.ofSeconds(5));
+        limit.acquire();
+
+        //when
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limit.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (limit.getQueued() == 0) {
+            Thread.onSpinWait();
+        }
+        limit.release(0, FAST, false);
+
+        //then
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(limit.getInFlight()).isEqualTo(1);
+        assertThat(limit.getRejected()).isZero();
+    }
+
+    @Test
+    public void acquire_NoSlotWithinMaxWait_Rejected() throws InterruptedException {
+        //given
+        AdaptiveConcurrencyLimit limit = limit(1, 1, Duration.ofMillis(10));
+        limit.acquire();
+
+        //then
+        assertThat(limit.acquire()).isFalse();
+        assertThat(limit.getRejected()).isEqualTo(1);
+        assertThat(limit.getQueued()).isZero();
+    }
+
+    @Test
+    public void bindTo_ExpectedValues_Exported() throws InterruptedException {
+        //given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdaptiveConcurrencyLimit limit = limit(1, 0, Duration.ZERO);
+        limit.bindTo(registry);
+
+        //when
+        limit.acquire();
+        limit.acquire();
+
+        //then
+        assertThat(registry.get("branch.concurrency.limit").tag("budget", "read").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("branch.concurrency.in-flight").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("branch.concurrency.queued").gauge().value()).isZero();
+        assertThat(registry.get("branch.concurrency.rejected").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void new_InvalidLimits_ExceptionThrown() {
+        assertThatThrownBy(() -> new AdaptiveConcurrencyLimit("read", 5, 10, 20, Duration.ofMillis(100), 0.9, 0,
+                Duration.ZERO)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveConcurrencyLimit("read", 5, 1, 20, Duration.ofMillis(100), 1, 0,
+                Duration.ZERO)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static AdaptiveConcurrencyLimit limit(int initialLimit, int queueSize, Duration maxWait) {
+        return new AdaptiveConcurrencyLimit("read", initialLimit, 1, 10, Duration.ofMillis(100), 0.5, queueSize,
+                maxWait);
+    }
+}
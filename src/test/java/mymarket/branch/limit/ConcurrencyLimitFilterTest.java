@@ -0,0 +1,165 @@
+package mymarket.branch.limit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+public class ConcurrencyLimitFilterTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final AdaptiveConcurrencyLimit readLimit = limit("read");
+
+    private final AdaptiveConcurrencyLimit writeLimit = limit("write");
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new StubController())
+                .addFilters(new ConcurrencyLimitFilter(readLimit, writeLimit, Duration.ofSeconds(3), objectMapper))
+                .build();
+    }
+
+    @Test
+    public void doFilter_SlotFree_PassedAndReleased() throws Exception {
+        //when
+        MockHttpServletResponse response = perform(get("/branches/1"));
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(readLimit.getInFlight()).isZero();
+    }
+
+    @Test
+    public void doFilter_ReadLimitFull_ServiceUnavailableWithRetryAfter() throws Exception {
+        //given
+        exhaust(readLimit);
+
+        //when
+        MockHttpServletResponse response = perform(get("/branches/1"));
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+        assertThat(response.getContentType()).isEqualTo(MediaType.APPLICATION_JSON_VALUE);
+        JsonNode body = objectMapper.readTree(response.getContentAsByteArray());
+        assertThat(body.get("statusCode").asInt()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        assertThat(body.get("message").asText()).isEqualTo("Too many concurrent read requests, retry later.");
+        assertThat(body.get("description").asText()).isEqualTo("uri=/branches/1");
+        assertThat(readLimit.getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    public void doFilter_ReadLimitFull_LookupShedAndWritePassed() throws Exception {
+        //given
+        exhaust(readLimit);
+
+        //when
+        MockHttpServletResponse lookup = perform(post(ConcurrencyLimitFilter.LOOKUP_PATH));
+        MockHttpServletResponse save = perform(post("/branches"));
+
+        //then
+        assertThat(lookup.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        assertThat(save.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(writeLimit.getRejected()).isZero();
+    }
+
+    @Test
+    public void doFilter_WriteLimitFull_WriteShedAndReadPassed() throws Exception {
+        //given
+        exhaust(writeLimit);
+
+        //when
+        MockHttpServletResponse save = perform(post("/branches"));
+        MockHttpServletResponse read = perform(get("/branches/1"));
+
+        //then
+        assertThat(save.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        assertThat(objectMapper.readTree(save.getContentAsByteArray()).get("message").asText())
+                .isEqualTo("Too many concurrent write requests, retry later.");
+        assertThat(read.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    public void doFilter_BothLimitsFull_StreamsNotLimited() throws Exception {
+        //given
+        exhaust(readLimit);
+        exhaust(writeLimit);
+
+        //when
+        MockHttpServletResponse importing = perform(post(ConcurrencyLimitFilter.IMPORT_PATH));
+        MockHttpServletResponse export = perform(get(ConcurrencyLimitFilter.EXPORT_PATH));
+        MockHttpServletResponse changes = perform(get(ConcurrencyLimitFilter.CHANGES_PATH));
+
+        //then
+        assertThat(importing.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(export.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(changes.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(readLimit.getRejected()).isZero();
+        assertThat(writeLimit.getRejected()).isZero();
+    }
+
+    @Test
+    public void doFilter_ServerError_CountedAsDropped() throws Exception {
+        //when
+        MockHttpServletResponse response = perform(get("/branches/failing"));
+
+        //then
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR.value());
+        assertThat(readLimit.getLimit()).isEqualTo(1);
+        assertThat(readLimit.getInFlight()).isZero();
+    }
+
+    private MockHttpServletResponse perform(RequestBuilder request) throws Exception {
+        return mockMvc.perform(request).andReturn().getResponse();
+    }
+
+    private static void exhaust(AdaptiveConcurrencyLimit limit) throws InterruptedException {
+        for (int i = 0; i < limit.getLimit(); i++) {
+            limit.acquire();
+        }
+    }
+
+    private static AdaptiveConcurrencyLimit limit(String name) {
+        return new AdaptiveConcurrencyLimit(name, 2, 1, 2, Duration.ofSeconds(5), 0.5, 0, Duration.ZERO);
+    }
+
+    @RestController
+    static class StubController {
+
+        @GetMapping("/branches/failing")
+        public ResponseEntity<Void> failing() {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
+        @GetMapping({"/branches/{id}", "/branches/export", "/branches/changes"})
+        public String read() {
+            return "ok";
+        }
+
+        @PostMapping({"/branches", "/branches/lookup", "/branches/import"})
+        public String write() {
+            return "ok";
+        }
+    }
+}
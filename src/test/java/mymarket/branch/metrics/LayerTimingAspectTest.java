@@ -0,0 +1,89 @@
+package mymarket.branch.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.config.BranchDataSourceProperties;
+import mymarket.branch.datasource.ReplicaReads;
+import mymarket.branch.index.BranchGeoIndex;
+import mymarket.branch.repository.BranchRepository;
+import mymarket.branch.service.BranchService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+
+import static com.googlecode.catchexception.apis.BDDCatchException.caughtException;
+import static com.googlecode.catchexception.apis.BDDCatchException.when;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class LayerTimingAspectTest {
+
+    @Mock
+    private BranchRepository branchRepository;
+
+    @Mock
+    private BranchGeoIndex branchGeoIndex;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BranchService branchService;
+    private BranchRepository timedRepository;
+
+    @BeforeEach
+    void setUp() {
+        LayerTimingAspect aspect = new LayerTimingAspect(meterRegistry);
+
+        AspectJProxyFactory repositoryProxy = new AspectJProxyFactory(branchRepository);
+        repositoryProxy.addInterface(BranchRepository.class);
+        repositoryProxy.addAspect(aspect);
+        timedRepository = repositoryProxy.getProxy();
+
+        AspectJProxyFactory serviceProxy = new AspectJProxyFactory(
+                new BranchService(timedRepository, branchGeoIndex, null, null,
+                        new ReplicaReads(new BranchDataSourceProperties()), eventPublisher, cacheManager, null));
+        serviceProxy.setProxyTargetClass(true);
+        serviceProxy.addAspect(aspect);
+        branchService = serviceProxy.getProxy();
+    }
+
+    @Test
+    public void getByUserId_ExpectedValues_ServiceAndRepositoryTimed() {
+        //given
+        given(branchRepository.getByUserId(1L)).willReturn(List.of());
+
+        //when
+        branchService.getByUserId(1L);
+
+        //then
+        assertThat(meterRegistry.get(LayerTimingAspect.SERVICE_TIMER).tag("method", "getByUserId")
+                .tag("exception", "none").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(LayerTimingAspect.REPOSITORY_TIMER).tag("method", "getByUserId")
+                .tag("exception", "none").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void getPageByUserId_InvalidLimit_TimedWithException() {
+        //when
+        when(() -> branchService.getPageByUserId(1L, null, 0));
+
+        //then
+        then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        assertThat(meterRegistry.get(LayerTimingAspect.SERVICE_TIMER).tag("method", "getPageByUserId")
+                .tag("exception", "IllegalArgumentException").timer().count()).isEqualTo(1);
+    }
+}
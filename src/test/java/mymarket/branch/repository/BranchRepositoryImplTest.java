@@ -0,0 +1,296 @@
+package mymarket.branch.repository;
+
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.model.BranchOffers;
+import mymarket.branch.model.IdempotencyRecord;
+import mymarket.branch.model.Offer;
+import mymarket.branch.model.UpsertResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BranchRepositoryImplTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    private BranchRepositoryImpl branchRepository;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("branches;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+                .addScript("file:schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("INSERT INTO users (email) VALUES ('owner@mymarket.com')");
+        branchRepository = new BranchRepositoryImpl(jdbcTemplate, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void constructor_NonPositiveChunkSize_Rejected() {
+        assertThatThrownBy(() -> new BranchRepositoryImpl(jdbcTemplate, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("branch.bulk-insert.chunk-size");
+    }
+
+    @Test
+    public void insertAll_SeveralChunks_IdsAssignedInOrder() {
+        //given
+        List<Branch> branches = IntStream.range(0, 5)
+                .mapToObj(i -> Branch.builder().name("Branch " + i).userId(1L).address("Colon " + i)
+                        .city("Mar del Plata").latitude("-38.0" + i).longitude("-57.5" + i).build())
+                .collect(Collectors.toList());
+
+        //when
+        List<Branch> inserted = branchRepository.insertAll(branches);
+
+        //then
+        assertThat(inserted).extracting(Branch::getId).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(jdbcTemplate.queryForList("SELECT name FROM branches ORDER BY id", String.class))
+                .containsExactly("Branch 0", "Branch 1", "Branch 2", "Branch 3", "Branch 4");
+    }
+
+    @Test
+    public void upsertAll_NewAndExistingNaturalKeys_InsertedOrUpdated() {
+        //given
+        branchRepository.insertAll(List.of(
+                Branch.builder().name("Centro").userId(1L).address("Colon 1").city("Batán").build(),
+                Branch.builder().name("Puerto").userId(1L).address("Colon 2").city("Batán").build()));
+        List<Branch> upserted = List.of(
+                Branch.builder().name("Puerto").userId(1L).address("Martinez de Hoz 1").city("Batán").build(),
+                Branch.builder().name("Ruta").userId(1L).address("Ruta 88").city("Batán").latitude("-38.1").build(),
+                Branch.builder().name("Sur").userId(1L).address("Ruta 11").city("Batán").build());
+
+        //when
+        List<Branch> locked = branchRepository.lockAllByNaturalKey(upserted);
+        branchRepository.upsertAll(upserted);
+        List<Branch> found = branchRepository.findAllByNaturalKey(upserted);
+
+        //then
+        assertThat(locked).extracting(Branch::getId).containsExactly(2L);
+        assertThat(found).extracting(Branch::getName).containsExactlyInAnyOrder("Puerto", "Ruta", "Sur");
+        assertThat(found).filteredOn(branch -> branch.getName().equals("Puerto")).singleElement()
+                .satisfies(branch -> {
+                    assertThat(branch.getId()).isEqualTo(2L);
+                    assertThat(branch.getAddress()).isEqualTo("Martinez de Hoz 1");
+                    assertThat(branch.getVersion()).isEqualTo(1L);
+                });
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM branches", Integer.class)).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForObject("SELECT latitude FROM branches WHERE name = 'Ruta'", String.class))
+                .isEqualTo("-38.1");
+    }
+
+    @Test
+    public void claimIdempotencyKey_ClaimedCompletedAndReclaimed_ReadBack() {
+        //when
+        boolean first = branchRepository.claimIdempotencyKey("retry-1", "a".repeat(64));
+        Optional<IdempotencyRecord> inProgress = branchRepository.findIdempotencyKey("retry-1");
+        branchRepository.completeIdempotencyKey("retry-1", new UpsertResult(1, 2, 3));
+        boolean second = branchRepository.claimIdempotencyKey("retry-1", "a".repeat(64));
+
+        //then
+        assertThat(first).isTrue();
+        assertThat(inProgress).contains(new IdempotencyRecord("a".repeat(64), null));
+        assertThat(second).isFalse();
+        assertThat(branchRepository.findIdempotencyKey("retry-1"))
+                .contains(new IdempotencyRecord("a".repeat(64), new UpsertResult(1, 2, 3)));
+        assertThat(branchRepository.findIdempotencyKey("retry-2")).isEmpty();
+    }
+
+    @Test
+    public void releaseIdempotencyKey_InProgressOrCompleted_OnlyInProgressDropped() {
+        //given
+        branchRepository.claimIdempotencyKey("failed", "a".repeat(64));
+        branchRepository.claimIdempotencyKey("done", "a".repeat(64));
+        branchRepository.completeIdempotencyKey("done", new UpsertResult(1, 0, 0));
+
+        //when
+        branchRepository.releaseIdempotencyKey("failed");
+        branchRepository.releaseIdempotencyKey("done");
+
+        //then
+        assertThat(branchRepository.findIdempotencyKey("failed")).isEmpty();
+        assertThat(branchRepository.findIdempotencyKey("done")).isPresent();
+        assertThat(branchRepository.claimIdempotencyKey("failed", "b".repeat(64))).isTrue();
+    }
+
+    @Test
+    public void claimIdempotencyKey_AbandonedClaim_TakenOver() {
+        //given
+        branchRepository.claimIdempotencyKey("abandoned", "a".repeat(64));
+        branchRepository.claimIdempotencyKey("running", "a".repeat(64));
+        branchRepository.claimIdempotencyKey("old-but-done", "a".repeat(64));
+        branchRepository.completeIdempotencyKey("old-but-done", new UpsertResult(1, 0, 0));
+        jdbcTemplate.update("UPDATE branch_idempotency_keys SET created_at = TIMESTAMPADD(SECOND, ?, " +
+                "CURRENT_TIMESTAMP) WHERE idempotency_key <> 'running'",
+                -BranchRepositoryImpl.CLAIM_TIMEOUT.getSeconds() - 60);
+
+        //when
+        boolean abandoned = branchRepository.claimIdempotencyKey("abandoned", "b".repeat(64));
+        boolean running = branchRepository.claimIdempotencyKey("running", "b".repeat(64));
+        boolean done = branchRepository.claimIdempotencyKey("old-but-done", "b".repeat(64));
+
+        //then
+        assertThat(abandoned).isTrue();
+        assertThat(running).isFalse();
+        assertThat(done).isFalse();
+        assertThat(branchRepository.findIdempotencyKey("abandoned"))
+                .contains(new IdempotencyRecord("b".repeat(64), null));
+        assertThat(branchRepository.findIdempotencyKey("old-but-done"))
+                .contains(new IdempotencyRecord("a".repeat(64), new UpsertResult(1, 0, 0)));
+    }
+
+    @Test
+    public void findPage_ByUser_KeysetOrder() {
+        //given
+        jdbcTemplate.update("INSERT INTO users (email) VALUES ('other@mymarket.com')");
+        branchRepository.insertAll(IntStream.range(0, 6)
+                .mapToObj(i -> Branch.builder().name("Branch " + i).userId(1L + i % 2).address("Colon " + i)
+                        .city("Mar del Plata").build())
+                .collect(Collectors.toList()));
+
+        //when
+        List<Branch> firstPage = branchRepository.findPage(1L, 0, 2);
+        List<Branch> lastPage = branchRepository.findPage(1L, firstPage.get(1).getId(), 2);
+        List<Branch> allUsers = branchRepository.findPage(null, 2, 10);
+
+        //then
+        assertThat(firstPage).extracting(Branch::getId).containsExactly(1L, 3L);
+        assertThat(firstPage.get(0).getName()).isEqualTo("Branch 0");
+        assertThat(lastPage).extracting(Branch::getId).containsExactly(5L);
+        assertThat(allUsers).extracting(Branch::getId).containsExactly(3L, 4L, 5L, 6L);
+    }
+
+    @Test
+    public void incrementUserVersions_NewAndExistingRows_Bumped() {
+        //when
+        branchRepository.incrementUserVersions(List.of(1L));
+        branchRepository.incrementUserVersions(List.of(2L, 1L));
+
+        //then
+        assertThat(branchRepository.findUserVersion(1L)).isEqualTo(2L);
+        assertThat(branchRepository.findUserVersion(2L)).isEqualTo(1L);
+        assertThat(branchRepository.findUserVersion(3L)).isZero();
+    }
+
+    @Test
+    public void countByCityAndUser_ExpectedValues_Grouped() {
+        //given
+        jdbcTemplate.update("INSERT INTO users (email) VALUES ('other@mymarket.com')");
+        branchRepository.insertAll(List.of(
+                Branch.builder().name("Centro").userId(1L).address("Colon 1").city("Batán").build(),
+                Branch.builder().name("Puerto").userId(1L).address("Colon 2").city("Batán").build(),
+                Branch.builder().name("Ruta").userId(2L).address("Ruta 88").city("Batan").build()));
+
+        //when
+        Map<String, Long> byCity = branchRepository.countByCity();
+        Map<Long, Long> byUser = branchRepository.countByUser();
+
+        //then
+        assertThat(byCity).isEqualTo(Map.of("Batán", 2L, "Batan", 1L));
+        assertThat(byUser).isEqualTo(Map.of(1L, 2L, 2L, 1L));
+    }
+
+    @Test
+    public void appendChanges_CreatedUpdatedDeleted_ReadBackInOrder() {
+        //given
+        Branch created = Branch.builder().id(7L).name("Centro").userId(1L).address("Colon 1").city("Batán")
+                .latitude("-37.9").build();
+        Branch updated = created.toBuilder().name("Centro 2").version(1L).build();
+
+        //when
+        branchRepository.appendChanges(List.of(BranchChange.created(created), BranchChange.updated(created, updated)));
+        branchRepository.appendChanges(List.of(BranchChange.deleted(updated)));
+        List<BranchChangeEntry> all = branchRepository.findChangesAfter(0, 10);
+        List<BranchChangeEntry> afterFirst = branchRepository.findChangesAfter(1, 1);
+
+        //then
+        assertThat(all).extracting(BranchChangeEntry::getId).containsExactly(1L, 2L, 3L);
+        assertThat(all).extracting(BranchChangeEntry::getType).containsExactly(BranchChangeEntry.Type.CREATED,
+                BranchChangeEntry.Type.UPDATED, BranchChangeEntry.Type.DELETED);
+        assertThat(all).extracting(BranchChangeEntry::getBranch).containsExactly(created, updated, updated);
+        assertThat(all.get(0).getChangedAt()).isNotNull();
+        assertThat(afterFirst).extracting(BranchChangeEntry::getId).containsExactly(2L);
+        assertThat(branchRepository.findLastChangeId()).isEqualTo(3L);
+    }
+
+    @Test
+    public void findChangesByIds_SomeMissing_ExistingInIdOrder() {
+        //given
+        Branch created = Branch.builder().id(1L).name("Centro").userId(1L).address("Colon 1").city("Mar del Plata")
+                .latitude("-38.0").longitude("-57.5").version(0L).build();
+        branchRepository.appendChanges(List.of(BranchChange.created(created), BranchChange.deleted(created)));
+
+        //when
+        List<BranchChangeEntry> found = branchRepository.findChangesByIds(List.of(5L, 2L, 1L));
+
+        //then
+        assertThat(found).extracting(BranchChangeEntry::getId).containsExactly(1L, 2L);
+        assertThat(branchRepository.findChangesByIds(List.of())).isEmpty();
+    }
+
+    @Test
+    public void findLastChangeId_EmptyOutbox_Zero() {
+        assertThat(branchRepository.findLastChangeId()).isZero();
+    }
+
+    @Test
+    public void findWithOffers_ExpiredUnavailableAndDuplicateLinks_OnlyLiveOffersOnce() {
+        //given
+        LocalDateTime now = LocalDateTime.of(2021, 3, 10, 12, 0);
+        jdbcTemplate.update("INSERT INTO users (email) VALUES ('other@mymarket.com')");
+        branchRepository.insertAll(List.of(
+                Branch.builder().name("Centro").userId(1L).address("Colon 1").city("Batán").build(),
+                Branch.builder().name("Puerto").userId(1L).address("Colon 2").city("Batán").build(),
+                Branch.builder().name("Ruta").userId(2L).address("Ruta 88").city("Batan").build()));
+        jdbcTemplate.update("INSERT INTO products (name, image) VALUES ('Yerba', 'yerba.png')");
+        String offer = "INSERT INTO offers (product_id, price, offer_type, from_date, to_date, available, old_price, " +
+                "offer_description) VALUES (1, ?, 'discount', ?, ?, ?, 100, ?)";
+        jdbcTemplate.update(offer, 80, now.minusDays(1), now.plusDays(1), true, "current");
+        jdbcTemplate.update(offer, 70, now.plusDays(1), null, true, "upcoming");
+        jdbcTemplate.update(offer, 60, now.minusDays(2), now.minusDays(1), true, "ended");
+        jdbcTemplate.update(offer, 50, null, null, false, "withdrawn");
+        jdbcTemplate.batchUpdate("INSERT INTO branches_x_offers (branch_id, offer_id) VALUES (?, ?)", List.of(
+                new Object[]{1, 1}, new Object[]{1, 1}, new Object[]{1, 2}, new Object[]{1, 3}, new Object[]{1, 4},
+                new Object[]{2, 3}, new Object[]{3, 1}));
+
+        //when
+        List<BranchOffers> byId = branchRepository.findWithOffersById(1L, now);
+        List<BranchOffers> byUser = branchRepository.findWithOffersByUserId(1L, now);
+
+        //then
+        assertThat(byId).hasSize(1);
+        assertThat(byId.get(0).getBranch().getName()).isEqualTo("Centro");
+        assertThat(byId.get(0).getOffers()).extracting(Offer::getDescription).containsExactly("current", "upcoming");
+        assertThat(byId.get(0).getOffers().get(0)).isEqualTo(Offer.builder().id(1L).productId(1L).price(80f)
+                .oldPrice(100f).offerType("discount").description("current").fromDate(now.minusDays(1))
+                .toDate(now.plusDays(1)).build());
+        assertThat(byUser).extracting(branchOffers -> branchOffers.getBranch().getName())
+                .containsExactly("Centro", "Puerto");
+        assertThat(byUser.get(1).getOffers()).isEmpty();
+        assertThat(branchRepository.findWithOffersById(9L, now)).isEmpty();
+    }
+}
@@ -0,0 +1,183 @@
+package mymarket.branch.repository;
+
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.model.Branch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReactiveBranchRepositoryTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    private ReactiveBranchRepository branchRepository;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("reactive;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+                .addScript("file:schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.update("INSERT INTO users (email) VALUES ('owner@mymarket.com'), ('other@mymarket.com')");
+        jdbcTemplate.update("INSERT INTO branches (name, user_id, address, city, latitude, longitude) VALUES " +
+                "('Olavarria 560', 1, '3460, Avenida Vertiz', 'Mar del Plata', '-38.0', '-57.5'), " +
+                "('Corrientes 1500', 1, '4776, Lavalle', 'Mar del Plata', NULL, NULL), " +
+                "('Rivadavia 2300', 2, '2300, Rivadavia', 'Mar del Plata', NULL, NULL), " +
+                "('Guemes 3000', 1, '3000, Guemes', 'Mar del Plata', NULL, NULL)");
+
+        H2ConnectionFactory connectionFactory = new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+                .url("mem:reactive;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+                .username("sa")
+                .build());
+        branchRepository = new ReactiveBranchRepository(DatabaseClient.create(connectionFactory));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void findById_Existing_MapsColumns() {
+        StepVerifier.create(branchRepository.findById(1L))
+                .expectNext(Branch.builder().id(1L).name("Olavarria 560").userId(1L).address("3460, Avenida Vertiz")
+                        .city("Mar del Plata").latitude("-38.0").longitude("-57.5").build())
+                .verifyComplete();
+    }
+
+    @Test
+    public void findById_Nonexistent_Empty() {
+        StepVerifier.create(branchRepository.findById(99L))
+                .verifyComplete();
+    }
+
+    @Test
+    public void lockById_Existing_RowRead() {
+        StepVerifier.create(branchRepository.lockById(1L).map(Branch::getName))
+                .expectNext("Olavarria 560")
+                .verifyComplete();
+        StepVerifier.create(branchRepository.lockById(99L))
+                .verifyComplete();
+    }
+
+    @Test
+    public void findAllById_SeveralIds_OnlyExistingRows() {
+        StepVerifier.create(branchRepository.findAllById(List.of(2L, 3L, 99L)).map(Branch::getId).collectList())
+                .expectNextMatches(ids -> ids.size() == 2 && ids.containsAll(List.of(2L, 3L)))
+                .verifyComplete();
+    }
+
+    @Test
+    public void findByUserId_SeveralBranches_StreamedInIdOrder() {
+        StepVerifier.create(branchRepository.findByUserId(1L).map(Branch::getId))
+                .expectNext(1L, 2L, 4L)
+                .verifyComplete();
+    }
+
+    @Test
+    public void existsByUserId_WithAndWithoutBranches() {
+        StepVerifier.create(branchRepository.existsByUserId(2L))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(branchRepository.existsByUserId(3L))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    public void findPage_AfterFirstRow_KeysetOrder() {
+        StepVerifier.create(branchRepository.findPage(1L, 1L, 1).map(Branch::getId))
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    public void insert_NullCoordinates_GeneratedIdReturned() {
+        Branch branch = Branch.builder().name("Alem 100").userId(2L).address("100, Alem").city("Mar del Plata").build();
+
+        StepVerifier.create(branchRepository.insert(branch))
+                .expectNext(branch.toBuilder().id(5L).build())
+                .verifyComplete();
+        StepVerifier.create(branchRepository.findById(5L).map(Branch::getName))
+                .expectNext("Alem 100")
+                .verifyComplete();
+    }
+
+    @Test
+    public void update_Existing_RowChanged() {
+        Branch branch = Branch.builder().id(2L).name("Corrientes 1600").userId(1L).address("4776, Lavalle")
+                .city("Mar del Plata").latitude("-38.1").longitude("-57.6").build();
+
+        StepVerifier.create(branchRepository.update(branch))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(branchRepository.findById(2L))
+                .expectNext(branch.toBuilder().version(1L).build())
+                .verifyComplete();
+        StepVerifier.create(branchRepository.findVersionById(2L))
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    public void incrementUserVersions_NewAndExistingRows_Bumped() {
+        StepVerifier.create(branchRepository.incrementUserVersions(List.of(1L)))
+                .verifyComplete();
+        StepVerifier.create(branchRepository.incrementUserVersions(List.of(2L, 1L)))
+                .verifyComplete();
+
+        StepVerifier.create(branchRepository.findUserVersion(1L))
+                .expectNext(2L)
+                .verifyComplete();
+        StepVerifier.create(branchRepository.findUserVersion(2L))
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(branchRepository.findUserVersion(3L))
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    @Test
+    public void appendChanges_UpdatedAndDeleted_RowsInOrder() {
+        //given
+        Branch before = Branch.builder().id(4L).name("Guemes 3000").userId(1L).address("3000, Guemes")
+                .city("Mar del Plata").build();
+        Branch after = before.toBuilder().name("Guemes 3100").version(1L).build();
+
+        //when
+        StepVerifier.create(branchRepository.appendChanges(List.of(BranchChange.updated(before, after),
+                BranchChange.deleted(after))))
+                .verifyComplete();
+
+        //then
+        assertThat(jdbcTemplate.queryForList("SELECT change_type FROM branch_outbox ORDER BY id", String.class))
+                .containsExactly("UPDATED", "DELETED");
+        assertThat(jdbcTemplate.queryForList("SELECT name FROM branch_outbox ORDER BY id", String.class))
+                .containsExactly("Guemes 3100", "Guemes 3100");
+    }
+
+    @Test
+    public void deleteById_Existing_RowRemoved() {
+        StepVerifier.create(branchRepository.deleteById(3L))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(branchRepository.existsByUserId(2L))
+                .expectNext(false)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,241 @@
+package mymarket.branch.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mymarket.branch.config.BranchChangesProperties;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchChangeEntry;
+import mymarket.branch.repository.BranchRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+@ExtendWith(MockitoExtension.class)
+public class BranchChangeFeedTest {
+
+    @Mock
+    private BranchRepository branchRepository;
+
+    private final BranchChangesProperties properties = new BranchChangesProperties();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BlockingQueue<List<BranchChangeEntry>> received = new LinkedBlockingQueue<>();
+
+    private BranchChangeFeed branchChangeFeed;
+
+    @BeforeEach
+    void setUp() {
+        properties.setBatchSize(10);
+        properties.setHeartbeatInterval(Duration.ofHours(1));
+        branchChangeFeed = new BranchChangeFeed(branchRepository, properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        branchChangeFeed.close();
+    }
+
+    @Test
+    public void relay_NewSubscriber_OnlyLaterChanges() throws InterruptedException {
+        //given
+        given(branchRepository.findLastChangeId()).willReturn(2L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1, 2));
+        given(branchRepository.findChangesAfter(2L, 10)).willReturn(entries(3, 4));
+        branchChangeFeed.subscribe(null, received::add);
+
+        //when
+        branchChangeFeed.relay();
+
+        //then
+        assertThat(ids(received.poll(5, TimeUnit.SECONDS))).containsExactly(3L, 4L);
+        assertThat(branchChangeFeed.getSubscriberCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void relay_SinceBeforeBuffer_CaughtUpFromTable() throws InterruptedException {
+        //given
+        given(branchRepository.findLastChangeId()).willReturn(2L);
+        given(branchRepository.findChangesAfter(2L, 10)).willReturn(entries(3));
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1, 2, 3, 4));
+        branchChangeFeed.subscribe(0L, received::add);
+
+        //when
+        branchChangeFeed.relay();
+
+        //then
+        // 4 committed after the relay read the table, so it waits for the next run.
+        assertThat(ids(received.poll(5, TimeUnit.SECONDS))).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    public void advance_MissingId_NotWaitedFor() {
+        //given
+        given(branchRepository.findLastChangeId()).willReturn(0L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1, 3));
+        given(branchRepository.findChangesByIds(Set.of(2L))).willReturn(List.of());
+        given(branchRepository.findChangesAfter(3L, 10)).willReturn(entries(4));
+
+        //when
+        long first = branchChangeFeed.advance();
+        long second = branchChangeFeed.advance();
+
+        //then
+        assertThat(first).isEqualTo(3L);
+        assertThat(second).isEqualTo(4L);
+        assertThat(meterRegistry.counter(BranchChangeFeed.SKIPPED_COUNTER).count()).isZero();
+    }
+
+    @Test
+    public void advance_MissingIdNotCommittedWithinGapTimeout_GivenUp() throws InterruptedException {
+        //given
+        properties.setGapTimeout(Duration.ZERO);
+        given(branchRepository.findLastChangeId()).willReturn(0L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1, 3));
+        given(branchRepository.findChangesAfter(3L, 10)).willReturn(List.of());
+        branchChangeFeed.advance();
+        Thread.sleep(5);
+
+        //when
+        branchChangeFeed.advance();
+
+        //then
+        then(branchRepository).should(never()).findChangesByIds(anyCollection());
+        assertThat(meterRegistry.counter(BranchChangeFeed.SKIPPED_COUNTER).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void relay_MissingIdCommitsLate_SentOutOfOrder() throws InterruptedException {
+        //given
+        given(branchRepository.findLastChangeId()).willReturn(0L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1, 3));
+        given(branchRepository.findChangesByIds(Set.of(2L))).willReturn(List.of()).willReturn(entries(2));
+        given(branchRepository.findChangesAfter(3L, 10)).willReturn(List.of());
+        branchChangeFeed.subscribe(0L, received::add);
+        branchChangeFeed.relay();
+        assertThat(ids(received.poll(5, TimeUnit.SECONDS))).containsExactly(1L, 3L);
+        Thread.sleep(50);
+
+        //when
+        branchChangeFeed.relay();
+        branchChangeFeed.relay();
+
+        //then
+        assertThat(ids(received.poll(5, TimeUnit.SECONDS))).containsExactly(2L);
+        assertThat(meterRegistry.counter(BranchChangeFeed.LATE_COUNTER).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void relay_IdBelowLastUncommittedAtStartup_SentLate() throws InterruptedException {
+        //given
+        given(branchRepository.findLastChangeId()).willReturn(4L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1, 2, 4));
+        given(branchRepository.findChangesByIds(Set.of(3L))).willReturn(entries(3));
+        given(branchRepository.findChangesAfter(4L, 10)).willReturn(List.of());
+        branchChangeFeed.subscribe(null, received::add);
+
+        //when
+        branchChangeFeed.relay();
+
+        //then
+        assertThat(ids(received.poll(5, TimeUnit.SECONDS))).containsExactly(3L);
+        assertThat(meterRegistry.counter(BranchChangeFeed.LATE_COUNTER).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void relay_OffsetEvictedFromBuffer_ReadFromTable() throws InterruptedException {
+        //given
+        properties.setBufferSize(2);
+        given(branchRepository.findLastChangeId()).willReturn(0L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1, 2, 3, 4));
+        branchChangeFeed.advance();
+        given(branchRepository.findChangesAfter(4L, 10)).willReturn(List.of());
+        given(branchRepository.findChangesAfter(1L, 10)).willReturn(entries(2, 3, 4));
+        branchChangeFeed.subscribe(3L, received::add);
+        branchChangeFeed.subscribe(1L, received::add);
+
+        //when
+        branchChangeFeed.relay();
+
+        //then
+        List<List<Long>> batches = List.of(ids(received.poll(5, TimeUnit.SECONDS)), ids(received.poll(5, TimeUnit.SECONDS)));
+        assertThat(batches).containsExactlyInAnyOrder(List.of(4L), List.of(2L, 3L, 4L));
+        then(branchRepository).should(never()).findChangesAfter(3L, 10);
+    }
+
+    @Test
+    public void relay_IdleSubscriber_Heartbeat() throws InterruptedException {
+        //given
+        properties.setHeartbeatInterval(Duration.ZERO);
+        given(branchRepository.findLastChangeId()).willReturn(5L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1, 2, 3, 4, 5));
+        given(branchRepository.findChangesAfter(5L, 10)).willReturn(List.of());
+        branchChangeFeed.subscribe(null, received::add);
+
+        //when
+        Thread.sleep(5);
+        branchChangeFeed.relay();
+
+        //then
+        assertThat(received.poll(5, TimeUnit.SECONDS)).isEmpty();
+    }
+
+    @Test
+    public void relay_ClientGone_Unsubscribed() throws InterruptedException {
+        //given
+        given(branchRepository.findLastChangeId()).willReturn(0L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1));
+        branchChangeFeed.subscribe(null, entries -> !received.add(entries));
+
+        //when
+        branchChangeFeed.relay();
+
+        //then
+        assertThat(received.poll(5, TimeUnit.SECONDS)).hasSize(1);
+        Thread.sleep(50);
+        assertThat(branchChangeFeed.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    public void subscribe_Cancelled_NothingSent() {
+        //given
+        given(branchRepository.findLastChangeId()).willReturn(0L);
+        given(branchRepository.findChangesAfter(0L, 10)).willReturn(entries(1));
+
+        //when
+        branchChangeFeed.subscribe(null, received::add).cancel();
+        branchChangeFeed.relay();
+
+        //then
+        assertThat(branchChangeFeed.getSubscriberCount()).isZero();
+        assertThat(received).isEmpty();
+    }
+
+    private static List<BranchChangeEntry> entries(long... ids) {
+        return LongStream.of(ids)
+                .mapToObj(id -> new BranchChangeEntry(id, BranchChangeEntry.Type.UPDATED,
+                        Branch.builder().id(id).userId(1L).build(), Instant.EPOCH))
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<BranchChangeEntry> entries) {
+        return entries.stream().map(BranchChangeEntry::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,92 @@
+package mymarket.branch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.ExportFormat;
+import mymarket.branch.repository.BranchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BranchExportServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private BranchRepository branchRepository;
+
+    private BranchExportService branchExportService;
+
+    private Branch branch1, branch2, branch3;
+
+    @BeforeEach
+    void setUp() {
+        branchExportService = new BranchExportService(branchRepository, objectMapper, 2);
+
+        branch1 = Branch.builder().id(1L).name("Olavarria 560").userId(1L)
+                .address("3460, Avenida Vertiz").city("Mar del Plata").build();
+        branch2 = Branch.builder().id(2L).name("Corrientes 1500").userId(1L)
+                .address("4776, Lavalle").city("Mar del Plata").latitude("-38.0").longitude("-57.5").build();
+        branch3 = Branch.builder().id(5L).name("El \"Puerto\"").userId(1L)
+                .address("Juan B. Justo 100").city("Mar del Plata").build();
+    }
+
+    @Test
+    public void export_Ndjson_PagesByLastId() throws Exception {
+        //given
+        given(branchRepository.findPage(1L, 0, 2)).willReturn(List.of(branch1, branch2));
+        given(branchRepository.findPage(1L, 2, 2)).willReturn(List.of(branch3));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        //when
+        branchExportService.export(1L, ExportFormat.NDJSON, output);
+
+        //then
+        then(branchRepository).should(times(2)).findPage(eq(1L), anyLong(), eq(2));
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(
+                objectMapper.writeValueAsString(branch1) + "\n" +
+                objectMapper.writeValueAsString(branch2) + "\n" +
+                objectMapper.writeValueAsString(branch3) + "\n");
+    }
+
+    @Test
+    public void export_Csv_EscapesFields() throws Exception {
+        //given
+        given(branchRepository.findPage(null, 0, 2)).willReturn(List.of(branch1, branch2));
+        given(branchRepository.findPage(null, 2, 2)).willReturn(List.of());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        //when
+        branchExportService.export(null, ExportFormat.CSV, output);
+
+        //then
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "id,name,user_id,address,city,latitude,longitude\n" +
+                "1,Olavarria 560,1,\"3460, Avenida Vertiz\",Mar del Plata,,\n" +
+                "2,Corrientes 1500,1,\"4776, Lavalle\",Mar del Plata,-38.0,-57.5\n");
+    }
+
+    @Test
+    public void export_CsvQuotes_Doubled() throws Exception {
+        //given
+        given(branchRepository.findPage(null, 0, 2)).willReturn(List.of(branch3));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        //when
+        branchExportService.export(null, ExportFormat.CSV, output);
+
+        //then
+        assertThat(output.toString(StandardCharsets.UTF_8))
+                .endsWith("5,\"El \"\"Puerto\"\"\",1,Juan B. Justo 100,Mar del Plata,,\n");
+    }
+}
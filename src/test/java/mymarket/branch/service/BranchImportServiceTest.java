@@ -0,0 +1,113 @@
+package mymarket.branch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.ImportChunkResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BranchImportServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private BranchService branchService;
+
+    private BranchImportService branchImportService;
+
+    private ByteArrayOutputStream progress;
+
+    @BeforeEach
+    void setUp() {
+        branchImportService = new BranchImportService(branchService, objectMapper, 2);
+        progress = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void importBranches_Ndjson_SavedInChunks() throws Exception {
+        //given
+        String body = "{\"name\":\"A\",\"userId\":1,\"address\":\"Colon 1\",\"city\":\"Mar del Plata\"}\n" +
+                "{\"id\":99,\"name\":\"B\",\"userId\":1,\"address\":\"Colon 2\",\"city\":\"Mar del Plata\"}\n" +
+                "{\"name\":\"C\",\"userId\":1,\"address\":\"Colon 3\",\"city\":\"Mar del Plata\"}\n";
+
+        //when
+        branchImportService.importBranches(asStream(body), progress);
+
+        //then
+        then(branchService).should().save(List.of(
+                Branch.builder().name("A").userId(1L).address("Colon 1").city("Mar del Plata").build(),
+                Branch.builder().name("B").userId(1L).address("Colon 2").city("Mar del Plata").build()));
+        then(branchService).should().save(List.of(
+                Branch.builder().name("C").userId(1L).address("Colon 3").city("Mar del Plata").build()));
+        assertThat(results()).containsExactly(
+                new ImportChunkResult(1, 1, 2, ImportChunkResult.Status.COMMITTED, null),
+                new ImportChunkResult(2, 3, 3, ImportChunkResult.Status.COMMITTED, null));
+    }
+
+    @Test
+    public void importBranches_JsonArrayWithFailingChunk_ReportsAndContinues() throws Exception {
+        //given
+        String body = "[{\"name\":\"A\"},{\"name\":\"B\"},{\"name\":\"C\"}]";
+        given(branchService.save(anyList()))
+                .willThrow(new DataIntegrityViolationException("Column 'user_id' cannot be null"))
+                .willReturn(List.of());
+
+        //when
+        branchImportService.importBranches(asStream(body), progress);
+
+        //then
+        then(branchService).should(times(2)).save(anyList());
+        assertThat(results()).containsExactly(
+                new ImportChunkResult(1, 1, 2, ImportChunkResult.Status.FAILED, "Column 'user_id' cannot be null"),
+                new ImportChunkResult(2, 3, 3, ImportChunkResult.Status.COMMITTED, null));
+    }
+
+    @Test
+    public void importBranches_MalformedRecord_SavesPreviousAndStops() throws Exception {
+        //given
+        String body = "{\"name\":\"A\"}\n{\"name\":\n{\"name\":\"C\"}\n";
+
+        //when
+        branchImportService.importBranches(asStream(body), progress);
+
+        //then
+        then(branchService).should().save(List.of(Branch.builder().name("A").build()));
+        List<ImportChunkResult> results = results();
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).getStatus()).isEqualTo(ImportChunkResult.Status.COMMITTED);
+        assertThat(results.get(1).getStatus()).isEqualTo(ImportChunkResult.Status.FAILED);
+        assertThat(results.get(1).getFirstRecord()).isEqualTo(2);
+    }
+
+    private static ByteArrayInputStream asStream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<ImportChunkResult> results() {
+        return Arrays.stream(progress.toString(StandardCharsets.UTF_8).split("\n"))
+                .map(line -> {
+                    try {
+                        return objectMapper.readValue(line, ImportChunkResult.class);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+}
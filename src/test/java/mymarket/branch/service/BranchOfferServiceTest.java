@@ -0,0 +1,91 @@
+package mymarket.branch.service;
+
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchOffers;
+import mymarket.branch.model.BranchOffersSnapshot;
+import mymarket.branch.model.Offer;
+import mymarket.branch.repository.BranchRepository;
+import mymarket.exception.commons.exception.NotFoundException;
+import org.assertj.core.api.BDDAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static com.googlecode.catchexception.apis.BDDCatchException.caughtException;
+import static com.googlecode.catchexception.apis.BDDCatchException.when;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class BranchOfferServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2021, 3, 10, 12, 0);
+
+    @Mock
+    private BranchRepository branchRepository;
+
+    private BranchOfferService branchOfferService;
+
+    private Branch branch1, branch2;
+
+    @BeforeEach
+    void setUp() {
+        branchOfferService = new BranchOfferService(branchRepository,
+                Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        branch1 = Branch.builder().id(1L).name("Olavarria 560").userId(1L).build();
+        branch2 = Branch.builder().id(2L).name("Corrientes 1500").userId(1L).build();
+    }
+
+    @Test
+    public void getByUserId_CurrentAndUpcomingOffers_OnlyCurrentUntilNextChange() {
+        //given
+        Offer open = Offer.builder().id(1L).build();
+        Offer endingSoon = Offer.builder().id(2L).fromDate(NOW.minusDays(1)).toDate(NOW.plusHours(5)).build();
+        Offer startingSooner = Offer.builder().id(3L).fromDate(NOW.plusHours(2)).toDate(NOW.plusDays(3)).build();
+        given(branchRepository.findWithOffersByUserId(1L, NOW)).willReturn(List.of(
+                new BranchOffers(branch1, List.of(open, endingSoon)),
+                new BranchOffers(branch2, List.of(startingSooner))));
+
+        //when
+        BranchOffersSnapshot snapshot = branchOfferService.getByUserId(1L);
+
+        //then
+        assertThat(snapshot.getBranches()).extracting(BranchOffers::getBranch).containsExactly(branch1, branch2);
+        assertThat(snapshot.getBranches().get(0).getOffers()).containsExactly(open, endingSoon);
+        assertThat(snapshot.getBranches().get(1).getOffers()).isEmpty();
+        assertThat(snapshot.getValidUntil()).isEqualTo(NOW.plusHours(2));
+    }
+
+    @Test
+    public void getById_OffersWithoutDates_NoExpiry() {
+        //given
+        Offer open = Offer.builder().id(1L).build();
+        given(branchRepository.findWithOffersById(1L, NOW)).willReturn(List.of(new BranchOffers(branch1, List.of(open))));
+
+        //when
+        BranchOffersSnapshot snapshot = branchOfferService.getById(1L);
+
+        //then
+        assertThat(snapshot.getBranches()).containsExactly(new BranchOffers(branch1, List.of(open)));
+        assertThat(snapshot.getValidUntil()).isNull();
+    }
+
+    @Test
+    public void getById_NonexistentId_BranchNotFoundException() {
+        //given
+        given(branchRepository.findWithOffersById(1L, NOW)).willReturn(List.of());
+
+        //when
+        when(() -> branchOfferService.getById(1L));
+
+        //then
+        BDDAssertions.then(caughtException()).isInstanceOf(NotFoundException.class);
+    }
+}
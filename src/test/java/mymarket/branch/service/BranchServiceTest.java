@@ -1,26 +1,53 @@
 package mymarket.branch.service;
 
+import mymarket.branch.datasource.ReplicaReads;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.exception.IdempotencyKeyInProgressException;
+import mymarket.branch.index.BranchCounters;
+import mymarket.branch.index.BranchGeoIndex;
+import mymarket.branch.index.BranchSearchIndex;
 import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchCluster;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.BranchViewport;
+import mymarket.branch.model.IdempotencyRecord;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.model.UpsertResult;
+import mymarket.branch.model.UserBranches;
 import mymarket.branch.repository.BranchRepository;
 import mymarket.exception.commons.exception.NotFoundException;
 import org.assertj.core.api.BDDAssertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static com.googlecode.catchexception.apis.BDDCatchException.caughtException;
 import static com.googlecode.catchexception.apis.BDDCatchException.when;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.*;
 
 
@@ -30,6 +57,27 @@ public class BranchServiceTest {
     @Mock
     private BranchRepository branchRepository;
 
+    @Mock
+    private BranchGeoIndex branchGeoIndex;
+
+    @Mock
+    private BranchSearchIndex branchSearchIndex;
+
+    @Mock
+    private BranchCounters branchCounters;
+
+    @Mock
+    private ReplicaReads replicaReads;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private BranchService branchService;
 
@@ -48,14 +96,15 @@ public class BranchServiceTest {
     @Test
     public void save_ExpectedValues_Ok() {
         //given
-        given(branchRepository.saveAll(branches)).willReturn(branches);
+        given(branchRepository.insertAll(branches)).willReturn(branches);
 
         //when
         List<Branch> branchList = branchService.save(branches);
 
         //then
-        then(branchRepository).should().saveAll(branches);
-
+        then(branchRepository).should().insertAll(branches);
+        then(branchRepository).should(never()).saveAll(anyList());
+        then(eventPublisher).should().publishEvent(any(BranchChangedEvent.class));
 
         assertThat(branchList).isNotNull();
         assertThat(branchList).isNotEmpty();
@@ -63,6 +112,224 @@ public class BranchServiceTest {
         assertThat(branchList).isEqualTo(branches);
     }
 
+    @Test
+    public void save_ExistingAndNewBranches_UpdatesAndInserts() {
+        //given
+        branch1.setId(1L);
+        Branch stored = branch1.toBuilder().name("Olavarria 561").build();
+        given(branchRepository.lockAllById(List.of(1L))).willReturn(List.of(stored));
+        given(branchRepository.saveAll(List.of(branch1))).willReturn(List.of(branch1));
+
+        //when
+        List<Branch> branchList = branchService.save(branches);
+
+        //then
+        then(branchRepository).should().insertAll(List.of(branch2));
+        then(branchRepository).should().saveAll(List.of(branch1));
+        assertThat(branchList).containsExactly(branch1, branch2);
+        assertThat(branch1.getVersion()).isEqualTo(stored.getVersion() + 1);
+        then(branchRepository).should().incrementUserVersions(Set.of(1L));
+        then(branchRepository).should().appendChanges(List.of(
+                BranchChange.updated(stored, branch1), BranchChange.created(branch2)));
+        then(eventPublisher).should().publishEvent(new BranchChangedEvent(List.of(
+                BranchChange.updated(stored, branch1), BranchChange.created(branch2))));
+    }
+
+    @Test
+    public void upsert_NewChangedAndSameBranches_CountedAndPublished() {
+        //given
+        Branch branch3 = Branch.builder().name("Guemes 3000").userId(1L).address("3000, Guemes")
+                .city("Mar del Plata").build();
+        List<Branch> upserted = List.of(branch1, branch2, branch3);
+        Branch stored2 = branch2.toBuilder().id(2L).address("4700, Lavalle").build();
+        Branch inserted1 = branch1.toBuilder().id(4L).build();
+        Branch updated2 = branch2.toBuilder().id(2L).version(1L).build();
+        Branch sameAs3 = branch3.toBuilder().id(3L).build();
+        given(branchRepository.lockAllByNaturalKey(upserted)).willReturn(List.of(stored2, sameAs3));
+        given(branchRepository.findAllByNaturalKey(List.of(branch1, branch2)))
+                .willReturn(List.of(updated2, inserted1));
+
+        //when
+        UpsertResult result = branchService.upsert(upserted, null);
+
+        //then
+        assertThat(result).isEqualTo(new UpsertResult(1, 1, 1));
+        then(branchRepository).should().upsertAll(List.of(branch1, branch2));
+        then(branchRepository).should().appendChanges(List.of(
+                BranchChange.updated(stored2, updated2), BranchChange.created(inserted1)));
+        then(eventPublisher).should().publishEvent(new BranchChangedEvent(List.of(
+                BranchChange.updated(stored2, updated2), BranchChange.created(inserted1))));
+        then(branchRepository).should(never()).claimIdempotencyKey(any(), any());
+    }
+
+    @Test
+    public void upsert_NothingChanged_NoWrites() {
+        //given
+        given(branchRepository.lockAllByNaturalKey(branches)).willReturn(List.of(
+                branch1.toBuilder().id(1L).build(), branch2.toBuilder().id(2L).build()));
+        given(branchRepository.claimIdempotencyKey(eq("retry-1"), anyString())).willReturn(true);
+
+        //when
+        UpsertResult result = branchService.upsert(branches, "retry-1");
+
+        //then
+        assertThat(result).isEqualTo(new UpsertResult(0, 0, 2));
+        then(branchRepository).should(never()).upsertAll(anyList());
+        then(eventPublisher).shouldHaveNoInteractions();
+        then(branchRepository).should().completeIdempotencyKey("retry-1", result);
+        then(branchRepository).should(never()).releaseIdempotencyKey(anyString());
+        // the claim commits on its own, before the upsert transaction
+        then(transactionTemplate).should().execute(any());
+    }
+
+    @Test
+    public void upsert_IdempotencyKeyAlreadyUsed_FirstResultReplayed() {
+        //given
+        String requestHash = BranchService.requestHash(branches);
+        given(branchRepository.claimIdempotencyKey("retry-1", requestHash)).willReturn(false);
+        given(branchRepository.findIdempotencyKey("retry-1"))
+                .willReturn(Optional.of(new IdempotencyRecord(requestHash, new UpsertResult(2, 0, 0))));
+
+        //when
+        UpsertResult result = branchService.upsert(branches, "retry-1");
+
+        //then
+        assertThat(result).isEqualTo(new UpsertResult(2, 0, 0));
+        then(branchRepository).should(never()).lockAllByNaturalKey(anyList());
+        then(branchRepository).should(never()).upsertAll(anyList());
+        then(eventPublisher).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void upsert_DeadlockedOnce_RetriedInNewTransaction() {
+        //given
+        given(branchRepository.lockAllByNaturalKey(branches))
+                .willThrow(new DeadlockLoserDataAccessException("Deadlock found", null))
+                .willReturn(List.of(branch1.toBuilder().id(1L).build(), branch2.toBuilder().id(2L).build()));
+
+        //when
+        UpsertResult result = branchService.upsert(branches, null);
+
+        //then
+        assertThat(result).isEqualTo(new UpsertResult(0, 0, 2));
+        then(branchRepository).should(times(2)).lockAllByNaturalKey(branches);
+        then(transactionTemplate).should(times(2)).execute(any());
+    }
+
+    @Test
+    public void upsert_DeadlockedEveryAttempt_DeadlockLoserDataAccessException() {
+        //given
+        given(branchRepository.lockAllByNaturalKey(branches))
+                .willThrow(new DeadlockLoserDataAccessException("Deadlock found", null));
+
+        //when
+        when(() -> branchService.upsert(branches, null));
+
+        //then
+        BDDAssertions.then(caughtException()).isInstanceOf(DeadlockLoserDataAccessException.class);
+        then(branchRepository).should(times(BranchService.MAX_UPSERT_ATTEMPTS)).lockAllByNaturalKey(branches);
+        then(branchRepository).should(never()).upsertAll(anyList());
+    }
+
+    @Test
+    public void upsert_FailsAfterClaim_ClaimReleased() {
+        //given
+        given(branchRepository.claimIdempotencyKey(eq("retry-1"), anyString())).willReturn(true);
+        given(branchRepository.lockAllByNaturalKey(branches))
+                .willThrow(new DeadlockLoserDataAccessException("Deadlock found", null));
+
+        //when
+        when(() -> branchService.upsert(branches, "retry-1"));
+
+        //then
+        BDDAssertions.then(caughtException()).isInstanceOf(DeadlockLoserDataAccessException.class);
+        InOrder inOrder = inOrder(branchRepository);
+        inOrder.verify(branchRepository).claimIdempotencyKey(eq("retry-1"), anyString());
+        inOrder.verify(branchRepository, times(BranchService.MAX_UPSERT_ATTEMPTS)).lockAllByNaturalKey(branches);
+        inOrder.verify(branchRepository).releaseIdempotencyKey("retry-1");
+        then(branchRepository).should(never()).completeIdempotencyKey(anyString(), any());
+    }
+
+    @Test
+    public void upsert_IdempotencyKeyOfAnotherRequestOrInProgress_Rejected() {
+        //given
+        String requestHash = BranchService.requestHash(branches);
+        given(branchRepository.claimIdempotencyKey(anyString(), anyString())).willReturn(false);
+        given(branchRepository.findIdempotencyKey("other"))
+                .willReturn(Optional.of(new IdempotencyRecord("0".repeat(64), new UpsertResult(2, 0, 0))));
+        given(branchRepository.findIdempotencyKey("running"))
+                .willReturn(Optional.of(new IdempotencyRecord(requestHash, null)));
+
+        //then
+        when(() -> branchService.upsert(branches, "other"));
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        when(() -> branchService.upsert(branches, "running"));
+        BDDAssertions.then(caughtException()).isInstanceOf(IdempotencyKeyInProgressException.class);
+        then(branchRepository).should(never()).upsertAll(anyList());
+    }
+
+    @Test
+    public void upsert_NameEqualOnlyByCollation_MatchedByRowId() {
+        Branch renamed = branch1.toBuilder().name("OLAVARRÍA 560").build();
+        Branch stored = branch1.toBuilder().id(1L).build();
+        Branch updated = renamed.toBuilder().id(1L).version(1L).build();
+
+        //given
+        given(branchRepository.lockAllByNaturalKey(List.of(renamed))).willReturn(List.of(stored));
+        given(branchRepository.findAllByNaturalKey(List.of(renamed))).willReturn(List.of(updated));
+
+        //when
+        UpsertResult result = branchService.upsert(List.of(renamed), null);
+
+        //then
+        assertThat(result).isEqualTo(new UpsertResult(0, 1, 0));
+        then(eventPublisher).should().publishEvent(new BranchChangedEvent(List.of(
+                BranchChange.updated(stored, updated))));
+    }
+
+    @Test
+    public void upsert_SameRowTwiceByCollation_IllegalArgumentException() {
+        Branch strasse = branch1.toBuilder().name("Strasse 1").build();
+        Branch strasseSharpS = branch1.toBuilder().name("Straße 1").build();
+        Branch stored = strasse.toBuilder().id(1L).build();
+        Branch changed = strasseSharpS.toBuilder().address("Other address").build();
+
+        //given
+        given(branchRepository.lockAllByNaturalKey(List.of(strasse, strasseSharpS)))
+                .willReturn(List.of());
+        given(branchRepository.findAllByNaturalKey(List.of(strasse, strasseSharpS)))
+                .willReturn(List.of(stored));
+        given(branchRepository.lockAllByNaturalKey(List.of(strasse, changed)))
+                .willReturn(List.of(stored));
+        given(branchRepository.findAllByNaturalKey(List.of(changed)))
+                .willReturn(List.of(changed.toBuilder().id(1L).build()));
+
+        //then
+        when(() -> branchService.upsert(List.of(strasse, strasseSharpS), null));
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        when(() -> branchService.upsert(List.of(strasse, changed), null));
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        then(eventPublisher).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void upsert_InvalidArguments_IllegalArgumentException() {
+        //given
+        Branch sameName = branch1.toBuilder().address("Other address").build();
+        Branch withoutName = branch1.toBuilder().name(null).build();
+
+        //then
+        when(() -> branchService.upsert(List.of(branch1, sameName), null));
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        when(() -> branchService.upsert(List.of(withoutName), null));
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        when(() -> branchService.upsert(branches, " "));
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        when(() -> branchService.upsert(Collections.nCopies(BranchService.MAX_UPSERT_BRANCHES + 1, branch1), null));
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
     @Test
     public void deleteById_ExpectedValues_Ok() {
         //given
@@ -87,6 +354,7 @@ public class BranchServiceTest {
         Branch branchFromRepository = branchService.getById(branch1.getId());
 
         //then
+        then(replicaReads).should().routeToReplica(null, branch1.getId());
         then(branchRepository).should().findById(branch1.getId());
         assertThat(branchFromRepository).isNotNull();
         assertThat(branchFromRepository.getAddress()).isEqualTo(branch.get().getAddress());
@@ -109,6 +377,7 @@ public class BranchServiceTest {
                 .isInstanceOf(NotFoundException.class)
                 .hasMessage("Branch with id 1 not found.")
                 .hasNoCause();
+        assertThat(caughtException().getStackTrace()).isEmpty();
     }
 
     @Test
@@ -116,16 +385,351 @@ public class BranchServiceTest {
         Long userId = branches.get(0).getUserId();
 
         //given
+        given(branchRepository.findUserVersion(userId)).willReturn(3L);
         given(branchRepository.getByUserId(userId)).willReturn(branches);
 
         //when
-        List<Branch> branchList = branchService.getByUserId(userId);
+        UserBranches userBranches = branchService.getByUserId(userId);
 
         //then
-        then(branchRepository).should().getByUserId(userId);
-        assertThat(branchList).isNotNull();
-        assertThat(branchList).isNotEmpty();
-        assertThat(branchList).hasSize(2);
-        assertThat(branchList).isEqualTo(branches);
+        InOrder inOrder = inOrder(replicaReads, branchRepository);
+        inOrder.verify(replicaReads).routeToReplica(userId, null);
+        inOrder.verify(branchRepository).findUserVersion(userId);
+        inOrder.verify(branchRepository).getByUserId(userId);
+        assertThat(userBranches.getVersion()).isEqualTo(3L);
+        assertThat(userBranches.getBranches()).isEqualTo(branches);
+    }
+
+    @Test
+    public void getUserVersion_Cached_NoQuery() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("userBranches");
+        cache.put(1L, new UserBranches(5L, branches));
+
+        //given
+        given(cacheManager.getCache("userBranches")).willReturn(cache);
+
+        //when
+        long version = branchService.getUserVersion(1L);
+
+        //then
+        assertThat(version).isEqualTo(5L);
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getUserVersion_NotCached_VersionTable() {
+        //given
+        given(cacheManager.getCache("userBranches")).willReturn(new ConcurrentMapCache("userBranches"));
+        given(branchRepository.findUserVersion(1L)).willReturn(7L);
+
+        //when
+        long version = branchService.getUserVersion(1L);
+
+        //then
+        assertThat(version).isEqualTo(7L);
+    }
+
+    @Test
+    public void getVersion_NotCached_VersionOnly() {
+        //given
+        given(cacheManager.getCache("branches")).willReturn(new ConcurrentMapCache("branches"));
+        given(branchRepository.findVersionById(1L)).willReturn(Optional.of(4L));
+
+        //when
+        long version = branchService.getVersion(1L);
+
+        //then
+        assertThat(version).isEqualTo(4L);
+        then(branchRepository).should(never()).findById(anyLong());
+    }
+
+    @Test
+    public void getVersion_Cached_NoQuery() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("branches");
+        cache.put(1L, branch1.toBuilder().id(1L).version(2L).build());
+
+        //given
+        given(cacheManager.getCache("branches")).willReturn(cache);
+
+        //when
+        long version = branchService.getVersion(1L);
+
+        //then
+        assertThat(version).isEqualTo(2L);
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getVersion_NonexistentId_NotFoundException() {
+        //given
+        given(cacheManager.getCache("branches")).willReturn(new ConcurrentMapCache("branches"));
+        given(branchRepository.findVersionById(1L)).willReturn(Optional.empty());
+
+        //when
+        when(() -> branchService.getVersion(1L));
+
+        //then
+        BDDAssertions.then(caughtException())
+                .isInstanceOf(NotFoundException.class)
+                .hasMessage("Branch with id 1 not found.");
+    }
+
+    @Test
+    public void deleteById_ExistingId_PublishesChange() {
+        //given
+        branch1.setId(1L);
+        given(branchRepository.findById(1L)).willReturn(Optional.of(branch1));
+
+        //when
+        branchService.deleteById(1L);
+
+        //then
+        then(branchRepository).should().deleteById(1L);
+        then(eventPublisher).should().publishEvent(new BranchChangedEvent(
+                List.of(BranchChange.deleted(branch1))));
+    }
+
+    @Test
+    public void getNearby_ExpectedValues_Ok() {
+        //given
+        branch1.setId(1L);
+        branch2.setId(2L);
+        given(branchGeoIndex.nearest(-38.0, -57.5, 10.0, 20)).willReturn(List.of(
+                new BranchGeoIndex.Hit(2L, 0.5), new BranchGeoIndex.Hit(1L, 1.5)));
+        given(branchRepository.findAllById(List.of(2L, 1L))).willReturn(branches);
+
+        //when
+        List<NearbyBranch> nearbyBranches = branchService.getNearby(-38.0, -57.5, 10.0, 20);
+
+        //then
+        assertThat(nearbyBranches).extracting(NearbyBranch::getBranch).containsExactly(branch2, branch1);
+        assertThat(nearbyBranches).extracting(NearbyBranch::getDistanceKm).containsExactly(0.5, 1.5);
+    }
+
+    @Test
+    public void getNearby_InvalidLatitude_IllegalArgumentException() {
+        //when
+        when(() -> branchService.getNearby(95.0, -57.5, 10.0, 20));
+
+        //then
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        then(branchGeoIndex).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void countByCityAndUser_ExpectedValues_FromCounters() {
+        //given
+        given(branchCounters.countByCity()).willReturn(Map.of("Mar del Plata", 2L));
+        given(branchCounters.countByUser()).willReturn(Map.of(1L, 2L));
+        given(branchCounters.countOfUser(1L)).willReturn(2L);
+
+        //when
+        Map<String, Long> byCity = branchService.countByCity();
+        Map<Long, Long> byUser = branchService.countByUser();
+        long ofUser = branchService.countOfUser(1L);
+
+        //then
+        assertThat(byCity).containsEntry("Mar del Plata", 2L);
+        assertThat(byUser).containsEntry(1L, 2L);
+        assertThat(ofUser).isEqualTo(2L);
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void search_ExpectedValues_HitsInIndexOrder() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("branches");
+        branch1.setId(1L);
+        branch2.setId(2L);
+        cache.put(2L, branch2);
+
+        //given
+        given(branchSearchIndex.search("mar del", 1L, 10)).willReturn(List.of(2L, 1L));
+        given(cacheManager.getCache("branches")).willReturn(cache);
+        given(branchRepository.findAllById(List.of(1L))).willReturn(List.of(branch1));
+
+        //when
+        List<Branch> found = branchService.search("mar del", 1L, 10);
+
+        //then
+        assertThat(found).containsExactly(branch2, branch1);
+    }
+
+    @Test
+    public void search_NoHits_NoQuery() {
+        //given
+        given(branchSearchIndex.search("zz", null, 10)).willReturn(List.of());
+
+        //when
+        List<Branch> found = branchService.search("zz", null, 10);
+
+        //then
+        assertThat(found).isEmpty();
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void search_BlankQuery_IllegalArgumentException() {
+        //when
+        when(() -> branchService.search("  ", null, 10));
+
+        //then
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        then(branchSearchIndex).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getViewport_ZoomedIn_Branches() {
+        //given
+        given(branchGeoIndex.getClusterMaxZoom()).willReturn(14);
+        given(branchGeoIndex.within(-38.1, -57.6, -38.0, -57.5, BranchService.MAX_VIEWPORT_BRANCHES + 1))
+                .willReturn(List.of(1L, 2L));
+        given(branchRepository.findAllById(List.of(1L, 2L))).willReturn(branches);
+
+        //when
+        BranchViewport viewport = branchService.getViewport(-38.1, -57.6, -38.0, -57.5, 16);
+
+        //then
+        assertThat(viewport.getBranches()).containsExactly(branch1, branch2);
+        assertThat(viewport.getClusters()).isEmpty();
+    }
+
+    @Test
+    public void getViewport_ZoomedOut_ClustersWithoutQuery() {
+        //given
+        List<BranchCluster> clusters = List.of(new BranchCluster(-38.0, -57.5, 120));
+        given(branchGeoIndex.getClusterMaxZoom()).willReturn(14);
+        given(branchGeoIndex.clusters(6, -40.0, -60.0, -36.0, -55.0)).willReturn(clusters);
+
+        //when
+        BranchViewport viewport = branchService.getViewport(-40.0, -60.0, -36.0, -55.0, 6);
+
+        //then
+        assertThat(viewport.getClusters()).isEqualTo(clusters);
+        assertThat(viewport.getBranches()).isEmpty();
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getViewport_AcrossAntimeridian_PassedToIndex() {
+        //given
+        given(branchGeoIndex.getClusterMaxZoom()).willReturn(14);
+        given(branchGeoIndex.within(-17.0, 179.9, -16.0, -179.9, BranchService.MAX_VIEWPORT_BRANCHES + 1))
+                .willReturn(List.of());
+
+        //when
+        BranchViewport viewport = branchService.getViewport(-17.0, 179.9, -16.0, -179.9, 16);
+
+        //then
+        assertThat(viewport.getBranches()).isEmpty();
+        assertThat(viewport.getClusters()).isEmpty();
+    }
+
+    @Test
+    public void getViewport_InvertedBox_IllegalArgumentException() {
+        //when
+        when(() -> branchService.getViewport(-36.0, -60.0, -40.0, -55.0, 6));
+
+        //then
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        then(branchGeoIndex).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getPageByUserId_MoreRows_NextCursor() {
+        //given
+        branch1.setId(1L);
+        branch2.setId(2L);
+        given(branchRepository.findPage(1L, 0, 3)).willReturn(List.of(branch1, branch2, Branch.builder().id(3L).build()));
+
+        //when
+        BranchPage firstPage = branchService.getPageByUserId(1L, null, 2);
+
+        //then
+        assertThat(firstPage.getItems()).containsExactly(branch1, branch2);
+        assertThat(firstPage.getNext()).isNotNull();
+
+        //given
+        given(branchRepository.findPage(1L, 2, 3)).willReturn(List.of(Branch.builder().id(3L).build()));
+
+        //when
+        BranchPage lastPage = branchService.getPageByUserId(1L, firstPage.getNext(), 2);
+
+        //then
+        assertThat(lastPage.getItems()).extracting(Branch::getId).containsExactly(3L);
+        assertThat(lastPage.getNext()).isNull();
+    }
+
+    @Test
+    public void getPageByUserId_CursorOfAnotherUser_IllegalArgumentException() {
+        //given
+        branch1.setId(1L);
+        given(branchRepository.findPage(1L, 0, 2)).willReturn(List.of(branch1, branch2));
+        String cursor = branchService.getPageByUserId(1L, null, 1).getNext();
+
+        //when
+        when(() -> branchService.getPageByUserId(2L, cursor, 1));
+
+        //then
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void getByIds_CachedAndMissing_SingleQueryForMisses() {
+        //given
+        branch1.setId(1L);
+        branch2.setId(2L);
+        ConcurrentMapCache cache = new ConcurrentMapCache("branches");
+        cache.put(1L, branch1);
+        given(cacheManager.getCache("branches")).willReturn(cache);
+        given(branchRepository.findAllById(List.of(2L, 3L))).willReturn(List.of(branch2));
+
+        //when
+        BranchLookup lookup = branchService.getByIds(List.of(2L, 1L, 3L, 2L));
+
+        //then
+        then(branchRepository).should().findAllById(List.of(2L, 3L));
+        assertThat(lookup.getFound()).containsExactly(branch2, branch1);
+        assertThat(lookup.getMissing()).containsExactly(3L);
+        assertThat(cache.get(2L, Branch.class)).isEqualTo(branch2);
+    }
+
+    @Test
+    public void getByIds_NullId_IllegalArgumentException() {
+        //when
+        when(() -> branchService.getByIds(Arrays.asList(1L, null)));
+
+        //then
+        BDDAssertions.then(caughtException()).isInstanceOf(IllegalArgumentException.class);
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void deleteByUserId_ExpectedValues_SingleDelete() {
+        //given
+        given(branchRepository.lockAllByUserId(1L)).willReturn(branches);
+        given(branchRepository.deleteAllByUserId(1L)).willReturn(2);
+
+        //when
+        int deleted = branchService.deleteByUserId(1L);
+
+        //then
+        assertThat(deleted).isEqualTo(2);
+        then(branchRepository).should().deleteAllByUserId(1L);
+        then(eventPublisher).should().publishEvent(new BranchChangedEvent(
+                List.of(BranchChange.deleted(branch1), BranchChange.deleted(branch2))));
+    }
+
+    @Test
+    public void deleteByIds_NoneExisting_NothingDeleted() {
+        //given
+        given(branchRepository.lockAllById(List.of(150L))).willReturn(List.of());
+
+        //when
+        int deleted = branchService.deleteByIds(List.of(150L));
+
+        //then
+        assertThat(deleted).isZero();
+        then(branchRepository).should(never()).deleteAllByIdIn(anyList());
+        then(eventPublisher).shouldHaveNoInteractions();
     }
 }
@@ -0,0 +1,414 @@
+package mymarket.branch.service;
+
+import mymarket.branch.config.CacheConfiguration;
+import mymarket.branch.event.BranchChange;
+import mymarket.branch.event.BranchChangedEvent;
+import mymarket.branch.index.BranchCounters;
+import mymarket.branch.index.BranchGeoIndex;
+import mymarket.branch.index.BranchSearchIndex;
+import mymarket.branch.model.Branch;
+import mymarket.branch.model.BranchCluster;
+import mymarket.branch.model.BranchLookup;
+import mymarket.branch.model.BranchPage;
+import mymarket.branch.model.BranchViewport;
+import mymarket.branch.model.NearbyBranch;
+import mymarket.branch.repository.ReactiveBranchRepository;
+import mymarket.exception.commons.exception.NotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.ReactiveTransaction;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveBranchServiceTest {
+
+    @Mock
+    private ReactiveBranchRepository branchRepository;
+
+    @Mock
+    private BranchGeoIndex branchGeoIndex;
+
+    @Mock
+    private BranchSearchIndex branchSearchIndex;
+
+    @Mock
+    private BranchCounters branchCounters;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private ReactiveTransactionManager transactionManager;
+
+    @Mock
+    private ReactiveTransaction transaction;
+
+    private ReactiveBranchService branchService;
+
+    private Branch branch1, branch2;
+
+    @BeforeEach
+    void setUp() {
+        branchService = new ReactiveBranchService(branchRepository, branchGeoIndex, branchSearchIndex, branchCounters,
+                eventPublisher, cacheManager, TransactionalOperator.create(transactionManager));
+        lenient().when(transactionManager.getReactiveTransaction(any())).thenReturn(Mono.just(transaction));
+        lenient().when(transactionManager.commit(transaction)).thenReturn(Mono.empty());
+        lenient().when(transactionManager.rollback(transaction)).thenReturn(Mono.empty());
+        branch1 = Branch.builder().id(1L).name("Olavarria 560").userId(1L)
+                .address("3460, Avenida Vertiz").city("Mar del Plata").build();
+        branch2 = Branch.builder().id(2L).name("Corrientes 1500")
+                .userId(1L).address("4776, Lavalle").city("Mar del Plata").build();
+    }
+
+    @Test
+    public void save_NewAndExistingBranches_InsertsUpdatesAndPublishes() {
+        Branch created = branch1.toBuilder().id(null).build();
+        Branch updated = branch2.toBuilder().name("Corrientes 1600").build();
+
+        //given
+        given(branchRepository.insert(created)).willReturn(Mono.just(branch1));
+        given(branchRepository.lockById(2L)).willReturn(Mono.just(branch2));
+        given(branchRepository.update(updated)).willReturn(Mono.just(1));
+        given(branchRepository.incrementUserVersions(Set.of(1L))).willReturn(Mono.empty());
+        given(branchRepository.appendChanges(anyList())).willReturn(Mono.empty());
+
+        //when
+        List<Branch> saved = branchService.save(List.of(created, updated)).block();
+
+        //then
+        Branch bumped = updated.toBuilder().version(1L).build();
+        assertThat(saved).containsExactly(branch1, bumped);
+        InOrder inOrder = inOrder(branchRepository, transactionManager, eventPublisher);
+        inOrder.verify(branchRepository).appendChanges(anyList());
+        inOrder.verify(transactionManager).commit(transaction);
+        inOrder.verify(eventPublisher).publishEvent(new BranchChangedEvent(List.of(
+                BranchChange.created(branch1), BranchChange.updated(branch2, bumped))));
+    }
+
+    @Test
+    public void save_LaterBranchFails_RolledBackAndNothingPublished() {
+        Branch created = branch1.toBuilder().id(null).build();
+        Branch failing = branch2.toBuilder().id(null).address(null).build();
+
+        //given
+        given(branchRepository.insert(created)).willReturn(Mono.just(branch1));
+        given(branchRepository.insert(failing)).willReturn(Mono.error(new IllegalStateException("address is null")));
+
+        //when
+        StepVerifier.create(branchService.save(List.of(created, failing))).verifyError(IllegalStateException.class);
+
+        //then
+        then(transactionManager).should().rollback(transaction);
+        then(transactionManager).should(never()).commit(any());
+        then(branchRepository).should(never()).appendChanges(anyList());
+        then(eventPublisher).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void save_IdOfDeletedRow_Inserted() {
+        Branch inserted = branch2.toBuilder().id(3L).build();
+
+        //given
+        given(branchRepository.lockById(2L)).willReturn(Mono.empty());
+        given(branchRepository.insert(branch2)).willReturn(Mono.just(inserted));
+        given(branchRepository.incrementUserVersions(Set.of(1L))).willReturn(Mono.empty());
+        given(branchRepository.appendChanges(anyList())).willReturn(Mono.empty());
+
+        //when
+        List<Branch> saved = branchService.save(List.of(branch2)).block();
+
+        //then
+        assertThat(saved).containsExactly(inserted);
+        then(branchRepository).should(never()).update(any());
+    }
+
+    @Test
+    public void save_EmptyList_NothingPublished() {
+        StepVerifier.create(branchService.save(List.of()))
+                .expectNext(List.of())
+                .verifyComplete();
+        then(eventPublisher).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void deleteById_Existing_DeletesAndPublishes() {
+        //given
+        given(branchRepository.findById(1L)).willReturn(Mono.just(branch1));
+        given(branchRepository.deleteById(1L)).willReturn(Mono.just(1));
+        given(branchRepository.incrementUserVersions(Set.of(1L))).willReturn(Mono.empty());
+        given(branchRepository.appendChanges(anyList())).willReturn(Mono.empty());
+
+        //when
+        StepVerifier.create(branchService.deleteById(1L)).verifyComplete();
+
+        //then
+        then(branchRepository).should().incrementUserVersions(Set.of(1L));
+        then(branchRepository).should().appendChanges(List.of(BranchChange.deleted(branch1)));
+        InOrder inOrder = inOrder(transactionManager, eventPublisher);
+        inOrder.verify(transactionManager).commit(transaction);
+        inOrder.verify(eventPublisher).publishEvent(new BranchChangedEvent(List.of(BranchChange.deleted(branch1))));
+    }
+
+    @Test
+    public void deleteById_Nonexistent_NotFoundException() {
+        //given
+        given(branchRepository.findById(anyLong())).willReturn(Mono.empty());
+
+        //when
+        StepVerifier.create(branchService.deleteById(99L)).verifyError(NotFoundException.class);
+
+        //then
+        then(branchRepository).should(never()).deleteById(anyLong());
+    }
+
+    @Test
+    public void getById_CacheMissThenHit_LoadedOnce() {
+        //given
+        given(cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE)).willReturn(new ConcurrentMapCache("branches"));
+        given(branchRepository.findById(1L)).willReturn(Mono.just(branch1));
+
+        //when
+        StepVerifier.create(branchService.getById(1L)).expectNext(branch1).verifyComplete();
+        StepVerifier.create(branchService.getById(1L)).expectNext(branch1).verifyComplete();
+
+        //then
+        then(branchRepository).should(times(1)).findById(1L);
+    }
+
+    @Test
+    public void getById_Nonexistent_NotFoundException() {
+        //given
+        given(cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE)).willReturn(new ConcurrentMapCache("branches"));
+        given(branchRepository.findById(anyLong())).willReturn(Mono.empty());
+
+        //when
+        StepVerifier.create(branchService.getById(99L)).verifyError(NotFoundException.class);
+    }
+
+    @Test
+    public void getVersion_CacheMissThenHit_VersionOnly() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("branches");
+
+        //given
+        given(cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE)).willReturn(cache);
+        given(branchRepository.findVersionById(1L)).willReturn(Mono.just(3L));
+
+        //when
+        StepVerifier.create(branchService.getVersion(1L)).expectNext(3L).verifyComplete();
+        cache.put(1L, branch1.toBuilder().version(4L).build());
+        StepVerifier.create(branchService.getVersion(1L)).expectNext(4L).verifyComplete();
+
+        //then
+        then(branchRepository).should(never()).findById(anyLong());
+    }
+
+    @Test
+    public void getVersion_Nonexistent_NotFoundException() {
+        //given
+        given(cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE)).willReturn(new ConcurrentMapCache("branches"));
+        given(branchRepository.findVersionById(99L)).willReturn(Mono.empty());
+
+        //when
+        StepVerifier.create(branchService.getVersion(99L)).verifyError(NotFoundException.class);
+    }
+
+    @Test
+    public void getByUserId_Streamed() {
+        //given
+        given(branchRepository.findUserVersion(1L)).willReturn(Mono.just(2L));
+        given(branchRepository.existsByUserId(1L)).willReturn(Mono.just(true));
+        given(branchRepository.findByUserId(1L)).willReturn(Flux.just(branch1, branch2));
+
+        //when
+        StepVerifier.create(branchService.getUserVersion(1L)).expectNext(2L).verifyComplete();
+        StepVerifier.create(branchService.hasBranches(1L)).expectNext(true).verifyComplete();
+        StepVerifier.create(branchService.getByUserId(1L)).expectNext(branch1, branch2).verifyComplete();
+    }
+
+    @Test
+    public void getByIds_CachedAndMissing_OneQueryForMisses() {
+        ConcurrentMapCache cache = new ConcurrentMapCache("branches");
+        cache.put(1L, branch1);
+
+        //given
+        given(cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE)).willReturn(cache);
+        given(branchRepository.findAllById(List.of(2L, 3L))).willReturn(Flux.just(branch2));
+
+        //when
+        BranchLookup lookup = branchService.getByIds(List.of(2L, 1L, 3L, 2L)).block();
+
+        //then
+        assertThat(lookup.getFound()).containsExactly(branch2, branch1);
+        assertThat(lookup.getMissing()).containsExactly(3L);
+        assertThat(cache.get(2L, Branch.class)).isEqualTo(branch2);
+    }
+
+    @Test
+    public void getByIds_TooManyIds_IllegalArgumentException() {
+        List<Long> ids = LongStream.rangeClosed(1, BranchService.MAX_LOOKUP_IDS + 1)
+                .boxed().collect(Collectors.toList());
+
+        assertThatThrownBy(() -> branchService.getByIds(ids)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void getPageByUserId_MoreRows_NextCursor() {
+        //given
+        given(branchRepository.findPage(1L, 0L, 2)).willReturn(Flux.just(branch1, branch2));
+
+        //when
+        BranchPage page = branchService.getPageByUserId(1L, null, 1).block();
+
+        //then
+        assertThat(page.getItems()).containsExactly(branch1);
+        assertThat(PageCursor.decode(page.getNext(), 1L)).isEqualTo(1L);
+    }
+
+    @Test
+    public void getPageByUserId_LastPage_NoCursor() {
+        //given
+        given(branchRepository.findPage(1L, 1L, 3)).willReturn(Flux.just(branch2));
+
+        //when
+        BranchPage page = branchService.getPageByUserId(1L, PageCursor.encode(1L, 1L), 2).block();
+
+        //then
+        assertThat(page.getItems()).containsExactly(branch2);
+        assertThat(page.getNext()).isNull();
+    }
+
+    @Test
+    public void getNearby_Hits_ClosestFirst() {
+        //given
+        given(branchGeoIndex.nearest(-38.0, -57.5, 10.0, 20)).willReturn(List.of(
+                new BranchGeoIndex.Hit(2L, 0.5), new BranchGeoIndex.Hit(1L, 1.5), new BranchGeoIndex.Hit(9L, 2.0)));
+        given(branchRepository.findAllById(List.of(2L, 1L, 9L))).willReturn(Flux.just(branch1, branch2));
+
+        //when
+        List<NearbyBranch> nearby = branchService.getNearby(-38.0, -57.5, 10.0, 20).block();
+
+        //then
+        assertThat(nearby).extracting(NearbyBranch::getBranch).containsExactly(branch2, branch1);
+    }
+
+    @Test
+    public void getNearby_NoHits_NoQuery() {
+        //given
+        given(branchGeoIndex.nearest(-38.0, -57.5, 10.0, 20)).willReturn(List.of());
+
+        //when
+        StepVerifier.create(branchService.getNearby(-38.0, -57.5, 10.0, 20)).expectNext(List.of()).verifyComplete();
+
+        //then
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void search_Hits_InIndexOrder() {
+        //given
+        given(branchSearchIndex.search("mar", null, 10)).willReturn(List.of(2L, 1L));
+        given(cacheManager.getCache(CacheConfiguration.BRANCHES_CACHE)).willReturn(new ConcurrentMapCache("branches"));
+        given(branchRepository.findAllById(List.of(2L, 1L))).willReturn(Flux.just(branch1, branch2));
+
+        //when
+        StepVerifier.create(branchService.search("mar", null, 10))
+                .expectNext(List.of(branch2, branch1))
+                .verifyComplete();
+    }
+
+    @Test
+    public void search_TooLongQuery_IllegalArgumentException() {
+        assertThatThrownBy(() -> branchService.search("x".repeat(101), null, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        then(branchSearchIndex).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void countOfUser_ExpectedValues_FromCounters() {
+        //given
+        given(branchCounters.countOfUser(1L)).willReturn(2L);
+        given(branchCounters.countByCity()).willReturn(Map.of("Mar del Plata", 2L));
+
+        //when
+        StepVerifier.create(branchService.countOfUser(1L))
+                .expectNext(2L)
+                .verifyComplete();
+        StepVerifier.create(branchService.countByCity())
+                .expectNext(Map.of("Mar del Plata", 2L))
+                .verifyComplete();
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getViewport_DeepZoom_Branches() {
+        //given
+        given(branchGeoIndex.getClusterMaxZoom()).willReturn(14);
+        given(branchGeoIndex.within(-38.1, -57.6, -38.0, -57.5, BranchService.MAX_VIEWPORT_BRANCHES + 1))
+                .willReturn(List.of(1L, 2L));
+        given(branchRepository.findAllById(List.of(1L, 2L))).willReturn(Flux.just(branch1, branch2));
+
+        //when
+        BranchViewport viewport = branchService.getViewport(-38.1, -57.6, -38.0, -57.5, 16).block();
+
+        //then
+        assertThat(viewport.getBranches()).containsExactly(branch1, branch2);
+        assertThat(viewport.getClusters()).isEmpty();
+    }
+
+    @Test
+    public void getViewport_DeepZoomEmpty_NoQuery() {
+        //given
+        given(branchGeoIndex.getClusterMaxZoom()).willReturn(14);
+        given(branchGeoIndex.within(-38.1, -57.6, -38.0, -57.5, BranchService.MAX_VIEWPORT_BRANCHES + 1))
+                .willReturn(List.of());
+
+        //when
+        BranchViewport viewport = branchService.getViewport(-38.1, -57.6, -38.0, -57.5, 16).block();
+
+        //then
+        assertThat(viewport.getBranches()).isEmpty();
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    public void getViewport_LowZoom_Clusters() {
+        List<BranchCluster> clusters = List.of(new BranchCluster(-38.0, -57.5, 2));
+
+        //given
+        given(branchGeoIndex.getClusterMaxZoom()).willReturn(14);
+        given(branchGeoIndex.clusters(5, -40.0, -60.0, -30.0, -50.0)).willReturn(clusters);
+
+        //when
+        BranchViewport viewport = branchService.getViewport(-40.0, -60.0, -30.0, -50.0, 5).block();
+
+        //then
+        assertThat(viewport.getClusters()).isEqualTo(clusters);
+        then(branchRepository).shouldHaveNoInteractions();
+    }
+}
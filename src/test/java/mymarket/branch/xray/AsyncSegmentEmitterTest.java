@@ -0,0 +1,110 @@
+package mymarket.branch.xray;
+
+import com.amazonaws.xray.AWSXRay;
+import com.amazonaws.xray.config.DaemonConfiguration;
+import com.amazonaws.xray.emitters.Emitter;
+import com.amazonaws.xray.entities.Segment;
+import com.amazonaws.xray.entities.SegmentImpl;
+import com.amazonaws.xray.entities.Subsegment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncSegmentEmitterTest {
+
+    private DatagramSocket daemon;
+    private AsyncSegmentEmitter emitter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        daemon = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        daemon.setSoTimeout(5000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        emitter.close();
+        daemon.close();
+    }
+
+    @Test
+    public void sendSegment_LocalDaemon_SerializedAndSent() throws Exception {
+        //given
+        DaemonConfiguration daemonConfiguration = new DaemonConfiguration();
+        daemonConfiguration.setDaemonAddress("127.0.0.1:" + daemon.getLocalPort());
+        emitter = new AsyncSegmentEmitter(Emitter.create(daemonConfiguration), 16);
+        DatagramPacket packet = new DatagramPacket(new byte[65_535], 65_535);
+
+        //when
+        boolean accepted = emitter.sendSegment(segment());
+        daemon.receive(packet);
+
+        //then
+        assertThat(accepted).isTrue();
+        assertThat(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8))
+                .startsWith("{\"format\": \"json\", \"version\": 1}")
+                .contains("\"name\":\"branch\"");
+    }
+
+    @Test
+    public void sendSegment_QueueFull_DroppedWithoutBlocking() throws Exception {
+        //given
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        emitter = new AsyncSegmentEmitter(new BlockingEmitter(sending, release), 1);
+
+        //when
+        boolean first = emitter.sendSegment(segment());
+        sending.await(5, TimeUnit.SECONDS);
+        boolean queued = emitter.sendSegment(segment());
+        boolean dropped = emitter.sendSegment(segment());
+        release.countDown();
+
+        //then
+        assertThat(first).isTrue();
+        assertThat(queued).isTrue();
+        assertThat(dropped).isFalse();
+        assertThat(emitter.getDropped()).isEqualTo(1);
+    }
+
+    private static Segment segment() {
+        Segment segment = new SegmentImpl(AWSXRay.getGlobalRecorder(), "branch");
+        segment.setEndTime(segment.getStartTime() + 0.001);
+        return segment;
+    }
+
+    private static class BlockingEmitter extends Emitter {
+        private final CountDownLatch sending;
+        private final CountDownLatch release;
+
+        BlockingEmitter(CountDownLatch sending, CountDownLatch release) {
+            this.sending = sending;
+            this.release = release;
+        }
+
+        @Override
+        public boolean sendSegment(Segment segment) {
+            sending.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public boolean sendSubsegment(Subsegment subsegment) {
+            return true;
+        }
+    }
+}